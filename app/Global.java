@@ -72,6 +72,9 @@ public class Global extends GlobalSettings {
 		// Globals.profile.saveMap();
 		play.Logger.info("Application shutdown...");
 		Globals.taskManager.shutdown();
+		Globals.indexJournal.close();
+		Globals.statusStore.save();
+		Globals.fulltextQueue.shutdown();
 	}
 
 	public Promise<Result> onHandlerNotFound(RequestHeader request) {
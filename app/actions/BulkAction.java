@@ -16,27 +16,54 @@
  */
 package actions;
 
+import helper.AdaptiveThrottle;
 import helper.HttpArchiveError;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import models.BulkJob;
+import models.Globals;
 import models.Node;
 import play.mvc.Results.Chunks;
 import play.mvc.Results.StringChunks;
 
 /**
+ * Applies a function to many nodes. Nodes are read from Fedora and processed
+ * in chunks of 100 by {@link Globals#bulkParallelism} readers and as many
+ * processors.
+ * 
  * @author Jan Schnasse
  *
  */
 public class BulkAction {
 
+	private static final int STEP_SIZE = 100;
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static final int MAX_ERRORS = 100;
+
 	Chunks.Out<String> messageOut;
 	Chunks<String> chunks;
 	Read read = new Read();
 	List<Throwable> errors = new ArrayList<Throwable>();
+	AtomicInteger errorCount = new AtomicInteger();
+	int parallelism = Math.max(1, Globals.bulkParallelism);
+	BulkJob job = null;
 
 	/**
 	 * @param namespace a namespace to retrieve all pids from
@@ -101,96 +128,354 @@ public class BulkAction {
 		};
 	}
 
+	/**
+	 * Runs a persistent job. Progress is streamed and checkpointed, the job
+	 * goes on if the client disconnects.
+	 * 
+	 * @param job a job created by {@link BulkJobs#create}
+	 * @param proc a function to apply to all pids of the job's namespace
+	 */
+	public void executeJob(BulkJob job, ProcessNodes proc) {
+		chunks = new StringChunks() {
+			public void onReady(Chunks.Out<String> out) {
+				setMessageQueue(out);
+				runInBackground(job, proc);
+			}
+		};
+	}
+
+	/**
+	 * Runs a persistent job without streaming progress. Used to resume jobs.
+	 * 
+	 * @param job a job created by {@link BulkJobs#create}
+	 * @param proc a function to apply to all pids of the job's namespace
+	 */
+	public void runInBackground(BulkJob job, ProcessNodes proc) {
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		executorService.execute(new Runnable() {
+			public void run() {
+				bulkJob(job, proc);
+			}
+		});
+		executorService.shutdown();
+	}
+
 	private void bulk(String namespace, ProcessNodes proc) {
-		List<String> nodes = read.listRepoNamespace(namespace);
-		play.Logger.info("Going to process: " + nodes);
-		bulkOnPids(nodes, proc);
+		play.Logger.info("Going to process all nodes of " + namespace);
+		try {
+			processStream(read.streamRepoNamespace(namespace), 0, proc);
+		} catch (Exception e) {
+			play.Logger.error("", e);
+			error(e);
+		} catch (HttpArchiveError e) {
+			play.Logger.warn("", e);
+			error(e);
+		} finally {
+			closeMessageQueue();
+		}
 	}
 
-	private void bulkOnPids(List<String> nodes, ProcessNodes proc) {
+	void bulkJob(BulkJob job, ProcessNodes proc) {
+		this.job = job;
 		try {
-			int until = 0;
-			int stepSize = 100;
-			int from = 0 - stepSize;
-			messageOut.write("size: " + nodes.size() + "\n");
-			do {
-				until += stepSize;
-				from += stepSize;
-				if (nodes.isEmpty())
-					break;
-				if (until > nodes.size())
-					until = nodes.size();
+			String after = job.getLastPid();
+			// jobs saved without a last pid start over
+			int start = after == null ? 0 : (int) job.getCursor();
+			job.setCursor(start);
+			job.setProcessed(start);
+			BulkJobs.save(job);
+			Iterator<String> pids =
+					read.streamRepoNamespace(job.getNamespace(), after);
+			write("job: " + job.getId() + "\n");
+			if (after != null)
+				write("resume after: " + after + " (" + start + ")\n");
+			int size = processStream(pids, start, proc);
+			if (!job.isCancelRequested())
+				job.setTotal(start + size);
+			job.setState(
+					job.isCancelRequested() ? BulkJob.CANCELLED : BulkJob.FINISHED);
+		} catch (Exception e) {
+			play.Logger.error("", e);
+			job.setState(BulkJob.FAILED);
+			job.addFailure(job.getNamespace(), e.toString());
+		} catch (HttpArchiveError e) {
+			play.Logger.warn("", e);
+			job.setState(BulkJob.FAILED);
+			job.addFailure(job.getNamespace(), e.toString());
+		} finally {
+			BulkJobs.save(job);
+			closeMessageQueue();
+		}
+	}
 
-				messageOut.write("Process: from: " + from + " until " + until + "\n");
-				try {
-					messageOut
-							.write(proc.process(read.getNodes(nodes.subList(from, until))));
-				} catch (Exception e) {
-					play.Logger.warn("", e);
-					errors.add(e);
-				} catch (HttpArchiveError e) {
-					play.Logger.warn("", e);
-					errors.add(e);
-				}
-			} while (until < nodes.size());
-			messageOut.write("Process " + nodes.size() + " nodes!\n");
-			if (!errors.isEmpty()) {
-				messageOut.write(errors.size() + " errors occured!\n" + errors + "\n");
-			} else {
-				messageOut.write("\nSuccessfully Finished\n");
-			}
+	/**
+	 * Reads and processes pids while they are fetched. The size is not known
+	 * in advance.
+	 * 
+	 * @return the number of pids read from the iterator
+	 */
+	private int processStream(Iterator<String> pids, int offset,
+			ProcessNodes proc) throws InterruptedException {
+		ExecutorService readers = Executors.newFixedThreadPool(parallelism);
+		int size = 0;
+		try {
+			size = pipeline(readChunks(pids, offset, readers), proc);
+		} finally {
+			readers.shutdownNow();
+		}
+		finish(size);
+		return size;
+	}
 
+	private void bulkOnPids(List<String> nodes, ProcessNodes proc) {
+		try {
+			write("size: " + nodes.size() + "\n");
+			processStream(nodes.iterator(), 0, proc);
 		} catch (Exception e) {
 			play.Logger.error("", e);
-			errors.add(e);
+			error(e);
 		} catch (HttpArchiveError e) {
 			play.Logger.warn("", e);
-			errors.add(e);
+			error(e);
 		} finally {
-			messageOut.close();
+			closeMessageQueue();
 		}
 	}
 
 	private void bulkOnNodes(final List<Node> nodes, ProcessNodes proc) {
 		try {
-			int until = 0;
-			int stepSize = 100;
-			int from = 0 - stepSize;
-			messageOut.write("size: " + nodes.size() + "\n");
-			do {
-				until += stepSize;
-				from += stepSize;
-				if (nodes.isEmpty())
-					break;
-				if (until > nodes.size())
-					until = nodes.size();
-				messageOut.write("Process: from: " + from + " until " + until + "\n");
-				try {
-					List<Node> sublist = nodes.subList(from, until);
-					play.Logger.info("Going to Process: " + sublist);
-					messageOut.write(proc.process(sublist));
-				} catch (Exception e) {
-					play.Logger.warn("", e);
-					errors.add(e);
-				} catch (HttpArchiveError e) {
-					play.Logger.warn("", e);
-					errors.add(e);
-				}
-			} while (until < nodes.size());
-			messageOut.write("Process " + nodes.size() + " nodes!\n");
-			if (!errors.isEmpty()) {
-				messageOut.write(errors.size() + " errors occured!\n" + errors + "\n");
-			} else {
-				messageOut.write("\nSuccessfully Finished\n");
+			write("size: " + nodes.size() + "\n");
+			List<Chunk> list = new ArrayList<Chunk>();
+			for (int from = 0; from < nodes.size(); from += STEP_SIZE) {
+				int until = Math.min(from + STEP_SIZE, nodes.size());
+				List<Node> sublist = nodes.subList(from, until);
+				list.add(new Chunk(from, until,
+						sublist.stream().map(n -> n.getPid())
+								.collect(Collectors.toList()),
+						CompletableFuture.completedFuture(sublist)));
 			}
+			pipeline(list.iterator(), proc);
+			finish(nodes.size());
 		} catch (Exception e) {
 			play.Logger.error("", e);
-			errors.add(e);
+			error(e);
 		} catch (HttpArchiveError e) {
 			play.Logger.warn("", e);
-			errors.add(e);
+			error(e);
 		} finally {
-			messageOut.close();
+			closeMessageQueue();
+		}
+	}
+
+	/**
+	 * Reader stage. Every chunk of pids is submitted to the readers as soon as
+	 * the pipeline asks for it. Stops early if the job has been cancelled.
+	 */
+	private Iterator<Chunk> readChunks(Iterator<String> pids, int offset,
+			ExecutorService readers) {
+		return new Iterator<Chunk>() {
+			int from = offset;
+
+			@Override
+			public boolean hasNext() {
+				return pids.hasNext() && (job == null || !job.isCancelRequested());
+			}
+
+			@Override
+			public Chunk next() {
+				List<String> ids = new ArrayList<String>(STEP_SIZE);
+				while (pids.hasNext() && ids.size() < STEP_SIZE) {
+					ids.add(pids.next());
+				}
+				Chunk chunk = new Chunk(from, from + ids.size(), ids,
+						readers.submit(() -> readChunk(ids)));
+				from += ids.size();
+				return chunk;
+			}
+		};
+	}
+
+	/**
+	 * Reads the nodes of a chunk. Pids that cannot be read are read again and
+	 * reported as failures if they fail {@value #MAX_ATTEMPTS} times. They are
+	 * left out of the chunk, so the processors never see empty nodes.
+	 */
+	private List<Node> readChunk(List<String> ids) throws Exception {
+		List<String> failed = new ArrayList<String>();
+		List<Node> nodes = new ArrayList<Node>(
+				throttled(() -> read.getNodes(ids, (pid, e) -> failed.add(pid))));
+		for (String pid : failed) {
+			for (int attempt = 2;; attempt++) {
+				try {
+					nodes.add(throttled(() -> read.reloadNode(pid)));
+					break;
+				} catch (Exception | HttpArchiveError e) {
+					if (attempt >= MAX_ATTEMPTS) {
+						fail(pid, e);
+						break;
+					}
+				}
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Processing stage. The calling thread feeds chunks into a bounded queue,
+	 * so no more than 2 * parallelism chunks are read ahead of the processors.
+	 */
+	private int pipeline(Iterator<Chunk> chunkSource, ProcessNodes proc)
+			throws InterruptedException {
+		int size = 0;
+		BlockingQueue<Chunk> queue =
+				new ArrayBlockingQueue<Chunk>(2 * parallelism);
+		ExecutorService processors = Executors.newFixedThreadPool(parallelism);
+		for (int i = 0; i < parallelism; i++) {
+			processors.execute(() -> {
+				try {
+					Chunk chunk = null;
+					while ((chunk = queue.take()) != Chunk.END) {
+						process(chunk, proc);
+					}
+					queue.put(Chunk.END);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		try {
+			while (chunkSource.hasNext()) {
+				Chunk chunk = chunkSource.next();
+				size += chunk.until - chunk.from;
+				queue.put(chunk);
+			}
+		} finally {
+			queue.put(Chunk.END);
+			processors.shutdown();
+			processors.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		return size;
+	}
+
+	private void process(Chunk chunk, ProcessNodes proc) {
+		String header =
+				"Process: from: " + chunk.from + " until " + chunk.until + "\n";
+		List<Node> nodes = null;
+		try {
+			nodes = chunk.nodes.get();
+		} catch (Exception e) {
+			Throwable cause =
+					e instanceof ExecutionException ? e.getCause() : e;
+			play.Logger.warn("", cause);
+			chunk.pids.forEach(pid -> fail(pid, cause));
+			chunkDone(chunk);
+			return;
+		}
+		List<Node> loaded = nodes;
+		try {
+			write(header
+					+ throttled(() -> proc.process(loaded)));
+		} catch (Exception | HttpArchiveError e) {
+			play.Logger.warn("Chunk " + chunk.from + "-" + chunk.until
+					+ " failed. Retry node by node.", e);
+			write(header + processSingly(nodes, proc));
+		}
+		chunkDone(chunk);
+	}
+
+	/**
+	 * Retries every node of a failed chunk on its own, so that only the nodes
+	 * that fail again are reported.
+	 */
+	private String processSingly(List<Node> nodes, ProcessNodes proc) {
+		StringBuffer msg = new StringBuffer();
+		for (Node node : nodes) {
+			for (int attempt = 1;; attempt++) {
+				try {
+					msg.append(throttled(
+							() -> proc.process(Collections.singletonList(node))));
+					break;
+				} catch (Exception | HttpArchiveError e) {
+					if (attempt >= MAX_ATTEMPTS) {
+						fail(node.getPid(), e);
+						break;
+					}
+				}
+			}
+		}
+		return msg.toString();
+	}
+
+	/**
+	 * Runs work as bulk work of this job, so that every Fedora and
+	 * elasticsearch call it makes is limited by {@link Globals#bulkThrottle}.
+	 */
+	private <T> T throttled(Callable<T> work) throws Exception {
+		int priority =
+				job == null ? AdaptiveThrottle.DEFAULT_PRIORITY : job.getPriority();
+		return AdaptiveThrottle.runAs(priority, work);
+	}
+
+	private void fail(String pid, Throwable e) {
+		play.Logger.warn("Bulk action failed on " + pid, e);
+		error(e);
+		if (job != null)
+			job.addFailure(pid, e.toString());
+	}
+
+	private void error(Throwable e) {
+		errorCount.incrementAndGet();
+		synchronized (errors) {
+			if (errors.size() < MAX_ERRORS)
+				errors.add(e);
+		}
+	}
+
+	private void chunkDone(Chunk chunk) {
+		if (job != null) {
+			job.chunkDone(chunk.from, chunk.until,
+					chunk.pids.get(chunk.pids.size() - 1));
+			BulkJobs.save(job);
+		}
+	}
+
+	private void finish(int size) {
+		write("Process " + size + " nodes!\n");
+		if (errorCount.get() > 0) {
+			write(errorCount.get() + " errors occured!\n" + errors + "\n");
+		} else {
+			write("\nSuccessfully Finished\n");
+		}
+	}
+
+	/**
+	 * Writes to the chunked response if there is one. A disconnected client
+	 * must not stop the action.
+	 */
+	private synchronized void write(String msg) {
+		if (messageOut == null)
+			return;
+		try {
+			messageOut.write(msg);
+		} catch (Exception e) {
+			play.Logger.debug("", e);
+		}
+	}
+
+	private static class Chunk {
+		static final Chunk END = new Chunk(0, 0, null, null);
+
+		final int from;
+		final int until;
+		final List<String> pids;
+		final Future<List<Node>> nodes;
+
+		Chunk(int from, int until, List<String> pids,
+				Future<List<Node>> nodes) {
+			this.from = from;
+			this.until = until;
+			this.pids = pids;
+			this.nodes = nodes;
 		}
 	}
 
@@ -206,8 +491,13 @@ public class BulkAction {
 	 * 
 	 */
 	public void closeMessageQueue() {
-		if (messageOut != null)
+		if (messageOut == null)
+			return;
+		try {
 			messageOut.close();
+		} catch (Exception e) {
+			play.Logger.debug("", e);
+		}
 	}
 
 	/**
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package actions;
+
+import helper.HttpArchiveException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import models.BulkJob;
+import models.Globals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Keeps track of namespace-wide bulk jobs. Every job is stored as json file
+ * in {@link Globals#localDataDir}/jobs and updated after each chunk, so a job
+ * can be resumed after its last completed pid after a restart.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class BulkJobs {
+
+	/**
+	 * Reindex into the index given by param "index"
+	 */
+	public static final String INDEX_ALL = "indexAll";
+
+	/**
+	 * Update bibliographic metadata
+	 */
+	public static final String LOBIDIFY = "lobidify";
+
+	/**
+	 * Update oai sets
+	 */
+	public static final String REINIT_OAISETS = "reinitOaisets";
+
+	/**
+	 * Delete, or purge if param "purge" is "true"
+	 */
+	public static final String DELETE = "delete";
+
+	/**
+	 * Add urns with param "snid" to objects created before param "fromBefore"
+	 * (milliseconds)
+	 */
+	public static final String ADD_URN = "addUrnToAll";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private static final Map<String, BulkJob> jobs =
+			new ConcurrentHashMap<String, BulkJob>();
+
+	static {
+		load();
+	}
+
+	/**
+	 * @param operation one of the constants of this class
+	 * @param namespace the namespace to process
+	 * @param userId id of the user who started the job
+	 * @param params parameters of the operation
+	 * @return a new running job
+	 */
+	public static BulkJob create(String operation, String namespace,
+			String userId, Map<String, String> params) {
+		BulkJob job = new BulkJob(UUID.randomUUID().toString(), operation,
+				namespace, userId, params);
+		processor(job);
+		jobs.put(job.getId(), job);
+		save(job);
+		return job;
+	}
+
+	/**
+	 * @param id the job id
+	 * @return the job
+	 */
+	public static BulkJob get(String id) {
+		BulkJob job = jobs.get(id);
+		if (job == null)
+			throw new HttpArchiveException(404, "No bulk job " + id);
+		return job;
+	}
+
+	/**
+	 * @return all known jobs, newest first
+	 */
+	public static List<BulkJob> list() {
+		List<BulkJob> result = new ArrayList<BulkJob>(jobs.values());
+		result.sort(Comparator.comparing(BulkJob::getCreated).reversed());
+		return result;
+	}
+
+	/**
+	 * Asks a running job to stop after the chunks that are already read
+	 *
+	 * @param id the job id
+	 * @return the job
+	 */
+	public static BulkJob cancel(String id) {
+		BulkJob job = get(id);
+		job.cancel();
+		return job;
+	}
+
+	/**
+	 * @param id the job id
+	 * @param priority bulk calls of jobs with higher priority are served first
+	 * @return the job
+	 */
+	public static BulkJob setPriority(String id, int priority) {
+		BulkJob job = get(id);
+		job.setPriority(priority);
+		save(job);
+		return job;
+	}
+
+	/**
+	 * Continues a job that has been cancelled or interrupted after its last
+	 * completed pid
+	 *
+	 * @param id the job id
+	 * @return the job
+	 */
+	public static BulkJob resume(String id) {
+		BulkJob resumed = null;
+		// the registry is locked, so concurrent resumes start one job only
+		synchronized (jobs) {
+			BulkJob job = get(id);
+			if (job.isRunning())
+				throw new HttpArchiveException(409, "Job " + id + " is running!");
+			if (BulkJob.FINISHED.equals(job.getState()))
+				throw new HttpArchiveException(409, "Job " + id + " is finished!");
+			resumed = new BulkJob(job.getId(), job.getOperation(),
+					job.getNamespace(), job.getUserId(), job.getParams());
+			resumed.setCursor(job.getCursor());
+			resumed.setLastPid(job.getLastPid());
+			resumed.setPriority(job.getPriority());
+			resumed.setErrorCount(job.getErrorCount());
+			resumed.setFailures(job.getFailures());
+			resumed.setCreated(job.getCreated());
+			jobs.put(id, resumed);
+		}
+		save(resumed);
+		new BulkAction().runInBackground(resumed, processor(resumed));
+		return resumed;
+	}
+
+	/**
+	 * @param job a job
+	 * @return the function that implements the job's operation
+	 */
+	public static ProcessNodes processor(BulkJob job) {
+		Map<String, String> params = job.getParams();
+		switch (job.getOperation()) {
+		case INDEX_ALL:
+			return nodes -> new Index().indexAll(nodes, params.get("index"));
+		case LOBIDIFY:
+			return nodes -> new Modify().lobidify(nodes);
+		case REINIT_OAISETS:
+			return nodes -> new Modify().reinitOaiSets(nodes);
+		case DELETE:
+			if ("true".equals(params.get("purge")))
+				return nodes -> new Delete().purge(nodes);
+			return nodes -> new Delete().delete(nodes);
+		case ADD_URN:
+			Date fromBefore = new Date(Long.parseLong(params.get("fromBefore")));
+			return nodes -> new Modify().addUrnToAll(nodes, params.get("snid"),
+					fromBefore);
+		default:
+			throw new HttpArchiveException(400,
+					"Unknown bulk operation " + job.getOperation());
+		}
+	}
+
+	/**
+	 * Writes the job to disk
+	 *
+	 * @param job a job
+	 */
+	public static void save(BulkJob job) {
+		try {
+			File dir = getJobDir();
+			dir.mkdirs();
+			File file = new File(dir, job.getId() + ".json");
+			File tmp = new File(dir, job.getId() + ".json.tmp");
+			synchronized (job) {
+				mapper.writeValue(tmp, job);
+			}
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			play.Logger.warn("Cannot save bulk job " + job.getId(), e);
+		}
+	}
+
+	/**
+	 * @param job a job
+	 * @return a short summary
+	 */
+	public static Map<String, Object> summary(BulkJob job) {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("id", job.getId());
+		result.put("operation", job.getOperation());
+		result.put("namespace", job.getNamespace());
+		result.put("state", job.getState());
+		result.put("priority", job.getPriority());
+		result.put("total", job.getTotal());
+		result.put("processed", job.getProcessed());
+		result.put("errorCount", job.getErrorCount());
+		return result;
+	}
+
+	private static void load() {
+		File[] files = getJobDir().listFiles((dir, name) -> name.endsWith(".json"));
+		if (files == null)
+			return;
+		for (File file : files) {
+			try {
+				BulkJob job = mapper.readValue(file, BulkJob.class);
+				if (job.isRunning()) {
+					job.setState(BulkJob.INTERRUPTED);
+					save(job);
+				}
+				jobs.put(job.getId(), job);
+			} catch (Exception e) {
+				play.Logger.warn("Cannot load bulk job " + file, e);
+			}
+		}
+	}
+
+	private static File getJobDir() {
+		return new File(Globals.localDataDir, "jobs");
+	}
+}
@@ -20,6 +20,7 @@ import java.util.List;
 
 import models.Globals;
 import models.Node;
+import archive.search.IndexJournal;
 
 /**
  * @author Jan Schnasse
@@ -38,47 +39,74 @@ public class Index {
 		return removeFromAllIndexed(pid, type, index);
 	}
 
+	/**
+	 * Removes a node from all indexes without reading it first. Used to replay
+	 * journaled operations.
+	 * 
+	 * @param pid the pid of the node
+	 * @param type the contentType of the node
+	 * @param index the namespace of the node
+	 * @return a short message
+	 */
+	public String remove(String pid, String type, String index) {
+		return removeFromAllIndexed(pid, type, index);
+	}
+
 	private String removeFromAllIndexed(String pid, String type, String index) {
 		if (type == null)
 			return pid + " not deleted from index. Cause: No type available!";
+		IndexJournal.Entry entry =
+				Globals.indexJournal.append(IndexJournal.REMOVE, pid, index, type);
 		StringBuffer message = new StringBuffer();
-		message.append(removeFromPrivateIndex(pid, type, index));
-		message.append(removeFromPublicIndex(pid, type, index));
-		message.append(removeFromFulltextIndex(pid, type, index));
+		message.append(removeFromPrivateIndex(pid, type, index, entry));
+		message.append(removeFromPublicIndex(pid, type, index, entry));
+		message.append(removeFromFulltextIndex(pid, type, index, entry));
+		Globals.indexJournal.commit(entry);
+		Globals.hierarchy.remove(pid);
+		Globals.titles.remove(pid);
+		Globals.statusStore.remove(pid);
+		Globals.representations.remove(pid);
+		UnitOfWork.discard(pid);
 		return message.toString();
 
 	}
 
-	private String removeFromFulltextIndex(String pid, String type,
-			String index) {
+	private String removeFromFulltextIndex(String pid, String type, String index,
+			IndexJournal.Entry entry) {
 		try {
-			Globals.search.delete(pid, Globals.PDFBOX_OCR_INDEX_PREF + index, type);
+			Globals.fulltextQueue.withLock(pid, () -> Globals.search.delete(pid,
+					Globals.PDFBOX_OCR_INDEX_PREF + index, type));
 			return pid + " removed from " + Globals.PDFBOX_OCR_INDEX_PREF + index
 					+ "\n";
 		} catch (Exception e) {
 			play.Logger.debug("", e);
+			entry.fail();
 			return pid + " cannot be removed from" + Globals.PDFBOX_OCR_INDEX_PREF
 					+ index + "\n";
 		}
 	}
 
-	private String removeFromPublicIndex(String pid, String type, String index) {
+	private String removeFromPublicIndex(String pid, String type, String index,
+			IndexJournal.Entry entry) {
 		try {
 			Globals.search.delete(pid, Globals.PUBLIC_INDEX_PREF + index, type);
 			return pid + " removed from " + Globals.PUBLIC_INDEX_PREF + index + "\n";
 		} catch (Exception e) {
 			play.Logger.debug("", e);
+			entry.fail();
 			return pid + " cannot be removed from" + Globals.PUBLIC_INDEX_PREF + index
 					+ "\n";
 		}
 	}
 
-	private String removeFromPrivateIndex(String pid, String type, String index) {
+	private String removeFromPrivateIndex(String pid, String type, String index,
+			IndexJournal.Entry entry) {
 		try {
 			Globals.search.delete(pid, index, type);
 			return pid + " removed from " + index + "\n";
 		} catch (Exception e) {
 			play.Logger.debug("", e);
+			entry.fail();
 			return pid + " cannot be removed from" + index + "\n";
 		}
 	}
@@ -91,74 +119,96 @@ public class Index {
 		String index = n.getNamespace();
 		String pid = n.getPid();
 		String type = n.getContentType();
+		IndexJournal.Entry entry =
+				Globals.indexJournal.append(IndexJournal.INDEX, pid, index, type);
 		StringBuffer msg = new StringBuffer();
-		msg.append(indexToPrivateIndex(pid, type, index, n));
-		msg.append(handlePublicIndex(pid, type, index, n));
-		msg.append(handleFulltextIndex(pid, type, index, n));
+		msg.append(indexToPrivateIndex(pid, type, index, n, entry));
+		msg.append(handlePublicIndex(pid, type, index, n, entry));
+		msg.append(handleFulltextIndex(pid, type, index, n, entry));
+		Globals.indexJournal.commit(entry);
+		Globals.hierarchy.put(n);
+		Globals.titles.remove(pid);
 		return msg.toString();
 	}
 
 	private String handleFulltextIndex(String pid, String type, String index,
-			Node n) {
+			Node n, IndexJournal.Entry entry) {
 		if ("public".equals(n.getAccessScheme())) {
 			if ("file".equals(n.getContentType())
 					&& "application/pdf".equals(n.getMimeType())) {
-				return indexToFulltextIndex(pid, type, index, n);
+				if (Globals.fulltexts.contains(n.getChecksum()))
+					return indexToFulltextIndex(pid, type, index, n, entry);
+				if (Globals.fulltextQueue.submit(n))
+					return pid + " queued for " + Globals.PDFBOX_OCR_INDEX_PREF + index
+							+ "\n";
+				return pid + " not indexed in " + Globals.PDFBOX_OCR_INDEX_PREF + index
+						+ ", extraction queue is full\n";
 			}
 		} else {
-			return removeFromFulltextIndex(pid, type, index);
+			return removeFromFulltextIndex(pid, type, index, entry);
 		}
 		return pid + " not indexed in fulltext index!\n";
 	}
 
 	private String handlePublicIndex(String pid, String type, String index,
-			Node n) {
+			Node n, IndexJournal.Entry entry) {
 		if ("public".equals(n.getPublishScheme())) {
 			if ("monograph".equals(n.getContentType())
 					|| "journal".equals(n.getContentType())
 					|| "webpage".equals(n.getContentType())
 					|| "article".equals(n.getContentType()))
-				return indexToPublicIndex(pid, type, index, n);
+				return indexToPublicIndex(pid, type, index, n, entry);
 		} else {
-			return removeFromPublicIndex(pid, type, index);
+			return removeFromPublicIndex(pid, type, index, entry);
 		}
 		return pid + " not indexed in public index!\n";
 	}
 
 	private String indexToPublicIndex(String pid, String type, String index,
-			Node data) {
+			Node data, IndexJournal.Entry entry) {
 		try {
 			Globals.search.index(Globals.PUBLIC_INDEX_PREF + index, type, pid,
 					data.toString());
 			return pid + " indexed in " + Globals.PUBLIC_INDEX_PREF + index + "\n";
 		} catch (Exception e) {
 			play.Logger.debug("", e);
+			entry.fail();
 			return pid + " not indexed in " + Globals.PUBLIC_INDEX_PREF + index
 					+ "\n";
 		}
 	}
 
 	private String indexToFulltextIndex(String pid, String type, String index,
-			Node data) {
+			Node data, IndexJournal.Entry entry) {
+		String fulltext = null;
+		try {
+			fulltext = new Transform().pdfboxSource(data);
+		} catch (Exception e) {
+			play.Logger.debug("", e);
+			return pid + " not indexed in " + Globals.PDFBOX_OCR_INDEX_PREF + index
+					+ "\n";
+		}
 		try {
 			Globals.search.index(Globals.PDFBOX_OCR_INDEX_PREF + index, type, pid,
-					new Transform().pdfbox(data).toString());
+					fulltext);
 			return pid + " indexed in " + Globals.PDFBOX_OCR_INDEX_PREF + index
 					+ "\n";
 		} catch (Exception e) {
 			play.Logger.debug("", e);
+			entry.fail();
 			return pid + " not indexed in " + Globals.PDFBOX_OCR_INDEX_PREF + index
 					+ "\n";
 		}
 	}
 
 	private String indexToPrivateIndex(String pid, String type, String index,
-			Node data) {
+			Node data, IndexJournal.Entry entry) {
 		try {
-			Globals.search.index(index, type, pid, data.toString());
+			Globals.search.index(index, type, pid, data.toIndexString());
 			return pid + " indexed in " + index + "\n";
 		} catch (Exception e) {
 			play.Logger.debug("", e);
+			entry.fail();
 			return pid + " not indexed in " + index + "\n";
 		}
 	}
@@ -169,6 +219,10 @@ public class Index {
 	 * @return the list of indexed objects as string
 	 */
 	public String indexAll(List<Node> nodes, String indexNameWithDatestamp) {
+		nodes.forEach(n -> {
+			Globals.hierarchy.put(n);
+			Globals.titles.remove(n.getPid());
+		});
 		return Globals.search.indexAll(nodes, indexNameWithDatestamp).toString();
 	}
 
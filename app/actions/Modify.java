@@ -1205,7 +1205,7 @@ public class Modify extends RegalAction {
 			String userId) {
 		Map<String, Object> result = new HashMap<String, Object>();
 		try {
-			String content = Globals.dateFormat.format(date);
+			String content = Globals.dateFormat().format(date);
 			File file = CopyUtils.copyStringToFile(content);
 			node.setObjectTimestampFile(file.getAbsolutePath());
 			node.setLastModifiedBy(userId);
@@ -21,23 +21,32 @@ import static archive.fedora.FedoraVocabulary.IS_PART_OF;
 import static archive.fedora.Vocabulary.REL_CONTENT_TYPE;
 import static archive.fedora.Vocabulary.REL_IS_NODE_TYPE;
 import static archive.fedora.Vocabulary.TYPE_OBJECT;
+import helper.HierarchyIndex;
 import helper.HttpArchiveException;
 import helper.JsonMapper;
+import helper.StatusChecker;
+import helper.StatusStore;
 import helper.Webgatherer;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import models.DublinCoreData;
 import models.Gatherconf;
@@ -58,6 +67,7 @@ import archive.fedora.RdfUtils;
 import archive.fedora.UrlConnectionException;
 import archive.fedora.XmlUtils;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.wordnik.swagger.core.util.JsonUtil;
@@ -69,6 +79,8 @@ import com.wordnik.swagger.core.util.JsonUtil;
  */
 public class Read extends RegalAction {
 
+	private static final String[] TITLE_FIELDS = new String[] { "title" };
+
 	/**
 	 * @param pid the will be read to the node
 	 * @return a Node containing the data from the repository
@@ -94,44 +106,12 @@ public class Read extends RegalAction {
 	public Node getLastModifiedChild(Node node, String contentType) {
 		if (contentType == null || contentType.isEmpty()) {
 			return getLastModifiedChild(node);
-		} else {
-			Node oldestNode = null;
-			for (Node n : getParts(node)) {
-				if (contentType.equals(n.getContentType())) {
-					oldestNode = compareDates(n, oldestNode);
-				}
-			}
-			if (oldestNode == null)
-				return node;
-			return oldestNode;
-		}
-	}
-
-	private Node compareDates(Node currentNode, Node oldestNode) {
-		Date currentNodeDate = currentNode.getObjectTimestamp();
-		if (currentNodeDate == null)
-			currentNodeDate = currentNode.getLastModified();
-		if (oldestNode != null) {
-			Date oldestNodeDate = oldestNode.getObjectTimestamp();
-			if (oldestNodeDate == null)
-				oldestNodeDate = oldestNode.getLastModified();
-			if (currentNodeDate.after(oldestNodeDate)) {
-				oldestNode = currentNode;
-			}
-			// Special case: Since input has not to be sorted in any way, we
-			// need a condition to prefer child nodes over parent nodes.
-			// If both nodes have the same timestamp, the currentNode
-			// will win, if it is NOT a parent the oldest.
-			if (currentNodeDate.equals(oldestNodeDate)) {
-				if (!currentNode.getPid().equals(oldestNode.getParentPid())) {
-					oldestNode = currentNode;
-				}
-			}
-		} else {
-			return currentNode;
 		}
-		return oldestNode;
-
+		String pid =
+				loadHierarchy(node).getLastModified(node.getPid(), contentType);
+		if (pid == null)
+			return node;
+		return internalReadNode(pid);
 	}
 
 	/**
@@ -140,11 +120,41 @@ public class Read extends RegalAction {
 	 *         node itself and all of it's children nodes.
 	 */
 	public Node getLastModifiedChild(Node node) {
-		Node oldestNode = node;
-		for (Node n : getParts(node)) {
-			oldestNode = compareDates(n, oldestNode);
+		String pid = loadHierarchy(node).getLastModified(node.getPid());
+		if (node.getPid().equals(pid))
+			return node;
+		return internalReadNode(pid);
+	}
+
+	/**
+	 * Makes sure the tree of the node is known to {@link Globals#hierarchy}.
+	 * The tree is read again if it has been modified, has expired or has been
+	 * dropped from the hierarchy. Otherwise the hierarchy is kept up to date by
+	 * {@link Index}.
+	 *
+	 * @param node the root of a tree
+	 * @return the hierarchy
+	 */
+	public HierarchyIndex loadHierarchy(Node node) {
+		HierarchyIndex hierarchy = Globals.hierarchy;
+		if (!hierarchy.isComplete(node.getPid())) {
+			TreeLoader loader = new TreeLoader(this::internalReadNode, 0, 0);
+			List<Node> tree = loader.load(node);
+			// keeps the loaded nodes from being evicted before markComplete
+			hierarchy.pin(node.getPid());
+			try {
+				for (Node n : tree) {
+					if (!loader.isFailed(n.getPid()))
+						hierarchy.put(n);
+				}
+				// a tree with unreadable parts is loaded again on its next read
+				if (loader.isComplete())
+					hierarchy.markComplete(node.getPid());
+			} finally {
+				hierarchy.unpin(node.getPid());
+			}
 		}
-		return oldestNode;
+		return hierarchy;
 	}
 
 	/**
@@ -167,24 +177,73 @@ public class Read extends RegalAction {
 	}
 
 	void addLabelsForParts(Node n) {
-		List<Link> rels = n.getRelsExt();
-		for (Link l : rels) {
-			if (HAS_PART.equals(l.getPredicate())
-					|| IS_PART_OF.equals(l.getPredicate())) {
-				addLabel(n, l);
-			}
+		List<Link> links = n.getRelsExt().stream()
+				.filter(l -> HAS_PART.equals(l.getPredicate())
+						|| IS_PART_OF.equals(l.getPredicate()))
+				.collect(Collectors.toList());
+		if (links.isEmpty())
+			return;
+		Map<String, String> titles = readTitles(links.stream()
+				.map(l -> l.getObject()).distinct().collect(Collectors.toList()));
+		for (Link l : links) {
+			String label = titles.get(l.getObject());
+			if (label == null)
+				continue;
+			l.setObjectLabel(label);
+			n.removeRelation(l.getPredicate(), l.getObject());
+			n.addRelation(l);
 		}
 	}
 
-	private void addLabel(Node n, Link l) {
+	/**
+	 * Resolves the titles of many nodes at once. Known titles are taken from
+	 * {@link Globals#titles}, the others are fetched from the index with one
+	 * request. Only nodes that are missing in the index are read one by one.
+	 *
+	 * @param pids pids of nodes
+	 * @return a map from pid to title. Pids that cannot be read are left out.
+	 */
+	public Map<String, String> readTitles(List<String> pids) {
+		Map<String, String> result = new HashMap<String, String>();
+		List<String> missing = new ArrayList<String>();
+		for (String pid : pids) {
+			String title = Globals.titles.get(pid);
+			if (title == null)
+				missing.add(pid);
+			else
+				result.put(pid, title);
+		}
+		if (missing.isEmpty())
+			return result;
+		long generation = Globals.titles.getGeneration();
+		List<Map<String, Object>> docs = null;
 		try {
-			String label = readMetadata(l.getObject(), "title");
-			l.setObjectLabel(label);
-			n.removeRelation(l.getPredicate(), l.getObject());
-			n.addRelation(l);
+			UnitOfWork.flushIndex();
+			docs = Globals.search.getAll(missing, TITLE_FIELDS, null);
 		} catch (Exception e) {
-
+			play.Logger.debug("", e);
 		}
+		for (int i = 0; i < missing.size(); i++) {
+			String pid = missing.get(i);
+			Map<String, Object> doc = docs == null ? null : docs.get(i);
+			try {
+				String title = doc != null ? titleOf(doc) : readMetadata(pid, "title");
+				Globals.titles.put(pid, title, generation);
+				result.put(pid, title);
+			} catch (Exception e) {
+				play.Logger.debug("No title for " + pid, e);
+			}
+		}
+		return result;
+	}
+
+	private static String titleOf(Map<String, Object> doc) {
+		Object title = doc.get("title");
+		if (title instanceof List && !((List<?>) title).isEmpty())
+			return ((List<?>) title).get(0).toString();
+		if (title != null)
+			return title.toString();
+		return "No title";
 	}
 
 	/**
@@ -192,7 +251,8 @@ public class Read extends RegalAction {
 	 * @return a Map that represents the node
 	 */
 	public Map<String, Object> readNodeFromIndex(String pid) {
-		return Globals.search.get(pid);
+		UnitOfWork.flushIndex();
+		return Globals.search.get(pid, null, JsonMapper.privateFields);
 	}
 
 	/**
@@ -200,23 +260,42 @@ public class Read extends RegalAction {
 	 * @return all parts and their parts recursively
 	 */
 	public List<Node> getParts(Node node) {
-		List<Node> result = new ArrayList<Node>();
-		result.add(node);
-		List<Node> parts = getNodes(node.getPartsSorted().stream()
-				.map((Link l) -> l.getObject()).collect(Collectors.toList()));
-		for (Node p : parts) {
-			result.addAll(getParts(p));
+		return new TreeLoader(this::internalReadNode).load(node);
+	}
+
+	/**
+	 * Like getParts but reads all nodes from Fedora, bypassing the cache. Use
+	 * this before modifying a whole tree. The tree is not limited by
+	 * treeMaxSize and the call fails if a part cannot be read.
+	 *
+	 * @param pid the pid of the root
+	 * @return the root and all its parts recursively
+	 */
+	public List<Node> listComplexObject(String pid) {
+		if (!Globals.fedora.nodeExists(pid)) {
+			throw new HttpArchiveException(404, "Can not find: " + pid);
 		}
-		return result;
+		return new TreeLoader(this::reloadNode, 0, 0, true)
+				.load(reloadNode(pid));
 	}
 
 	/**
 	 * @param node a regal node
 	 * @param style if "short".equals(style), a shortened representation will be
 	 *          returned
-	 * @return a tree of regal objects starting with the passed node as root
+	 * @return a tree of regal objects starting with the passed node as root.
+	 *         Parts that do not exist are left as their link, a part that
+	 *         cannot be read fails the call with a 500.
 	 */
 	public Map<String, Object> getPartsAsTree(Node node, String style) {
+		TreeLoader loader = new TreeLoader(this::internalReadNode, 0,
+				Globals.treeMaxSize, true);
+		loader.load(node);
+		return getPartsAsTree(node, style, loader);
+	}
+
+	private Map<String, Object> getPartsAsTree(Node node, String style,
+			TreeLoader loader) {
 		Map<String, Object> nm = null;
 		if ("short".equals(style)) {
 			nm = new JsonMapper(node).getLdWithoutContextShortStyle();
@@ -228,10 +307,22 @@ public class Read extends RegalAction {
 				(List<Map<String, Object>>) nm.get("hasPart");
 		List<Map<String, Object>> children = new ArrayList<Map<String, Object>>();
 		if (parts != null) {
+			Map<String, Node> loaded = new HashMap<String, Node>();
+			List<Node> loadedParts = loader.getChildren(node.getPid());
+			if (loadedParts != null)
+				loadedParts.forEach(n -> loaded.put(n.getPid(), n));
 			for (Map<String, Object> part : parts) {
 				String id = (String) part.get("@id");
+				Node partNode = loaded.get(id);
+				if (partNode == null) {
+					// beyond the limits of the loader or a repeated part
+					Map<String, Object> child = new HashMap<String, Object>();
+					child.put(id, part);
+					children.add(child);
+					continue;
+				}
 				Map<String, Object> child = new HashMap<String, Object>();
-				child.put(id, getPartsAsTree(internalReadNode(id), style));
+				child.put(id, getPartsAsTree(partNode, style, loader));
 				children.add(child);
 			}
 			nm.put("hasPart", children);
@@ -239,6 +330,67 @@ public class Read extends RegalAction {
 		return nm;
 	}
 
+	/**
+	 * Writes the same tree as getPartsAsTree to a json generator. The tree is
+	 * walked depth-first and only the parts of the nodes on the current path
+	 * are held in memory. Parts that do not exist are written as their link,
+	 * a part that cannot be read aborts the tree with a 500.
+	 *
+	 * @param node a regal node
+	 * @param style if "short".equals(style), a shortened representation will be
+	 *          written
+	 * @param out the generator to write to
+	 * @throws IOException if the generator cannot write
+	 */
+	public void writePartsAsTree(Node node, String style, JsonGenerator out)
+			throws IOException {
+		writePartsAsTree(node, style, out, new HashSet<String>());
+	}
+
+	private void writePartsAsTree(Node node, String style, JsonGenerator out,
+			Set<String> path) throws IOException {
+		Map<String, Object> nm = null;
+		if ("short".equals(style)) {
+			nm = new JsonMapper(node).getLdWithoutContextShortStyle();
+		} else {
+			nm = new JsonMapper(node).getLdWithoutContext();
+		}
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> parts =
+				(List<Map<String, Object>>) nm.remove("hasPart");
+		out.writeStartObject();
+		for (Map.Entry<String, Object> e : nm.entrySet()) {
+			out.writeObjectField(e.getKey(), e.getValue());
+		}
+		if (parts != null) {
+			path.add(node.getPid());
+			// reads the parts of this level in parallel, fails if one of them
+			// cannot be read
+			TreeLoader loader =
+					new TreeLoader(this::internalReadNode, 1, 0, true);
+			loader.load(node);
+			Map<String, Node> loaded = new HashMap<String, Node>();
+			loader.getChildren(node.getPid())
+					.forEach(n -> loaded.put(n.getPid(), n));
+			out.writeArrayFieldStart("hasPart");
+			for (Map<String, Object> part : parts) {
+				String id = (String) part.get("@id");
+				Node partNode = loaded.remove(id);
+				out.writeStartObject();
+				out.writeFieldName(id);
+				if (partNode == null || path.contains(id)) {
+					out.writeObject(part);
+				} else {
+					writePartsAsTree(partNode, style, out, path);
+				}
+				out.writeEndObject();
+			}
+			out.writeEndArray();
+			path.remove(node.getPid());
+		}
+		out.writeEndObject();
+	}
+
 	public Map<String, Object> getMapWithParts(Node node) {
 		Map<String, Object> nm = node.getLd();
 		@SuppressWarnings("unchecked")
@@ -264,7 +416,9 @@ public class Read extends RegalAction {
 	public List<Map<String, Object>> hitlistToMap(List<SearchHit> list) {
 		List<Map<String, Object>> map = new ArrayList<Map<String, Object>>();
 		for (SearchHit hit : list) {
-			Map<String, Object> m = hit.getSource();
+			// hits may be shared through the query cache, don't modify them
+			Map<String, Object> m =
+					new LinkedHashMap<String, Object>(hit.getSource());
 			m.put("primaryTopic", hit.getId());
 			map.add(m);
 		}
@@ -280,10 +434,41 @@ public class Read extends RegalAction {
 	 */
 	public List<SearchHit> listSearch(String type, String namespace, int from,
 			int until) {
+		UnitOfWork.flushIndex();
 		return Arrays
 				.asList(Globals.search.list(namespace, type, from, until).getHits());
 	}
 
+	/**
+	 * Lists objects as stored in the private elasticsearch index, most recently
+	 * modified first. Fedora is not touched. Fields only kept for internal use,
+	 * like the oai sets, are left out.
+	 * 
+	 * @param type The objectTyp, empty for all types
+	 * @param namespace list only objects in this namespace, empty for all
+	 *          namespaces
+	 * @param from show only hits starting at this index
+	 * @param until show only hits ending at this index
+	 * @return a list of maps each represents a node
+	 */
+	public List<Map<String, Object>> listRepoFromIndex(String type,
+			String namespace, int from, int until) {
+		if (from < 0 || until <= from) {
+			throw new HttpArchiveException(316,
+					"until and from not sensible. choose a valid range, please.");
+		}
+		String[] index = namespace == null || namespace.isEmpty()
+				? Globals.namespaces : new String[] { namespace };
+		UnitOfWork.flushIndex();
+		SearchHits hits = Globals.search.listResources(index, type, from, until,
+				"isDescribedBy.modified", null, JsonMapper.privateFields);
+		List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+		for (SearchHit hit : hits.getHits()) {
+			result.add(hit.getSource());
+		}
+		return result;
+	}
+
 	/**
 	 * @param type The objectTyp
 	 * @param namespace list only objects in this namespace
@@ -313,6 +498,9 @@ public class Read extends RegalAction {
 	}
 
 	/**
+	 * Pids that cannot be read are replaced by empty nodes. Batch work should
+	 * use {@link #getNodes(List, BiConsumer)} instead.
+	 *
 	 * @param ids a list of ids to get objects for
 	 * @return a list of nodes
 	 */
@@ -327,13 +515,45 @@ public class Read extends RegalAction {
 		}).filter(n -> n != null).collect(Collectors.toList());
 	}
 
+	/**
+	 * Reads nodes for batch work. Unlike {@link #getNodes(List)}, pids that
+	 * cannot be read are not replaced by empty nodes but passed to failed.
+	 *
+	 * @param ids a list of ids to get objects for
+	 * @param failed receives every pid that cannot be read and the cause
+	 * @return the nodes that could be read, in the order of the ids
+	 */
+	public List<Node> getNodes(List<String> ids,
+			BiConsumer<String, Exception> failed) {
+		List<Node> result = new ArrayList<Node>(ids.size());
+		for (String id : ids) {
+			try {
+				result.add(internalReadNode(id));
+			} catch (Exception e) {
+				failed.accept(id, e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Like internalReadNode but bypasses the cache.
+	 *
+	 * @param pid the pid of the object
+	 * @return the node as stored in Fedora
+	 */
+	public Node reloadNode(String pid) {
+		removeNodeFromCache(pid);
+		return internalReadNode(pid);
+	}
+
 	/**
 	 * @param ids a list of ids to get objects for
 	 * @return a list of Maps each represents a node
 	 */
 	public List<Map<String, Object>> getNodesFromIndex(List<String> ids) {
-		return ids.stream().map((String id) -> readNodeFromIndex(id))
-				.collect(Collectors.toList());
+		UnitOfWork.flushIndex();
+		return Globals.search.getAll(ids, null, JsonMapper.privateFields);
 	}
 
 	private List<String> listRepo(String type, String namespace) {
@@ -382,6 +602,55 @@ public class Read extends RegalAction {
 		return sublist(list, from, until);
 	}
 
+	/**
+	 * Like {@link #listRepoNamespace(String)} but the pids are sorted and
+	 * fetched page by page while the iterator is consumed.
+	 * 
+	 * @param namespace a valid namespace
+	 * @return an iterator over pids
+	 */
+	public Iterator<String> streamRepoNamespace(String namespace) {
+		return Globals.fedora.iteratePids(namespace);
+	}
+
+	/**
+	 * @param namespace a valid namespace
+	 * @param after the iteration starts after this pid, may be null
+	 * @return an iterator over the pids of the namespace greater than after
+	 */
+	public Iterator<String> streamRepoNamespace(String namespace,
+			String after) {
+		return Globals.fedora.iteratePids(namespace, after);
+	}
+
+	/**
+	 * @param type a contentType
+	 * @param namespace a valid namespace
+	 * @return an iterator over the pids of all objects with the given type
+	 */
+	public Iterator<String> streamRepoType(String type, String namespace) {
+		return Globals.fedora.iteratePidsOfType(type, namespace);
+	}
+
+	/**
+	 * Reads each node when the iterator reaches it. Nodes that cannot be read
+	 * are logged and skipped.
+	 * 
+	 * @param pids an iterator over pids
+	 * @return an iterator over nodes
+	 */
+	public Iterator<Node> streamNodes(Iterator<String> pids) {
+		Iterable<String> iterable = () -> pids;
+		return StreamSupport.stream(iterable.spliterator(), false).map(pid -> {
+			try {
+				return internalReadNode(pid);
+			} catch (Exception e) {
+				Logger.error("" + pid, e);
+				return null;
+			}
+		}).filter(n -> n != null).iterator();
+	}
+
 	/**
 	 * List all pids within a namespace
 	 * 
@@ -576,11 +845,14 @@ public class Read extends RegalAction {
 	 */
 	public int getOaiStatus(Node node) {
 		try {
-			URL url = new URL(Globals.oaiMabXmlAddress + node.getPid());
-			HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			HttpURLConnection.setFollowRedirects(true);
+			HttpURLConnection con = Globals.statusChecker
+					.open(Globals.oaiMabXmlAddress + node.getPid());
+			con.setInstanceFollowRedirects(true);
 			con.connect();
-			Element root = XmlUtils.getDocument(con.getInputStream());
+			Element root = null;
+			try (InputStream in = con.getInputStream()) {
+				root = XmlUtils.getDocument(in);
+			}
 			List<Element> elements = XmlUtils.getElements("//setSpec", root, null);
 			if (elements.isEmpty())
 				return 404;
@@ -628,10 +900,93 @@ public class Read extends RegalAction {
 	 * @return a Map with status information
 	 */
 	public Map<String, Object> getStatus(Node node) {
+		return getStatus(node, false);
+	}
+
+	/**
+	 * @param node
+	 * @param recheck if false, the resolver results stored in
+	 *          {@link Globals#statusStore} are used. Objects that have never
+	 *          been checked are checked anyway.
+	 * @return a Map with status information
+	 */
+	public Map<String, Object> getStatus(Node node, boolean recheck) {
+		return getStatusAsync(node, recheck).join();
+	}
+
+	/**
+	 * @param node
+	 * @param recheck if true, the resolvers are checked again even if a result
+	 *          is stored
+	 * @return the future status information. The resolver results come from
+	 *         {@link #getResolverStatusAsync(Node, boolean)}, everything else
+	 *         is taken from the node and the crawler on every call.
+	 */
+	public CompletableFuture<Map<String, Object>> getStatusAsync(Node node,
+			boolean recheck) {
+		// the crawler state changes often, it is not cached
+		CompletableFuture<Map<String, Object>> gather =
+				Globals.statusChecker.check(null, "heritrix",
+						() -> getGatherStatus(node), new HashMap<String, Object>());
+		return getResolverStatusAsync(node, recheck).thenCombine(gather,
+				(resolvers, g) -> getStatus(node, resolvers, g));
+	}
+
+	/**
+	 * @param node
+	 * @param recheck if true, the resolvers are checked again even if a result
+	 *          is stored
+	 * @return the future urn, doi and oai status of the node. Results of new
+	 *         checks are stored in {@link Globals#statusStore}.
+	 */
+	public CompletableFuture<Map<String, Object>> getResolverStatusAsync(
+			Node node, boolean recheck) {
+		String pid = node.getPid();
+		if (!recheck) {
+			Map<String, Object> stored = Globals.statusStore.get(pid);
+			if (stored != null)
+				return CompletableFuture.completedFuture(stored);
+		} else {
+			Globals.statusChecker.invalidate("urn:" + pid);
+			Globals.statusChecker.invalidate("oai:" + pid);
+			if (node.getDoi() != null)
+				Globals.statusChecker.invalidate(
+						"code:" + Globals.doiResolverAddress + node.getDoi());
+		}
+		return checkResolvers(node)
+				.thenApply(status -> Globals.statusStore.put(pid, status));
+	}
+
+	/**
+	 * Starts the resolver checks of the node on {@link Globals#statusChecker}
+	 */
+	private CompletableFuture<Map<String, Object>> checkResolvers(Node node) {
+		StatusChecker checker = Globals.statusChecker;
+		String pid = node.getPid();
+		CompletableFuture<Integer> urn = checker.check("urn:" + pid,
+				Globals.urnResolverAddress, () -> urnStatus(node), 500);
+		CompletableFuture<Integer> doi = node.getDoi() == null
+				? CompletableFuture.completedFuture(500)
+				: checker.responseCode(Globals.doiResolverAddress + node.getDoi(),
+						500);
+		CompletableFuture<Integer> oai = checker.check("oai:" + pid,
+				Globals.oaiMabXmlAddress, () -> getOaiStatus(node), 500);
+		return CompletableFuture.allOf(urn, doi, oai).thenApply(v -> {
+			Map<String, Object> result = new HashMap<String, Object>();
+			result.put("urnStatus", urn.join());
+			result.put("doiStatus", doi.join());
+			result.put("oaiStatus", oai.join());
+			return result;
+		});
+	}
+
+	private Map<String, Object> getStatus(Node node,
+			Map<String, Object> resolvers, Map<String, Object> gatherStatus) {
 		Map<String, Object> result = new HashMap<String, Object>();
-		result.put("urnStatus", urnStatus(node));
-		result.put("doiStatus", doiStatus(node));
-		result.put("oaiStatus", getOaiStatus(node));
+		result.put("urnStatus", resolvers.get("urnStatus"));
+		result.put("doiStatus", resolvers.get("doiStatus"));
+		result.put("oaiStatus", resolvers.get("oaiStatus"));
+		result.put(StatusStore.CHECKED_AT, resolvers.get(StatusStore.CHECKED_AT));
 		result.put("links", getLinks(node));
 		result.put("title", getTitle(node));
 		result.put("metadataAccess", node.getPublishScheme());
@@ -640,7 +995,7 @@ public class Read extends RegalAction {
 		result.put("pid",
 				node.getPid().substring(node.getNamespace().length() + 1));
 		result.put("catalogId", node.getLegacyId());
-		result.put("webgatherer", getGatherStatus(node));
+		result.put("webgatherer", gatherStatus);
 		if (node.getUrn() != null) {
 			result.put("urn", node.getUrn());
 		} else {
@@ -690,26 +1045,27 @@ public class Read extends RegalAction {
 		}
 	}
 
-	private int doiStatus(Node node) {
-		return doiStatus(node.getDoi());
-	}
-
-	private int doiStatus(String doi) {
-		try {
-			return getFinalResponseCode(Globals.doiResolverAddress + doi);
-		} catch (Exception e) {
-			play.Logger.warn("", e);
-			return 500;
-		}
+	/**
+	 * @param nodes
+	 * @return status information for many nodes. The checks of all nodes run
+	 *         in parallel.
+	 */
+	public List<Map<String, Object>> getStatus(List<Node> nodes) {
+		return getStatus(nodes, false);
 	}
 
 	/**
 	 * @param nodes
-	 * @return status information for many nodes
+	 * @param recheck if false, stored results are returned where available
+	 * @return status information for many nodes. The checks of all nodes run
+	 *         in parallel.
 	 */
-	public List<Map<String, Object>> getStatus(List<Node> nodes) {
-		return nodes.stream().map((Node n) -> getStatus(n))
-				.collect(Collectors.toList());
+	public List<Map<String, Object>> getStatus(List<Node> nodes,
+			boolean recheck) {
+		List<CompletableFuture<Map<String, Object>>> futures =
+				nodes.stream().map((Node n) -> getStatusAsync(n, recheck))
+						.collect(Collectors.toList());
+		return futures.stream().map(f -> f.join()).collect(Collectors.toList());
 	}
 
 	/**
@@ -727,6 +1083,7 @@ public class Read extends RegalAction {
 		List<SearchHit> result = new ArrayList<SearchHit>();
 		int step = 100;
 		int start = 0;
+		UnitOfWork.flushIndex();
 		SearchHits hits =
 				Globals.search.query(new String[] { namespace }, query, start, step);
 		long size = hits.getTotalHits();
@@ -740,38 +1097,6 @@ public class Read extends RegalAction {
 
 	}
 
-	private int getFinalResponseCode(String url) throws IOException {
-		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-		con.setInstanceFollowRedirects(false);
-		con.setReadTimeout(1000 * 2);
-		con.connect();
-		con.getInputStream();
-		if (con.getResponseCode() == HttpURLConnection.HTTP_MOVED_PERM
-				|| con.getResponseCode() == HttpURLConnection.HTTP_MOVED_TEMP
-				|| con.getResponseCode() == 307 || con.getResponseCode() == 303) {
-			String redirectUrl = con.getHeaderField("Location");
-
-			return getFinalResponseCode(redirectUrl);
-		}
-		return con.getResponseCode();
-	}
-
-	public String getFinalURL(String url) throws IOException {
-		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-		con.setReadTimeout(1000 * 2);
-		con.setInstanceFollowRedirects(false);
-		con.connect();
-		con.getInputStream();
-		if (con.getResponseCode() == HttpURLConnection.HTTP_MOVED_PERM
-				|| con.getResponseCode() == HttpURLConnection.HTTP_MOVED_TEMP
-				|| con.getResponseCode() == 307 || con.getResponseCode() == 303) {
-			String redirectUrl = con.getHeaderField("Location");
-
-			return getFinalURL(redirectUrl);
-		}
-		return url;
-	}
-
 	String findAlephid(Node node) {
 		String pid = node.getPid();
 		List<Pair<String, String>> identifier =
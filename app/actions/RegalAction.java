@@ -30,21 +30,32 @@ public class RegalAction {
 
 	public Node updateIndex(String pid) {
 		removeNodeFromCache(pid);
+		// trees that contain the node are loaded again on their next read
+		Globals.hierarchy.invalidate(pid);
 		Node node = new Read().readNode(pid);
-		new Index().index(node);
+		// within a request the node is indexed once when the request ends
+		if (!UnitOfWork.markDirty(pid))
+			new Index().index(node);
 		return node;
 	}
 
 	Node readNodeFromCache(String pid) {
-		return (Node) Cache.get(pid);
+		Node node = UnitOfWork.get(pid);
+		if (node != null)
+			return node;
+		node = (Node) Cache.get(pid);
+		UnitOfWork.put(node);
+		return node;
 	}
 
 	void writeNodeToCache(Node node) {
 		Cache.set(node.getPid(), node);
+		UnitOfWork.put(node);
 	}
 
 	void removeNodeFromCache(String pid) {
 		Cache.remove(pid);
+		UnitOfWork.forget(pid);
 	}
 
 	protected String createAggregationUri(String pid) {
@@ -17,20 +17,25 @@
 package actions;
 
 import helper.DataciteMapper;
+import helper.FulltextQueue;
+import helper.HierarchyIndex;
 import helper.HttpArchiveException;
 import helper.JsonMapper;
 import helper.PdfText;
+import helper.RepresentationStore;
 import helper.oai.OaiDcMapper;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import models.DataciteRecord;
 import models.DublinCoreData;
@@ -39,9 +44,20 @@ import models.MabRecord;
 import models.Node;
 
 import org.apache.commons.codec.binary.Base64;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
 import org.w3c.dom.Element;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.wordnik.swagger.core.util.JsonUtil;
+
+import views.html.mab;
+import views.html.mets;
+import views.html.oaidc;
 import archive.fedora.CopyUtils;
+import archive.fedora.RdfUtils;
 import archive.fedora.XmlUtils;
 import converter.mab.RegalToMabMapper;
 
@@ -51,34 +67,61 @@ import converter.mab.RegalToMabMapper;
  */
 public class Transform {
 
+	/**
+	 * Formats that are kept in {@link Globals#representations}
+	 */
+	public static final List<String> STORED_FORMATS =
+			Arrays.asList("oaidc", "epicur", "aleph", "mets", "rdf");
+
+	/**
+	 * Version of the renderer of each format. Increase it when the output of a
+	 * renderer changes, so stored representations of unchanged objects are
+	 * rendered again and clients don't revalidate to an outdated copy.
+	 */
+	static final Map<String, Integer> RENDERER_VERSIONS =
+			new HashMap<String, Integer>();
+
+	static {
+		RENDERER_VERSIONS.put("oaidc", 1);
+		RENDERER_VERSIONS.put("epicur", 1);
+		RENDERER_VERSIONS.put("aleph", 2);
+		RENDERER_VERSIONS.put("mets", 1);
+		RENDERER_VERSIONS.put("rdf", 1);
+		// written by the aleph mapping
+		RENDERER_VERSIONS.put("mabxml", 2);
+		RENDERER_VERSIONS.put("datacite", 1);
+		RENDERER_VERSIONS.put("json", 1);
+		RENDERER_VERSIONS.put("html", 1);
+	}
+
+	/**
+	 * @param format a format like "aleph" or "json"
+	 * @return the version of its renderer, 0 if it has none
+	 */
+	public static int rendererVersion(String format) {
+		return RENDERER_VERSIONS.getOrDefault(format, 0);
+	}
+
 	/**
 	 * @param node pid with namespace:pid
 	 * @return a aleph mab xml representation
-	 * @throws UnsupportedEncodingException
 	 */
 	public MabRecord aleph(Node node) {
-		try {
-			RegalToMabMapper mapper = new RegalToMabMapper();
-			MabRecord record;
-			record = mapper.map(
-					new ByteArrayInputStream(node.getMetadata().getBytes("utf-8")),
-					node.getPid());
-			record.httpAdresse = Globals.urnbase + node.getPid();
-			record.doi = node.getDoi();
-			if (node.hasUrn())
-				record.urn = node.getUrn();
-			else if (node.hasUrnInMetadata())
-				record.urn = node.getUrnFromMetadata();
-			return record;
-		} catch (UnsupportedEncodingException e) {
-			throw new HttpArchiveException(500, e);
-		}
+		RegalToMabMapper mapper = new RegalToMabMapper();
+		MabRecord record =
+				mapper.map(node.getMetadataStatements(), node.getPid());
+		record.httpAdresse = Globals.urnbase + node.getPid();
+		record.doi = node.getDoi();
+		if (node.hasUrn())
+			record.urn = node.getUrn();
+		else if (node.hasUrnInMetadata())
+			record.urn = node.getUrnFromMetadata();
+		return record;
 	}
 
 	/**
 	 * @param pid pid with namespace:pid
 	 * @return a aleph mab xml representation
-	 * @throws UnsupportedEncodingException
 	 */
 	public MabRecord aleph(String pid) {
 		return aleph(new Read().readNode(pid));
@@ -167,27 +210,143 @@ public class Transform {
 	 * @return a dc mapping
 	 */
 	public DublinCoreData oaidc(String pid) {
-		Node node = new Read().readNode(pid);
+		return oaidc(new Read().readNode(pid));
+	}
+
+	/**
+	 * @param node an object
+	 * @return a dc mapping
+	 */
+	public DublinCoreData oaidc(Node node) {
 		String uri = Globals.urnbase + node.getPid();
 		DublinCoreData data =
 				new OaiDcMapper(node).getData().addIdentifier(uri, "dcterms-Uri");
 		return data;
 	}
 
+	/**
+	 * @param node an object
+	 * @param format a format of {@link #STORED_FORMATS}
+	 * @return the gzipped representation. It is taken from
+	 *         {@link Globals#representations} or rendered and stored if the
+	 *         object has changed since it was stored.
+	 */
+	public byte[] representation(Node node, String format) {
+		String version = getVersion(node, format);
+		byte[] stored = Globals.representations.get(node.getPid(), format, version);
+		if (stored != null)
+			return stored;
+		byte[] rendered = RepresentationStore.gzip(render(node, format));
+		Globals.representations.put(node.getPid(), format, version, rendered);
+		return rendered;
+	}
+
+	/**
+	 * @param node an object
+	 * @param format a format of {@link #STORED_FORMATS}
+	 * @return the rendered representation
+	 */
+	public String render(Node node, String format) {
+		switch (format) {
+		case "oaidc":
+			return oaidc.render(oaidc(node)).toString();
+		case "epicur":
+			return epicur(node);
+		case "aleph":
+			return mab.render(aleph(node)).toString();
+		case "mets":
+			return mets.render(new Read().getPartsAsTree(node, "long"), oaidc(node))
+					.toString();
+		case "rdf":
+			return rdf(node, RDFFormat.RDFXML);
+		default:
+			throw new HttpArchiveException(400, "Unknown format " + format);
+		}
+	}
+
+	/**
+	 * @param node an object
+	 * @param format a rdf format
+	 * @return the metadata and the RELS-EXT links of the object
+	 */
+	public String rdf(Node node, RDFFormat format) {
+		try {
+			StringWriter out = new StringWriter();
+			RDFWriter writer = Rio.createWriter(format, out);
+			writer.startRDF();
+			RdfUtils.writeStatements(node.getPid(), node.getMetadata(),
+					node.getRelsExt(), writer);
+			writer.endRDF();
+			return out.toString();
+		} catch (RDFHandlerException e) {
+			throw new HttpArchiveException(500, e);
+		}
+	}
+
+	/**
+	 * Looks a representation up without reading the object, e.g. for a pid
+	 * and lastModified taken from the index. A mets representation is only
+	 * found if the tree of the object is known to {@link Globals#hierarchy}.
+	 *
+	 * @param pid the pid of an object
+	 * @param format a format of {@link #STORED_FORMATS}
+	 * @param lastModified the lastModified time of the object
+	 * @return the gzipped representation or null if it is not stored in the
+	 *         current version
+	 */
+	public byte[] storedRepresentation(String pid, String format,
+			long lastModified) {
+		if (!"mets".equals(format))
+			return Globals.representations.get(pid, format,
+					version(format, lastModified, null, pid));
+		if (!Globals.hierarchy.isComplete(pid))
+			return null;
+		return Globals.representations.get(pid, format,
+				version(format, lastModified, Globals.hierarchy, pid));
+	}
+
+	/**
+	 * The version starts with the version of the renderer. The version of a
+	 * mets representation changes with every node of the tree, the others with
+	 * the object only.
+	 */
+	private String getVersion(Node node, String format) {
+		long time = node.getLastModified() == null ? 0
+				: node.getLastModified().getTime();
+		HierarchyIndex hierarchy =
+				"mets".equals(format) ? new Read().loadHierarchy(node) : null;
+		return version(format, time, hierarchy, node.getPid());
+	}
+
+	static String version(String format, long time,
+			HierarchyIndex hierarchy, String pid) {
+		String renderer = "r" + rendererVersion(format) + "-";
+		if (hierarchy == null)
+			return renderer + Long.toHexString(time);
+		time = Math.max(time, hierarchy.getNewest(pid));
+		return renderer + Long.toHexString(time) + "-"
+				+ hierarchy.countDescendants(pid);
+	}
+
 	/**
 	 * @param pid the pid of a node with pdf data
 	 * @return the plain text content of the pdf
 	 */
-	public Node pdfbox(String pid) {
+	public String pdfbox(String pid) {
 		return pdfbox(new Read().readNode(pid));
 	}
 
 	/**
+	 * The text is taken from {@link Globals#fulltexts} if the data has been
+	 * extracted before. Otherwise the data is read from fedora, extracted and
+	 * stored under its checksum. The node is not modified. No access check is
+	 * made, callers that answer requests must check the data access of the
+	 * node first.
+	 *
 	 * @param node the node with pdf data
 	 * @return the plain text content of the pdf
 	 */
-	public Node pdfbox(final Node node) {
-		Node result = node;
+	public String pdfbox(final Node node) {
 		String pid = node.getPid();
 		String mimeType = node.getMimeType();
 		if (mimeType == null)
@@ -196,29 +355,45 @@ public class Transform {
 		if (mimeType.compareTo("application/pdf") != 0)
 			throw new HttpArchiveException(406,
 					"Wrong mime type. Cannot extract text from " + mimeType);
-		InputStream content = null;
+		String checksum = node.getChecksum();
+		String text = Globals.fulltexts.get(checksum);
+		if (text != null)
+			return text;
+		FulltextQueue.Extraction extraction;
+		try (InputStream content = openData(node)) {
+			extraction = Globals.fulltextQueue.extract(content, checksum);
+		} catch (IOException e) {
+			throw new HttpArchiveException(500, e);
+		}
+		if (extraction.verified)
+			Globals.fulltexts.put(checksum, extraction.text);
+		return extraction.text;
+	}
 
+	/**
+	 * @param node the node with pdf data
+	 * @return the json source of the node for the fulltext index, including
+	 *         the extracted text
+	 */
+	public String pdfboxSource(Node node) {
+		Map<String, Object> ld = node.getLd();
+		ld.put("fulltext-ocr", pdfbox(node));
 		try {
-			URL url = new URL(getInternalDataUri(node));
-			String authStr = "edoweb-anonymous:nopwd";
-			String authEncoded = Base64.encodeBase64String(authStr.getBytes());
-			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-			connection.setRequestProperty("Authorization", "Basic " + authEncoded);
-			PdfText pdf = new PdfText();
-			result.addFulltext(pdf.toString(connection.getInputStream()));
-		} catch (MalformedURLException e) {
-			throw new HttpArchiveException(500, e);
-		} catch (IOException e) {
+			return JsonUtil.mapper().writeValueAsString(ld);
+		} catch (JsonProcessingException e) {
 			throw new HttpArchiveException(500, e);
-		} finally {
-			if (content != null)
-				try {
-					content.close();
-				} catch (IOException e) {
-					play.Logger.warn("", e);
-				}
 		}
-		return result;
+	}
+
+	private InputStream openData(Node node) throws IOException {
+		if (node.isManaged())
+			return Globals.fedora.getDataStream(node.getPid());
+		URL url = new URL(getInternalDataUri(node));
+		String authStr = "edoweb-anonymous:nopwd";
+		String authEncoded = Base64.encodeBase64String(authStr.getBytes());
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestProperty("Authorization", "Basic " + authEncoded);
+		return connection.getInputStream();
 	}
 
 	/**
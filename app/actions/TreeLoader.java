@@ -0,0 +1,243 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package actions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import helper.HttpArchiveException;
+import models.Globals;
+import models.Link;
+import models.Node;
+
+/**
+ * Loads an object tree level by level. All children of a level are read in
+ * parallel, the number of concurrent reads is bounded by
+ * {@link Globals#treeParallelism}. Siblings keep the order given by the seq
+ * datastream of their parent.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class TreeLoader {
+
+	private static final ExecutorService readers =
+			Executors.newFixedThreadPool(Globals.treeParallelism, r -> {
+				Thread t = new Thread(r, "tree-loader");
+				t.setDaemon(true);
+				return t;
+			});
+
+	private final Function<String, Node> reader;
+	private final int maxDepth;
+	private final int maxSize;
+	private final boolean failOnError;
+	private final Set<String> failed = ConcurrentHashMap.newKeySet();
+	private boolean truncated = false;
+	private final Map<String, List<Node>> children =
+			new HashMap<String, List<Node>>();
+
+	/**
+	 * @param reader reads a node by its pid, e.g. Read::internalReadNode
+	 * @param maxDepth levels below the root to load, 0 for no limit
+	 * @param maxSize maximum number of nodes to load, 0 for no limit
+	 * @param failOnError true to fail if a part cannot be read. Parts that do
+	 *          not exist are left out. If false, an empty node is returned for
+	 *          a part that cannot be read.
+	 */
+	public TreeLoader(Function<String, Node> reader, int maxDepth, int maxSize,
+			boolean failOnError) {
+		this.reader = reader;
+		this.maxDepth = maxDepth;
+		this.maxSize = maxSize;
+		this.failOnError = failOnError;
+	}
+
+	/**
+	 * @param reader reads a node by its pid, e.g. Read::internalReadNode
+	 * @param maxDepth levels below the root to load, 0 for no limit
+	 * @param maxSize maximum number of nodes to load, 0 for no limit
+	 */
+	public TreeLoader(Function<String, Node> reader, int maxDepth, int maxSize) {
+		this(reader, maxDepth, maxSize, false);
+	}
+
+	/**
+	 * @param reader reads a node by its pid
+	 */
+	public TreeLoader(Function<String, Node> reader) {
+		this(reader, 0, Globals.treeMaxSize);
+	}
+
+	/**
+	 * @param root the root of the tree
+	 * @return the root and all its parts in the order of a depth-first walk
+	 */
+	public List<Node> load(Node root) {
+		walk(root, n -> {
+		}, true);
+		List<Node> result = new ArrayList<Node>();
+		collect(root, result, new HashSet<String>());
+		return result;
+	}
+
+	/**
+	 * Loads the tree and passes every node to the sink as soon as its level has
+	 * been read. Nodes arrive level by level, the root first. Only the current
+	 * level is held in memory, {@link #getChildren(String)} is not available
+	 * afterwards.
+	 *
+	 * @param root the root of the tree
+	 * @param sink receives the nodes
+	 */
+	public void stream(Node root, Consumer<Node> sink) {
+		walk(root, sink, false);
+	}
+
+	/**
+	 * @return true if the last load read every part of the tree, false if it
+	 *         stopped at maxSize or a part could not be read
+	 */
+	public boolean isComplete() {
+		return !truncated && failed.isEmpty();
+	}
+
+	/**
+	 * @param pid the pid of a part
+	 * @return true if the part could not be read and an empty node has been
+	 *         returned in its place
+	 */
+	public boolean isFailed(String pid) {
+		return failed.contains(pid);
+	}
+
+	private void walk(Node root, Consumer<Node> sink, boolean keep) {
+		children.clear();
+		failed.clear();
+		truncated = false;
+		Set<String> seen = new HashSet<String>();
+		seen.add(root.getPid());
+		sink.accept(root);
+		List<Node> level = new ArrayList<Node>();
+		level.add(root);
+		int size = 1;
+		for (int depth = 1; !level.isEmpty()
+				&& (maxDepth <= 0 || depth <= maxDepth); depth++) {
+			Map<String, List<Future<Node>>> pending =
+					new HashMap<String, List<Future<Node>>>();
+			for (Node parent : level) {
+				List<Future<Node>> parts = new ArrayList<Future<Node>>();
+				for (Link l : parent.getPartsSorted()) {
+					String pid = l.getObject();
+					if (maxSize > 0 && size >= maxSize) {
+						truncated = true;
+						break;
+					}
+					// guards against cycles in hasPart
+					if (!seen.add(pid))
+						continue;
+					parts.add(readers.submit(() -> read(pid)));
+					size++;
+				}
+				pending.put(parent.getPid(), parts);
+			}
+			List<Node> next = new ArrayList<Node>();
+			for (Node parent : level) {
+				List<Node> parts = new ArrayList<Node>();
+				for (Future<Node> f : pending.get(parent.getPid())) {
+					Node part = get(f);
+					if (part == null)
+						continue;
+					parts.add(part);
+					next.add(part);
+					sink.accept(part);
+				}
+				if (keep)
+					children.put(parent.getPid(), parts);
+			}
+			level = next;
+		}
+	}
+
+	/**
+	 * @param pid the pid of a loaded node
+	 * @return the loaded parts of the node in seq order, null if the node's
+	 *         level has not been loaded
+	 */
+	public List<Node> getChildren(String pid) {
+		return children.get(pid);
+	}
+
+	private void collect(Node node, List<Node> result, Set<String> visited) {
+		if (!visited.add(node.getPid()))
+			return;
+		result.add(node);
+		List<Node> parts = children.get(node.getPid());
+		if (parts == null)
+			return;
+		for (Node p : parts) {
+			collect(p, result, visited);
+		}
+	}
+
+	private Node read(String pid) {
+		try {
+			return reader.apply(pid);
+		} catch (HttpArchiveException e) {
+			if (failOnError && e.getCode() == 404) {
+				play.Logger.warn("Skip missing part " + pid);
+				return null;
+			}
+			return failed(pid, e);
+		} catch (Exception e) {
+			return failed(pid, e);
+		}
+	}
+
+	private Node failed(String pid, Exception e) {
+		if (failOnError)
+			throw new HttpArchiveException(500, "Can not read part " + pid + ": "
+					+ e.getMessage());
+		play.Logger.error("" + pid, e);
+		failed.add(pid);
+		return new Node(pid);
+	}
+
+	private static Node get(Future<Node> f) {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HttpArchiveException(500, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof HttpArchiveException)
+				throw (HttpArchiveException) e.getCause();
+			throw new HttpArchiveException(500, e);
+		}
+	}
+}
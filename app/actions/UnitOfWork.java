@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package actions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import models.Node;
+
+/**
+ * Request-scoped identity map. While a unit of work is active on the current
+ * thread, every pid is loaded at most once, and nodes that have been written
+ * are reindexed once when the unit of work ends instead of after every
+ * single write.
+ *
+ * The deferral only spans writes. {@link Read} calls {@link #flushIndex()}
+ * before it reads from elasticsearch, so an index-backed read in the same
+ * request sees every write that came before it. Code that queries
+ * {@link models.Globals#search} directly must do the same.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class UnitOfWork {
+
+	private static final ThreadLocal<UnitOfWork> current =
+			new ThreadLocal<UnitOfWork>();
+
+	/**
+	 * Reindexes a node that has been written. Tests replace it, as they run
+	 * without an index.
+	 */
+	static Consumer<String> reindexer =
+			pid -> new RegalAction().updateIndex(pid);
+
+	private final Map<String, Node> nodes = new HashMap<String, Node>();
+	private final Set<String> dirty = new LinkedHashSet<String>();
+	private int depth = 0;
+
+	/**
+	 * Starts a unit of work on the current thread. Calls may be nested, only
+	 * the outermost end flushes.
+	 */
+	public static void begin() {
+		UnitOfWork work = current.get();
+		if (work == null) {
+			work = new UnitOfWork();
+			current.set(work);
+		}
+		work.depth++;
+	}
+
+	/**
+	 * Ends the unit of work and reindexes all nodes that have been written
+	 */
+	public static void end() {
+		UnitOfWork work = current.get();
+		if (work == null || --work.depth > 0)
+			return;
+		current.remove();
+		work.flush();
+	}
+
+	static Node get(String pid) {
+		UnitOfWork work = current.get();
+		return work == null ? null : work.nodes.get(pid);
+	}
+
+	static void put(Node node) {
+		UnitOfWork work = current.get();
+		if (work != null && node != null)
+			work.nodes.put(node.getPid(), node);
+	}
+
+	static void forget(String pid) {
+		UnitOfWork work = current.get();
+		if (work != null)
+			work.nodes.remove(pid);
+	}
+
+	/**
+	 * @param pid a node that has been written
+	 * @return true if the reindex is deferred to the end of the unit of work
+	 */
+	static boolean markDirty(String pid) {
+		UnitOfWork work = current.get();
+		if (work == null)
+			return false;
+		work.dirty.add(pid);
+		return true;
+	}
+
+	/**
+	 * @param pid a node that has been removed from the index
+	 */
+	static void discard(String pid) {
+		UnitOfWork work = current.get();
+		if (work != null)
+			work.dirty.remove(pid);
+	}
+
+	/**
+	 * Reindexes the nodes written so far. The unit of work stays active.
+	 */
+	public static void flushIndex() {
+		UnitOfWork work = current.get();
+		if (work == null || work.dirty.isEmpty())
+			return;
+		List<String> pids = new ArrayList<String>(work.dirty);
+		work.dirty.clear();
+		// without a unit of work updateIndex indexes immediately
+		current.remove();
+		try {
+			reindex(pids, "before an index read");
+		} finally {
+			current.set(work);
+		}
+	}
+
+	private void flush() {
+		List<String> pids = new ArrayList<String>(dirty);
+		dirty.clear();
+		nodes.clear();
+		reindex(pids, "at end of request");
+	}
+
+	private static void reindex(List<String> pids, String when) {
+		for (String pid : pids) {
+			try {
+				reindexer.accept(pid);
+			} catch (Exception e) {
+				play.Logger.warn("Cannot reindex " + pid + " " + when, e);
+			}
+		}
+	}
+}
@@ -22,11 +22,17 @@ import static archive.fedora.FedoraVocabulary.REL_HAS_MODEL;
 import static archive.fedora.FedoraVocabulary.SIMPLE;
 import helper.HttpArchiveException;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.Vector;
 
 import models.Globals;
@@ -161,6 +167,11 @@ public class FedoraFacade {
 
 	}
 
+	/**
+	 * Name of this backend in {@link Globals#bulkThrottle}
+	 */
+	public static final String BACKEND = "fedora";
+
 	static FedoraFacade me = null;
 	Utils utils = null;
 
@@ -201,6 +212,10 @@ public class FedoraFacade {
 	 * @param node
 	 */
 	public void createNode(Node node) {
+		Globals.bulkThrottle.run(BACKEND, () -> createNodeInFedora(node));
+	}
+
+	private void createNodeInFedora(Node node) {
 		try {
 			new Ingest(node.getPid()).label(node.getLabel()).execute();
 			DublinCoreHandler.updateDc(node);
@@ -253,6 +268,11 @@ public class FedoraFacade {
 	 * @return
 	 */
 	public Node readNode(String pid) {
+		return Globals.bulkThrottle.call(BACKEND, 1,
+				() -> readNodeFromFedora(pid));
+	}
+
+	private Node readNodeFromFedora(String pid) {
 		if (!nodeExists(pid))
 			throw new NodeNotFoundException(404, pid);
 		Node node = new Node();
@@ -277,7 +297,7 @@ public class FedoraFacade {
 							.execute();
 			String objectTimestamp =
 					CopyUtils.copyToString(response.getEntityInputStream(), "utf-8");
-			node.setObjectTimestamp(Globals.dateFormat.parse(objectTimestamp));
+			node.setObjectTimestamp(Globals.dateFormat().parse(objectTimestamp));
 		} catch (Exception e) {
 		}
 	}
@@ -349,6 +369,10 @@ public class FedoraFacade {
 	 * @param node
 	 */
 	public void updateNode(Node node) {
+		Globals.bulkThrottle.run(BACKEND, () -> updateNodeInFedora(node));
+	}
+
+	private void updateNodeInFedora(Node node) {
 		play.Logger.info("Update node in fedora");
 		DublinCoreHandler.updateDc(node);
 		List<Transformer> models = node.getTransformer();
@@ -386,6 +410,25 @@ public class FedoraFacade {
 		getDatesFromFedora(node);
 	}
 
+	/**
+	 * Writes only the relations and content models of the node. Unlike
+	 * {@link #updateNode(Node)} no datastreams are touched.
+	 *
+	 * @param node
+	 */
+	public void updateRelsExt(Node node) {
+		Globals.bulkThrottle.run(BACKEND, () -> updateRelsExtInFedora(node));
+	}
+
+	private void updateRelsExtInFedora(Node node) {
+		play.Logger.info("Update RELS-EXT of " + node.getPid() + " in fedora");
+		List<Transformer> models = node.getTransformer();
+		node.removeRelations(REL_HAS_MODEL);
+		utils.linkContentModels(models, node);
+		utils.updateRelsExt(node);
+		getDatesFromFedora(node);
+	}
+
 	private void getDatesFromFedora(Node node) {
 		try {
 			GetObjectProfileResponse prof =
@@ -457,20 +500,24 @@ public class FedoraFacade {
 	 * @param rootPID
 	 */
 	public void deleteNode(String rootPID) {
-		try {
-			new ModifyObject(rootPID).state("D").execute();
-		} catch (FedoraClientException e) {
-			throw new DeleteException(e.getStatus(), e);
-		}
+		Globals.bulkThrottle.run(BACKEND, () -> {
+			try {
+				new ModifyObject(rootPID).state("D").execute();
+			} catch (FedoraClientException e) {
+				throw new DeleteException(e.getStatus(), e);
+			}
+		});
 	}
 
 	public void purgeNode(String rootPID) {
-		try {
-			unlinkParent(rootPID);
-			new PurgeObject(rootPID).execute();
-		} catch (FedoraClientException e) {
-			throw new DeleteException(e.getStatus(), e);
-		}
+		Globals.bulkThrottle.run(BACKEND, () -> {
+			try {
+				unlinkParent(rootPID);
+				new PurgeObject(rootPID).execute();
+			} catch (FedoraClientException e) {
+				throw new DeleteException(e.getStatus(), e);
+			}
+		});
 	}
 
 	/**
@@ -500,6 +547,22 @@ public class FedoraFacade {
 		utils.updateContentModels(cms);
 	}
 
+	/**
+	 * Reads the data stream straight from fedora, without passing the api
+	 *
+	 * @param pid the pid of an object with data
+	 * @return the content of the data stream. Must be closed by the caller.
+	 */
+	public InputStream getDataStream(String pid) {
+		try {
+			FedoraResponse response =
+					new GetDatastreamDissemination(pid, "data").execute();
+			return response.getEntityInputStream();
+		} catch (FedoraClientException e) {
+			throw new HttpArchiveException(e.getStatus(), e);
+		}
+	}
+
 	/**
 	 * @param query
 	 * @param queryFormat
@@ -517,6 +580,77 @@ public class FedoraFacade {
 		}
 	}
 
+	/**
+	 * Asks the resource index for all objects that have been modified after a
+	 * certain date. The result is ordered by modification date, oldest first.
+	 * 
+	 * @param namespace only pids of this namespace will be returned
+	 * @param since the date to compare with fedora-view:lastModifiedDate
+	 * @return a list of pids
+	 */
+	public List<String> findPidsModifiedSince(String namespace, Date since) {
+		SimpleDateFormat xsdDate =
+				new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		xsdDate.setTimeZone(TimeZone.getTimeZone("UTC"));
+		String query = "select $object $modified from <#ri> "
+				+ "where $object <fedora-view:lastModifiedDate> $modified "
+				+ "and $modified <mulgara:after> '" + xsdDate.format(since)
+				+ "'^^<xml-schema:dateTime> in <#xsd> order by $modified";
+		List<String> result = new ArrayList<String>();
+		try {
+			FedoraResponse response = new RiSearch(query)
+					.format(FedoraVocabulary.CSV).lang(FedoraVocabulary.ITQL)
+					.type(FedoraVocabulary.TUPLES).execute();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+					response.getEntityInputStream(), "utf-8"))) {
+				// first line is the csv header
+				String line = reader.readLine();
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty())
+						continue;
+					String pid = removeUriPrefix(line.split(",")[0]);
+					if (pid.startsWith(namespace + ":")) {
+						result.add(pid);
+					}
+				}
+			}
+			return result;
+		} catch (Exception e) {
+			throw new SearchException(500, e);
+		}
+	}
+
+	/**
+	 * @param namespace a namespace
+	 * @return all pids of the namespace in ascending order, fetched lazily
+	 */
+	public Iterator<String> iteratePids(String namespace) {
+		return iteratePids(namespace, null);
+	}
+
+	/**
+	 * @param namespace a namespace
+	 * @param after the iteration starts after this pid, may be null
+	 * @return the pids of the namespace greater than after in ascending order,
+	 *         fetched lazily
+	 */
+	public Iterator<String> iteratePids(String namespace, String after) {
+		return new PidIterator("?object "
+				+ "<info:fedora/fedora-system:def/model#hasModel> "
+				+ "<info:fedora/fedora-system:FedoraObject-3.0>", namespace, after);
+	}
+
+	/**
+	 * @param contentType a regal contentType like "webpage"
+	 * @param namespace a namespace
+	 * @return pids of the contentType in ascending order, fetched lazily
+	 */
+	public Iterator<String> iteratePidsOfType(String contentType,
+			String namespace) {
+		return new PidIterator("?object <" + Vocabulary.REL_CONTENT_TYPE + "> \""
+				+ contentType + "\"", namespace, null);
+	}
+
 	/**
 	 * @param pred
 	 * @return
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package archive.fedora;
+
+import helper.HttpArchiveException;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.yourmediashelf.fedora.client.request.RiSearch;
+import com.yourmediashelf.fedora.client.response.FedoraResponse;
+
+/**
+ * Iterates over the pids of a namespace in ascending order. Pids are fetched
+ * page by page from the resource index, so memory does not grow with the
+ * size of the repository. Each page starts after the last pid of the
+ * previous one instead of at an offset, so objects created or purged during
+ * the iteration don't shift pages, and the query is restricted to the range
+ * of the namespace rather than filtered here.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class PidIterator implements Iterator<String> {
+
+	private static final int PAGE_SIZE = 1000;
+
+	/**
+	 * Fetches one page of subjects from the resource index
+	 */
+	interface Pages {
+		/**
+		 * @param after the page starts after this subject
+		 * @param before the page ends before this subject
+		 * @param limit the maximum size of the page
+		 * @return the subjects in ascending order, like info:fedora/ns:1
+		 */
+		List<String> fetch(String after, String before, int limit);
+	}
+
+	private final Pages pages;
+	private final int pageSize;
+	private final String upperBound;
+	private final Deque<String> buffer = new ArrayDeque<String>();
+	private String last;
+	private boolean exhausted = false;
+
+	/**
+	 * @param where a SPARQL triple pattern that binds ?object
+	 * @param namespace only pids of this namespace are returned
+	 * @param after only pids greater than this one are returned, may be null
+	 */
+	PidIterator(String where, String namespace, String after) {
+		this((from, to, limit) -> riSearch(where, from, to, limit), PAGE_SIZE,
+				namespace, after);
+	}
+
+	PidIterator(Pages pages, int pageSize, String namespace, String after) {
+		this.pages = pages;
+		this.pageSize = pageSize;
+		// ';' follows ':', so the namespace is the range between both
+		this.last = "info:fedora/" + (after == null ? namespace + ":" : after);
+		this.upperBound = "info:fedora/" + namespace + ";";
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (buffer.isEmpty() && !exhausted) {
+			fetchPage();
+		}
+		return !buffer.isEmpty();
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return buffer.poll();
+	}
+
+	private void fetchPage() {
+		List<String> page = pages.fetch(last, upperBound, pageSize);
+		for (String subject : page) {
+			last = subject;
+			buffer.add(subject.replace("info:fedora/", ""));
+		}
+		exhausted = page.size() < pageSize;
+	}
+
+	private static List<String> riSearch(String where, String after,
+			String before, int limit) {
+		String query = "select ?object where { " + where
+				+ " . filter(str(?object) > \"" + after + "\" && str(?object) < \""
+				+ before + "\") } order by ?object limit " + limit;
+		List<String> result = new ArrayList<String>();
+		try {
+			FedoraResponse response = new RiSearch(query)
+					.format(FedoraVocabulary.CSV).lang(FedoraVocabulary.SPARQL)
+					.type(FedoraVocabulary.TUPLES).execute();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+					response.getEntityInputStream(), "utf-8"))) {
+				// first line is the csv header
+				String line = reader.readLine();
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty())
+						continue;
+					result.add(line.split(",")[0]);
+				}
+			}
+		} catch (Exception e) {
+			throw new HttpArchiveException(500, e);
+		}
+		return result;
+	}
+}
@@ -19,6 +19,7 @@ package archive.fedora;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
@@ -62,10 +63,13 @@ import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
 import org.openrdf.rio.helpers.StatementCollector;
 import org.openrdf.sail.memory.MemoryStore;
 import org.slf4j.Logger;
@@ -124,6 +128,47 @@ public class RdfUtils {
 		return out.getBuffer().toString();
 	}
 
+	/**
+	 * Passes the statements of a node's descriptive metadata and of its
+	 * RELS-EXT to a handler, e.g. a streaming Rio writer. Nothing is collected
+	 * in memory.
+	 * 
+	 * @param pid the pid of the node, subject of the RELS-EXT statements
+	 * @param metadata n-triple metadata, may be null
+	 * @param links the RELS-EXT of the node
+	 * @param out receives the statements
+	 */
+	public static void writeStatements(String pid, String metadata,
+			List<Link> links, RDFHandler out) {
+		try {
+			if (metadata != null && !metadata.isEmpty()) {
+				RDFParser parser = Rio.createParser(RDFFormat.NTRIPLES);
+				parser.setRDFHandler(new RDFHandlerBase() {
+					@Override
+					public void handleStatement(Statement st)
+							throws RDFHandlerException {
+						out.handleStatement(st);
+					}
+				});
+				parser.parse(new StringReader(metadata), pid);
+			}
+			URI subject = valueFactory.createURI(pid);
+			for (Link l : links) {
+				try {
+					Value object =
+							l.isLiteral() ? valueFactory.createLiteral(l.getObject())
+									: valueFactory.createURI(l.getObject());
+					out.handleStatement(valueFactory.createStatement(subject,
+							valueFactory.createURI(l.getPredicate()), object));
+				} catch (IllegalArgumentException e) {
+					play.Logger.debug(pid + " skip link " + l, e);
+				}
+			}
+		} catch (RDFParseException | RDFHandlerException | IOException e) {
+			throw new RdfException(e);
+		}
+	}
+
 	/**
 	 * @param in a rdf input stream
 	 * @param inf the rdf format of the input stream
@@ -25,8 +25,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
@@ -42,8 +46,10 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -95,6 +101,33 @@ public class XmlUtils {
 
 	final static Logger logger = LoggerFactory.getLogger(XmlUtils.class);
 
+	private static final int MAX_EXPRESSIONS = 256;
+
+	/*
+	 * DocumentBuilder, XPath and compiled expressions are not thread-safe, so
+	 * every thread keeps its own and resets them before use. Compiled schemas
+	 * are thread-safe and shared.
+	 */
+	private static final ThreadLocal<DocumentBuilder> builders =
+			ThreadLocal.withInitial(() -> newDocumentBuilder(false));
+	private static final ThreadLocal<DocumentBuilder> namespaceAwareBuilders =
+			ThreadLocal.withInitial(() -> newDocumentBuilder(true));
+	private static final ThreadLocal<XPath> xpaths =
+			ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+	private static final ThreadLocal<Map<String, XPathExpression>> expressions =
+			ThreadLocal.withInitial(
+					() -> new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+						@Override
+						protected boolean removeEldestEntry(
+								Map.Entry<String, XPathExpression> eldest) {
+							return size() > MAX_EXPRESSIONS;
+						}
+					});
+	private static final ThreadLocal<TransformerFactory> transformerFactories =
+			ThreadLocal.withInitial(() -> TransformerFactory.newInstance());
+	private static final Map<String, Schema> schemas =
+			new ConcurrentHashMap<String, Schema>();
+
 	/**
 	 * @param digitalEntityFile the xml file
 	 * @return the root element as org.w3c.dom.Element
@@ -183,14 +216,10 @@ public class XmlUtils {
 	 */
 	public static List<Element> getElements(String xPathStr, Element root,
 			NamespaceContext nscontext) {
-		XPathFactory xpathFactory = XPathFactory.newInstance();
-		XPath xpath = xpathFactory.newXPath();
-		if (nscontext != null)
-			xpath.setNamespaceContext(nscontext);
 		NodeList elements;
 		try {
-			elements =
-					(NodeList) xpath.evaluate(xPathStr, root, XPathConstants.NODESET);
+			elements = (NodeList) compile(xPathStr, nscontext).evaluate(root,
+					XPathConstants.NODESET);
 			List<Element> result = new Vector<Element>();
 			for (int i = 0; i < elements.getLength(); i++) {
 				try {
@@ -214,10 +243,8 @@ public class XmlUtils {
 	 */
 	public static Element getDocument(InputStream inputStream) {
 		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			// factory.setNamespaceAware(true);
-			// factory.isValidating();
-			DocumentBuilder docBuilder = factory.newDocumentBuilder();
+			DocumentBuilder docBuilder = builders.get();
+			docBuilder.reset();
 			Document doc = docBuilder.parse(new BufferedInputStream(inputStream));
 			Element root = doc.getDocumentElement();
 			root.normalize();
@@ -228,8 +255,6 @@ public class XmlUtils {
 			throw new XmlException(e);
 		} catch (IOException e) {
 			throw new XmlException(e);
-		} catch (ParserConfigurationException e) {
-			throw new XmlException(e);
 		}
 
 	}
@@ -241,44 +266,110 @@ public class XmlUtils {
 	 * @param schema a schema to validate against
 	 */
 	public static void validate(InputStream oaidc, InputStream schema) {
-		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setNamespaceAware(true);
-			// "Valid" means valid to a DTD. We want to valid against a schema,
-			// so we turn of dtd validation here
-			factory.setValidating(false);
+		validate(oaidc, schema == null ? null : newSchema(schema));
+	}
 
-			SchemaFactory schemaFactory =
-					SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+	/**
+	 * Validates an xml String
+	 * 
+	 * @param xml xml String
+	 * @param schema a compiled schema to validate against, e.g. from
+	 *          {@link #getSchema(String, Supplier)}. If null, the xml is only
+	 *          checked to be well-formed.
+	 */
+	public static void validate(InputStream xml, Schema schema) {
+		ErrorHandler errorHandler = new ErrorHandler() {
+			public void fatalError(SAXParseException exception)
+					throws SAXException {
+				throw new XmlException(exception);
+			}
 
-			schemaFactory.setResourceResolver(new ResourceResolver());
-			if (schema != null) {
-				Schema s = schemaFactory.newSchema(new StreamSource(schema));
-				factory.setSchema(s);
+			public void error(SAXParseException exception) throws SAXException {
+				throw new XmlException(exception);
 			}
-			DocumentBuilder docBuilder = factory.newDocumentBuilder();
-			docBuilder.setErrorHandler(new ErrorHandler() {
-				public void fatalError(SAXParseException exception)
-						throws SAXException {
-					throw new XmlException(exception);
-				}
 
-				public void error(SAXParseException exception) throws SAXException {
-					throw new XmlException(exception);
-				}
+			public void warning(SAXParseException exception) throws SAXException {
+				throw new XmlException(exception);
+			}
+		};
+		try {
+			if (schema == null) {
+				DocumentBuilder docBuilder = namespaceAwareBuilders.get();
+				docBuilder.reset();
+				docBuilder.setErrorHandler(errorHandler);
+				docBuilder.parse(xml);
+			} else {
+				Validator validator = schema.newValidator();
+				validator.setErrorHandler(errorHandler);
+				validator.validate(new StreamSource(xml));
+			}
+		} catch (XmlException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new XmlException(e);
+		}
+	}
 
-				public void warning(SAXParseException exception) throws SAXException {
-					throw new XmlException(exception);
-				}
-			});
+	/**
+	 * Compiles a schema on the first call for a name. Later calls return the
+	 * same schema.
+	 * 
+	 * @param name a name of the schema, e.g. the path of the xsd
+	 * @param schema opens the xsd, only called if the schema isn't compiled yet
+	 * @return the compiled schema
+	 */
+	public static Schema getSchema(String name, Supplier<InputStream> schema) {
+		return schemas.computeIfAbsent(name, n -> {
+			try (InputStream in = schema.get()) {
+				if (in == null)
+					throw new XmlException(new FileNotFoundException(n));
+				return newSchema(in);
+			} catch (IOException e) {
+				throw new XmlException(e);
+			}
+		});
+	}
 
-			// Try to parse with schema validation on
-			docBuilder.parse(oaidc);
+	private static Schema newSchema(InputStream schema) {
+		try {
+			SchemaFactory schemaFactory =
+					SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			schemaFactory.setResourceResolver(new ResourceResolver());
+			return schemaFactory.newSchema(new StreamSource(schema));
+		} catch (SAXException e) {
+			throw new XmlException(e);
+		}
+	}
 
-		} catch (Exception e) {
+	private static DocumentBuilder newDocumentBuilder(boolean namespaceAware) {
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(namespaceAware);
+			// "Valid" means valid to a DTD. We want to valid against a schema,
+			// so we turn of dtd validation here
+			factory.setValidating(false);
+			return factory.newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
 			throw new XmlException(e);
 		}
+	}
 
+	private static XPathExpression compile(String xPathStr,
+			NamespaceContext nscontext) throws XPathExpressionException {
+		XPath xpath = xpaths.get();
+		xpath.reset();
+		if (nscontext != null) {
+			// expressions depend on the context they are compiled with
+			xpath.setNamespaceContext(nscontext);
+			return xpath.compile(xPathStr);
+		}
+		Map<String, XPathExpression> cache = expressions.get();
+		XPathExpression expression = cache.get(xPathStr);
+		if (expression == null) {
+			expression = xpath.compile(xPathStr);
+			cache.put(xPathStr, expression);
+		}
+		return expression;
 	}
 
 	/**
@@ -290,8 +381,7 @@ public class XmlUtils {
 	 */
 	public static String nodeToString(Node node) {
 		try {
-			TransformerFactory transFactory = TransformerFactory.newInstance();
-			Transformer transformer = transFactory.newTransformer();
+			Transformer transformer = transformerFactories.get().newTransformer();
 			StringWriter buffer = new StringWriter(1024);
 			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
 
@@ -320,10 +410,8 @@ public class XmlUtils {
 
 	private static Element getNamespaceAwareDocument(InputStream inputStream) {
 		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setNamespaceAware(true);
-			factory.isValidating();
-			DocumentBuilder docBuilder = factory.newDocumentBuilder();
+			DocumentBuilder docBuilder = namespaceAwareBuilders.get();
+			docBuilder.reset();
 			Document doc = docBuilder.parse(new BufferedInputStream(inputStream));
 			Element root = doc.getDocumentElement();
 			root.normalize();
@@ -334,8 +422,6 @@ public class XmlUtils {
 			throw new XmlException(e);
 		} catch (IOException e) {
 			throw new XmlException(e);
-		} catch (ParserConfigurationException e) {
-			throw new XmlException(e);
 		}
 
 	}
@@ -349,8 +435,7 @@ public class XmlUtils {
 			DOMSource domSource = new DOMSource(doc);
 			StringWriter writer = new StringWriter();
 			StreamResult result = new StreamResult(writer);
-			TransformerFactory tf = TransformerFactory.newInstance();
-			Transformer transformer = tf.newTransformer();
+			Transformer transformer = transformerFactories.get().newTransformer();
 			transformer.transform(domSource, result);
 			return writer.toString();
 		} catch (TransformerException e) {
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package archive.search;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import models.Node;
+
+/**
+ * An append-only journal of index operations. Every operation is written to
+ * the journal before elasticsearch is called and marked as done after
+ * elasticsearch has answered successfully. Operations that are still pending
+ * survive a restart and can be replayed once elasticsearch is reachable again.
+ *
+ * Each line of the journal file is either a pending record
+ * "P seq op pid namespace type timestamp" or a done record "D seq" (tab
+ * separated).
+ *
+ * Pending records are forced to disk before append returns. Appenders that
+ * arrive while a force is running share the next one, and the force runs
+ * outside the journal lock. Done records are not forced: if one gets lost, an
+ * operation that already succeeded is replayed once more.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class IndexJournal {
+
+	/**
+	 * Operation that (re)indexes a node in all indexes
+	 */
+	public static final String INDEX = "index";
+
+	/**
+	 * Operation that removes a node from all indexes
+	 */
+	public static final String REMOVE = "remove";
+
+	private static final int COMPACT_AFTER = 10000;
+
+	@SuppressWarnings({ "javadoc", "serial" })
+	public static class JournalException extends RuntimeException {
+		public JournalException(Throwable cause) {
+			super(cause);
+		}
+	}
+
+	/**
+	 * A pending index operation
+	 */
+	public static class Entry {
+		final long seq;
+		final String op;
+		final String pid;
+		final String namespace;
+		final String type;
+		final long timestamp;
+		boolean failed = false;
+
+		Entry(long seq, String op, String pid, String namespace, String type,
+				long timestamp) {
+			this.seq = seq;
+			this.op = op;
+			this.pid = pid;
+			this.namespace = namespace;
+			this.type = type;
+			this.timestamp = timestamp;
+		}
+
+		/**
+		 * Marks the entry as failed. It will be kept for replay.
+		 */
+		public void fail() {
+			failed = true;
+		}
+
+		/**
+		 * @return true if at least one elasticsearch call failed
+		 */
+		public boolean hasFailed() {
+			return failed;
+		}
+
+		@SuppressWarnings("javadoc")
+		public long getSeq() {
+			return seq;
+		}
+
+		@SuppressWarnings("javadoc")
+		public String getOp() {
+			return op;
+		}
+
+		@SuppressWarnings("javadoc")
+		public String getPid() {
+			return pid;
+		}
+
+		@SuppressWarnings("javadoc")
+		public String getNamespace() {
+			return namespace;
+		}
+
+		@SuppressWarnings("javadoc")
+		public String getType() {
+			return type;
+		}
+
+		@SuppressWarnings("javadoc")
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		String toLine() {
+			return "P\t" + seq + "\t" + op + "\t" + pid + "\t" + namespace + "\t"
+					+ type + "\t" + timestamp + "\n";
+		}
+	}
+
+	private final File file;
+	private FileChannel channel;
+	private final LinkedHashMap<Long, Entry> pending =
+			new LinkedHashMap<Long, Entry>();
+	private long seq = 0;
+	private long records = 0;
+	private long replayed = 0;
+	private long writes = 0;
+	private final Object syncLock = new Object();
+	private long synced = 0;
+
+	/**
+	 * @param file the journal file. Pending records of a previous run will be
+	 *          loaded.
+	 */
+	public IndexJournal(File file) {
+		this.file = file;
+		try {
+			load();
+			open();
+		} catch (IOException e) {
+			throw new JournalException(e);
+		}
+	}
+
+	/**
+	 * Writes a pending record. Must be called before elasticsearch is called.
+	 *
+	 * @param op {@link #INDEX} or {@link #REMOVE}
+	 * @param pid the pid of the node
+	 * @param namespace the namespace of the node, the name of the index
+	 * @param type the contentType of the node
+	 * @return the pending entry
+	 */
+	public Entry append(String op, String pid, String namespace, String type) {
+		Entry entry = null;
+		synchronized (this) {
+			entry = new Entry(++seq, op, pid, namespace, type,
+					System.currentTimeMillis());
+			write(entry.toLine());
+			pending.put(entry.seq, entry);
+		}
+		sync();
+		return entry;
+	}
+
+	/**
+	 * Writes a pending record for each node with a single force. Must be called
+	 * before elasticsearch is called.
+	 *
+	 * @param op {@link #INDEX} or {@link #REMOVE}
+	 * @param namespace the name of the index
+	 * @param nodes the nodes
+	 * @return the pending entries in the order of the nodes
+	 */
+	public List<Entry> appendAll(String op, String namespace, List<Node> nodes) {
+		List<Entry> entries = new ArrayList<Entry>(nodes.size());
+		if (nodes.isEmpty())
+			return entries;
+		synchronized (this) {
+			StringBuilder lines = new StringBuilder();
+			long now = System.currentTimeMillis();
+			for (Node node : nodes) {
+				Entry entry = new Entry(++seq, op, node.getPid(), namespace,
+						node.getContentType(), now);
+				lines.append(entry.toLine());
+				entries.add(entry);
+			}
+			write(lines.toString());
+			records += entries.size() - 1;
+			for (Entry entry : entries) {
+				pending.put(entry.seq, entry);
+			}
+		}
+		sync();
+		return entries;
+	}
+
+	/**
+	 * Marks the entry as done if no elasticsearch call has failed. Older pending
+	 * entries of the same pid are superseded by this entry and marked as done in
+	 * any case.
+	 *
+	 * @param entry an entry returned by append
+	 */
+	public synchronized void commit(Entry entry) {
+		if (entry.hasFailed()) {
+			play.Logger.warn("Index operation " + entry.op + " on " + entry.pid
+					+ " failed. Kept in journal for replay.");
+		}
+		Iterator<Entry> it = pending.values().iterator();
+		while (it.hasNext()) {
+			Entry e = it.next();
+			if (e.seq > entry.seq)
+				break;
+			if (e.pid.equals(entry.pid)
+					&& (e.seq < entry.seq || !entry.hasFailed())) {
+				write("D\t" + e.seq + "\n");
+				it.remove();
+			}
+		}
+		if (records > COMPACT_AFTER) {
+			compact();
+		}
+	}
+
+	/**
+	 * Like {@link #commit(Entry)} for each entry
+	 *
+	 * @param entries entries returned by appendAll
+	 */
+	public synchronized void commitAll(List<Entry> entries) {
+		for (Entry entry : entries) {
+			commit(entry);
+		}
+	}
+
+	/**
+	 * Drops all pending entries of a pid without executing them
+	 *
+	 * @param pid the pid of the node
+	 */
+	public synchronized void discard(String pid) {
+		Iterator<Entry> it = pending.values().iterator();
+		while (it.hasNext()) {
+			Entry e = it.next();
+			if (e.pid.equals(pid)) {
+				write("D\t" + e.seq + "\n");
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @param pid the pid of the node
+	 * @return true if an operation on the pid is still pending
+	 */
+	public synchronized boolean isPending(String pid) {
+		for (Entry e : pending.values()) {
+			if (e.pid.equals(pid))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the newest pending entry of each pid, oldest first
+	 */
+	public synchronized List<Entry> getPending() {
+		Map<String, Entry> latest = new LinkedHashMap<String, Entry>();
+		for (Entry e : pending.values()) {
+			latest.remove(e.pid);
+			latest.put(e.pid, e);
+		}
+		return new ArrayList<Entry>(latest.values());
+	}
+
+	/**
+	 * @param count number of operations that have been replayed successfully
+	 */
+	public synchronized void countReplayed(int count) {
+		replayed += count;
+	}
+
+	/**
+	 * @return the number of pending operations
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * @return milliseconds since the oldest pending operation was written, 0 if
+	 *         nothing is pending
+	 */
+	public synchronized long getLag() {
+		if (pending.isEmpty())
+			return 0;
+		return System.currentTimeMillis()
+				- pending.values().iterator().next().timestamp;
+	}
+
+	/**
+	 * @return a map with journal metrics
+	 */
+	public synchronized Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("pending", pending.size());
+		result.put("lagMillis", getLag());
+		result.put("replayed", replayed);
+		result.put("file", file.getAbsolutePath());
+		return result;
+	}
+
+	/**
+	 * Closes the journal file
+	 */
+	public synchronized void close() {
+		try {
+			if (channel != null)
+				channel.close();
+		} catch (IOException e) {
+			play.Logger.warn("", e);
+		}
+	}
+
+	private void load() throws IOException {
+		if (!file.exists())
+			return;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t");
+				try {
+					long s = Long.parseLong(parts[1]);
+					seq = Math.max(seq, s);
+					if ("P".equals(parts[0]) && parts.length == 7) {
+						pending.put(s, new Entry(s, parts[2], parts[3], parts[4],
+								parts[5], Long.parseLong(parts[6])));
+					} else if ("D".equals(parts[0])) {
+						pending.remove(s);
+					}
+				} catch (Exception e) {
+					// an incomplete last line after a crash
+					play.Logger.warn("Skip corrupt journal line: " + line);
+				}
+			}
+		}
+		play.Logger.info("Index journal " + file + " has " + pending.size()
+				+ " pending operations.");
+	}
+
+	private void open() throws IOException {
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		records = pending.size();
+		if (!endsWithNewline()) {
+			// terminate an incomplete last line after a crash
+			write("\n");
+		}
+	}
+
+	private boolean endsWithNewline() throws IOException {
+		long size = channel.size();
+		if (size == 0)
+			return true;
+		ByteBuffer last = ByteBuffer.allocate(1);
+		try (FileChannel reader =
+				FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			reader.read(last, size - 1);
+		}
+		return last.get(0) == '\n';
+	}
+
+	private void write(String line) {
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+			records++;
+			writes++;
+		} catch (IOException e) {
+			throw new JournalException(e);
+		}
+	}
+
+	/**
+	 * Forces everything written so far, unless a force that started after the
+	 * last write has done it already
+	 */
+	private void sync() {
+		long target = 0;
+		synchronized (this) {
+			target = writes;
+		}
+		synchronized (syncLock) {
+			if (synced >= target)
+				return;
+			long upTo = 0;
+			FileChannel current = null;
+			synchronized (this) {
+				upTo = writes;
+				current = channel;
+			}
+			try {
+				current.force(false);
+			} catch (ClosedChannelException e) {
+				// compacted meanwhile, the compacted file has been forced
+			} catch (IOException e) {
+				throw new JournalException(e);
+			}
+			synced = upTo;
+		}
+	}
+
+	private void compact() {
+		try {
+			File tmp = new File(file.getAbsolutePath() + ".tmp");
+			StringBuilder content = new StringBuilder();
+			for (Entry e : pending.values()) {
+				content.append(e.toLine());
+			}
+			try (FileChannel out = FileChannel.open(tmp.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buf = ByteBuffer
+						.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+				while (buf.hasRemaining()) {
+					out.write(buf);
+				}
+				out.force(false);
+			}
+			channel.close();
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			open();
+		} catch (IOException e) {
+			throw new JournalException(e);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package archive.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.search.SearchHits;
+
+/**
+ * A bounded LRU cache for query results. Every index has a generation counter
+ * that is incremented by each write to that index. A result is only returned
+ * while the generations of all indexes it was queried from are unchanged, so
+ * a write to one index leaves the results of other indexes alone.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class QueryCache {
+
+	private static class CachedHits {
+		final String[] index;
+		final long[] generations;
+		final SearchHits hits;
+
+		CachedHits(String[] index, long[] generations, SearchHits hits) {
+			this.index = index;
+			this.generations = generations;
+			this.hits = hits;
+		}
+	}
+
+	private final int maxSize;
+	private final LinkedHashMap<String, CachedHits> cache;
+	private final Map<String, Long> generations = new HashMap<String, Long>();
+	// incremented by writes to unknown indexes, invalidates all results
+	private long epoch = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param maxSize maximum number of cached results
+	 */
+	public QueryCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.cache = new LinkedHashMap<String, CachedHits>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedHits> e) {
+				if (size() > QueryCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param index the queried indexes
+	 * @param queryString the query as entered by the user
+	 * @param from for paging
+	 * @param until for paging
+	 * @param includes fields to return
+	 * @param excludes fields to leave out
+	 * @return a key that is equal for equal queries
+	 */
+	public static String key(String[] index, String queryString, int from,
+			int until, String[] includes, String[] excludes) {
+		String[] sortedIndex = index.clone();
+		Arrays.sort(sortedIndex);
+		String query =
+				queryString == null ? "" : queryString.trim().replaceAll("\\s+", " ");
+		return Arrays.toString(sortedIndex) + "|" + query + "|" + from + "|"
+				+ until + "|" + Arrays.toString(includes) + "|"
+				+ Arrays.toString(excludes);
+	}
+
+	/**
+	 * @param index the queried indexes
+	 * @return the current generations of the indexes. Pass them to
+	 *         {@link #put(String, String[], long[], SearchHits)} after the query
+	 *         returned.
+	 */
+	public synchronized long[] getGenerations(String[] index) {
+		long[] result = new long[index.length + 1];
+		for (int i = 0; i < index.length; i++) {
+			result[i] = generations.getOrDefault(index[i], 0L);
+		}
+		result[index.length] = epoch;
+		return result;
+	}
+
+	/**
+	 * @param key a key created by
+	 *          {@link #key(String[], String, int, int, String[], String[])}
+	 * @return the cached hits or null
+	 */
+	public synchronized SearchHits get(String key) {
+		CachedHits cached = cache.get(key);
+		if (cached == null || !Arrays.equals(cached.generations,
+				getGenerations(cached.index))) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return cached.hits;
+	}
+
+	/**
+	 * Caches the hits if no write to the queried indexes happened while the
+	 * query was running.
+	 *
+	 * @param key a key created by
+	 *          {@link #key(String[], String, int, int, String[], String[])}
+	 * @param index the queried indexes
+	 * @param queryGenerations the generations read before the query was sent
+	 * @param result the hits
+	 */
+	public synchronized void put(String key, String[] index,
+			long[] queryGenerations, SearchHits result) {
+		if (Arrays.equals(queryGenerations, getGenerations(index))) {
+			cache.put(key,
+					new CachedHits(index.clone(), queryGenerations, result));
+		}
+	}
+
+	/**
+	 * Called on every write to an index
+	 *
+	 * @param index the written index
+	 */
+	public synchronized void invalidate(String index) {
+		generations.merge(index, 1L, Long::sum);
+		cache.values()
+				.removeIf(cached -> Arrays.asList(cached.index).contains(index));
+	}
+
+	/**
+	 * Called after writes whose indexes are not known, e.g. a rebuild
+	 */
+	public synchronized void invalidate() {
+		epoch++;
+		cache.clear();
+	}
+
+	/**
+	 * @return a map with cache metrics
+	 */
+	public synchronized Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		long requests = hits + misses;
+		result.put("size", cache.size());
+		result.put("maxSize", maxSize);
+		result.put("generations", new HashMap<String, Long>(generations));
+		result.put("epoch", epoch);
+		result.put("hits", hits);
+		result.put("misses", misses);
+		result.put("evictions", evictions);
+		result.put("hitRate", requests == 0 ? 0.0 : (double) hits / requests);
+		return result;
+	}
+}
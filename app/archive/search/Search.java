@@ -18,6 +18,7 @@ package archive.search;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -27,11 +28,17 @@ import models.Globals;
 import models.Node;
 
 import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
@@ -39,10 +46,14 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 
 import play.Play;
 import actions.Transform;
@@ -70,8 +81,12 @@ public class Search {
 		}
 	}
 
+	private static final int MULTI_GET_SIZE = 500;
+
 	Client client = null;
 
+	QueryCache queryCache = new QueryCache(1000);
+
 	Search(Client client) {
 		this.client = client;
 	}
@@ -124,6 +139,7 @@ public class Search {
 			ActionResponse response = client.prepareIndex(index, type, id)
 					.setSource(data).execute().actionGet();
 			refresh();
+			queryCache.invalidate(index);
 			return response;
 		} catch (Exception e) {
 			throw new SearchException(
@@ -153,6 +169,22 @@ public class Search {
 		return response.getHits();
 	}
 
+	SearchHits listResources(String[] index, String type, int from, int until,
+			String sortField, String[] includes, String[] excludes) {
+		if (from >= until)
+			throw new InvalidRangeException();
+		SearchRequestBuilder builder = client.prepareSearch(index);
+		if (type != null && !type.equals(""))
+			builder.setTypes(type);
+		if (sortField != null)
+			builder.addSort(SortBuilders.fieldSort(sortField).order(SortOrder.DESC)
+					.ignoreUnmapped(true));
+		if (includes != null || excludes != null)
+			builder.setFetchSource(includes, excludes);
+		builder.setFrom(from).setSize(until - from);
+		return builder.execute().actionGet().getHits();
+	}
+
 	List<String> list(String index, String type, int from, int until) {
 		SearchHits hits = listResources(index, type, from, until);
 		Iterator<SearchHit> it = hits.iterator();
@@ -171,6 +203,7 @@ public class Search {
 		ActionResponse response =
 				client.prepareDelete(index, type, id).execute().actionGet();
 		refresh();
+		queryCache.invalidate(index);
 		return response;
 	}
 
@@ -184,17 +217,52 @@ public class Search {
 	}
 
 	SearchHits query(String[] index, String queryString, int from, int until) {
-		refresh();
+		return query(index, queryString, from, until, null, null);
+	}
+
+	SearchHits query(String[] index, String queryString, int from, int until,
+			String[] includes, String[] excludes) {
 		play.Logger.debug("Search for " + queryString);
 		QueryBuilder query = QueryBuilders.queryString(queryString);
-		return query(index, query, from, until);
+		return query(index, query, from, until, includes, excludes);
 	}
 
 	SearchHits query(String[] index, QueryBuilder query, int from, int until) {
+		return query(index, query, from, until, null, null);
+	}
+
+	SearchHits cachedQuery(String[] index, String queryString, int from,
+			int until, String[] includes, String[] excludes) {
+		String key =
+				QueryCache.key(index, queryString, from, until, includes, excludes);
+		SearchHits hits = queryCache.get(key);
+		if (hits != null)
+			return hits;
+		long[] generations = queryCache.getGenerations(index);
+		hits = query(index, queryString, from, until, includes, excludes);
+		queryCache.put(key, index, generations, hits);
+		return hits;
+	}
+
+	SearchHits query(String[] index, QueryBuilder query, int from, int until,
+			String[] includes, String[] excludes) {
 		refresh();
-		SearchResponse response = client.prepareSearch(index).setQuery(query)
-				.setFrom(from).setSize(until - from).execute().actionGet();
-		return response.getHits();
+		SearchRequestBuilder builder = client.prepareSearch(index).setQuery(query)
+				.setFrom(from).setSize(until - from);
+		if (includes != null || excludes != null)
+			builder.setFetchSource(includes, excludes);
+		return builder.execute().actionGet().getHits();
+	}
+
+	SearchHits querySorted(String[] index, QueryBuilder query, String sortField,
+			int size, String[] includes, String[] excludes) {
+		SearchRequestBuilder builder = client.prepareSearch(index).setQuery(query)
+				.addSort(SortBuilders.fieldSort(sortField).order(SortOrder.ASC)
+						.ignoreUnmapped(true))
+				.setSize(size);
+		if (includes != null || excludes != null)
+			builder.setFetchSource(includes, excludes);
+		return builder.execute().actionGet().getHits();
 	}
 
 	Map<String, Object> getSettings(String index, String type) {
@@ -215,14 +283,67 @@ public class Search {
 	 * @return a map that represents the node
 	 */
 	public Map<String, Object> get(String pid) {
-		refresh();
-		GetResponse response =
-				client.prepareGet(pid.split(":")[0], "_all", pid).execute().actionGet();
-		return response.getSource();
+		return get(pid, null, null);
+	}
+
+	/**
+	 * Gets are realtime in elasticsearch, therefore no refresh is needed.
+	 * 
+	 * @param pid a pid of a node
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return a map that represents the node, null if not found
+	 */
+	Map<String, Object> get(String pid, String[] includes, String[] excludes) {
+		GetRequestBuilder builder =
+				client.prepareGet(pid.split(":")[0], "_all", pid);
+		if (includes != null || excludes != null)
+			builder.setFetchSource(includes, excludes);
+		return builder.execute().actionGet().getSource();
+	}
 
+	/**
+	 * Fetches many documents with one multi-get request per
+	 * {@value #MULTI_GET_SIZE} pids.
+	 * 
+	 * @param pids pids of nodes
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return maps in the order of the pids, null for pids that are not found
+	 */
+	List<Map<String, Object>> multiGet(List<String> pids, String[] includes,
+			String[] excludes) {
+		List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+		FetchSourceContext source = null;
+		if (includes != null || excludes != null)
+			source = new FetchSourceContext(includes, excludes);
+		for (int i = 0; i < pids.size(); i += MULTI_GET_SIZE) {
+			MultiGetRequestBuilder builder = client.prepareMultiGet();
+			for (String pid : pids.subList(i,
+					Math.min(i + MULTI_GET_SIZE, pids.size()))) {
+				MultiGetRequest.Item item =
+						new MultiGetRequest.Item(pid.split(":")[0], "_all", pid);
+				if (source != null)
+					item.fetchSourceContext(source);
+				builder.add(item);
+			}
+			for (MultiGetItemResponse response : builder.execute().actionGet()) {
+				if (response.isFailed()) {
+					play.Logger.debug("Multi-get of " + response.getId() + " failed: "
+							+ response.getFailure().getMessage());
+					result.add(null);
+				} else {
+					result.add(response.getResponse().getSource());
+				}
+			}
+		}
+		return result;
 	}
 
 	/**
+	 * Every node is journaled in {@link Globals#indexJournal} before the bulk
+	 * requests are sent. Nodes that fail stay in the journal for replay.
+	 *
 	 * @param list list of nodes to index
 	 * @param index name of a index
 	 * @return list of messages
@@ -233,6 +354,11 @@ public class Search {
 		List<String> result = new ArrayList<String>();
 		BulkRequestBuilder internalIndexBulk = client.prepareBulk();
 		BulkRequestBuilder publicIndexBulk = client.prepareBulk();
+		List<IndexJournal.Entry> entries =
+				Globals.indexJournal.appendAll(IndexJournal.INDEX, index, list);
+		Map<String, IndexJournal.Entry> entryOf =
+				new HashMap<String, IndexJournal.Entry>();
+		entries.forEach(e -> entryOf.put(e.getPid(), e));
 
 		for (Node node : list) {
 			try {
@@ -241,7 +367,7 @@ public class Search {
 				String source = node.toString();
 				internalIndexBulk.add(
 						client.prepareIndex(index, node.getContentType(), node.getPid())
-								.setSource(source));
+								.setSource(node.toIndexString()));
 
 				msg.append(index);
 				if ("public".equals(node.getPublishScheme())) {
@@ -259,12 +385,18 @@ public class Search {
 
 				}
 				if ("public".equals(node.getAccessScheme())) {
-					if ("file".equals(node.getContentType())) {
-						publicIndexBulk.add(client
-								.prepareIndex(Globals.PDFBOX_OCR_INDEX_PREF + index,
-										node.getContentType(), node.getPid())
-								.setSource(new Transform().pdfbox(node).toString()));
-						msg.append(" and " + Globals.PDFBOX_OCR_INDEX_PREF + index);
+					if ("file".equals(node.getContentType())
+							&& "application/pdf".equals(node.getMimeType())) {
+						if (Globals.fulltexts.contains(node.getChecksum())) {
+							publicIndexBulk.add(client
+									.prepareIndex(Globals.PDFBOX_OCR_INDEX_PREF + index,
+											node.getContentType(), node.getPid())
+									.setSource(new Transform().pdfboxSource(node)));
+							msg.append(" and " + Globals.PDFBOX_OCR_INDEX_PREF + index);
+						} else if (Globals.fulltextQueue.submit(node)) {
+							msg.append(", queued for " + Globals.PDFBOX_OCR_INDEX_PREF
+									+ index);
+						}
 					}
 				}
 				msg.append("\n");
@@ -272,30 +404,53 @@ public class Search {
 				play.Logger.debug("Add " + node.getPid() + " to bulk action");
 			} catch (Exception e) {
 				play.Logger.warn("", e);
+				entryOf.get(node.getPid()).fail();
 				result.add("A problem occured: " + e.getMessage());
 			}
 		}
 		try {
 			play.Logger.debug("Start building internal Index " + index);
-			BulkResponse bulkResponse = internalIndexBulk.execute().actionGet();
-			if (bulkResponse.hasFailures()) {
-				result.add(bulkResponse.buildFailureMessage());
-				play.Logger.debug("FAIL: " + bulkResponse.buildFailureMessage());
-			}
-
+			executeBulk(internalIndexBulk, entryOf, result);
 			play.Logger.debug("Start building public Index " + index);
-
-			bulkResponse = publicIndexBulk.execute().actionGet();
-			if (bulkResponse.hasFailures()) {
-				result.add(bulkResponse.buildFailureMessage());
-				play.Logger.debug("FAIL: " + bulkResponse.buildFailureMessage());
-			}
+			executeBulk(publicIndexBulk, entryOf, result);
 		} catch (Exception e) {
 			play.Logger.warn("", e);
+			entries.forEach(entry -> entry.fail());
+			result.add("A problem occured: " + e.getMessage());
 		}
+		Globals.indexJournal.commitAll(entries);
+		queryCache.invalidate(index);
+		queryCache.invalidate(Globals.PUBLIC_INDEX_PREF + index);
 		return result;
 	}
 
+	private void executeBulk(BulkRequestBuilder bulk,
+			Map<String, IndexJournal.Entry> entryOf, List<String> result) {
+		if (bulk.numberOfActions() == 0)
+			return;
+		BulkResponse bulkResponse = bulk.execute().actionGet();
+		if (bulkResponse.hasFailures()) {
+			for (BulkItemResponse item : bulkResponse.getItems()) {
+				if (item.isFailed() && entryOf.containsKey(item.getId()))
+					entryOf.get(item.getId()).fail();
+			}
+			result.add(bulkResponse.buildFailureMessage());
+			play.Logger.debug("FAIL: " + bulkResponse.buildFailureMessage());
+		}
+	}
+
+	boolean isAvailable() {
+		try {
+			ClusterHealthResponse health = client.admin().cluster().prepareHealth()
+					.setTimeout(TimeValue.timeValueSeconds(5)).execute()
+					.actionGet(TimeValue.timeValueSeconds(10));
+			return health.getStatus() != ClusterHealthStatus.RED;
+		} catch (Exception e) {
+			play.Logger.debug("", e);
+			return false;
+		}
+	}
+
 	private void refresh() {
 		client.admin().indices().refresh(new RefreshRequest()).actionGet();
 	}
@@ -19,6 +19,7 @@ package archive.search;
 import java.util.List;
 import java.util.Map;
 
+import models.Globals;
 import models.Node;
 
 import org.elasticsearch.action.ActionResponse;
@@ -34,6 +35,12 @@ import org.elasticsearch.search.SearchHits;
  * 
  */
 public class SearchFacade {
+
+	/**
+	 * Name of this backend in {@link Globals#bulkThrottle}
+	 */
+	public static final String BACKEND = "elasticsearch";
+
 	Search search;
 
 	/**
@@ -69,7 +76,8 @@ public class SearchFacade {
 	 */
 	public ActionResponse index(String index, String type, String id,
 			String data) {
-		return search.index(index, type, id, data);
+		return Globals.bulkThrottle.call(BACKEND, 1,
+				() -> search.index(index, type, id, data));
 	}
 
 	/**
@@ -85,6 +93,25 @@ public class SearchFacade {
 		return search.listResources(index, type, from, until);
 	}
 
+	/**
+	 * Lists documents sorted by a field, newest first. Needs a single
+	 * elasticsearch request.
+	 * 
+	 * @param index names of the elasticsearch indexes
+	 * @param type the type of the indexed item, empty for all types
+	 * @param from use from and until to page through the results
+	 * @param until use from and until to page through the results
+	 * @param sortField field to sort descending by, null for relevance order
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return hits for the listing
+	 */
+	public SearchHits listResources(String[] index, String type, int from,
+			int until, String sortField, String[] includes, String[] excludes) {
+		return search.listResources(index, type, from, until, sortField,
+				includes, excludes);
+	}
+
 	/**
 	 * Gives a list of id's
 	 * 
@@ -110,7 +137,8 @@ public class SearchFacade {
 	 * @return the response
 	 */
 	public ActionResponse delete(String id, String index, String type) {
-		return search.delete(id, index, type);
+		return Globals.bulkThrottle.call(BACKEND, 1,
+				() -> search.delete(id, index, type));
 	}
 
 	/**
@@ -140,6 +168,78 @@ public class SearchFacade {
 		return search.query(index, query, from, until);
 	}
 
+	/**
+	 * @param index a index to quer against
+	 * @param queryString a elasticsearch querystring
+	 * @param from for paging
+	 * @param until for paging
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return all Hits, containing only the requested fields
+	 */
+	public SearchHits query(String[] index, String queryString, int from,
+			int until, String[] includes, String[] excludes) {
+		return search.query(index, queryString, from, until, includes, excludes);
+	}
+
+	/**
+	 * Like {@link #query(String[], String, int, int, String[], String[])} but
+	 * answers repeated queries from a cache until the next write.
+	 * 
+	 * @param index a index to quer against
+	 * @param queryString a elasticsearch querystring
+	 * @param from for paging
+	 * @param until for paging
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return all Hits, containing only the requested fields
+	 */
+	public SearchHits cachedQuery(String[] index, String queryString, int from,
+			int until, String[] includes, String[] excludes) {
+		return search.cachedQuery(index, queryString, from, until, includes,
+				excludes);
+	}
+
+	/**
+	 * @return hit rate, size and generation of the query cache
+	 */
+	public Map<String, Object> getQueryCacheStatus() {
+		return search.queryCache.getStatus();
+	}
+
+	/**
+	 * @param index a index to quer against
+	 * @param query a elasticsearch query
+	 * @param from for paging
+	 * @param until for paging
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return all Hits, containing only the requested fields
+	 */
+	public SearchHits query(String[] index, QueryBuilder query, int from,
+			int until, String[] includes, String[] excludes) {
+		return search.query(index, query, from, until, includes, excludes);
+	}
+
+	/**
+	 * Returns the first hits in ascending order of a field. Page through all
+	 * hits by adding a range filter on the field that starts after the last
+	 * hit. Unlike from/until paging, the cost does not grow with the page.
+	 * 
+	 * @param index a index to quer against
+	 * @param query a elasticsearch query
+	 * @param sortField a not analyzed field with a distinct value per hit
+	 * @param size number of hits
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return the hits, containing only the requested fields
+	 */
+	public SearchHits querySorted(String[] index, QueryBuilder query,
+			String sortField, int size, String[] includes, String[] excludes) {
+		return search.querySorted(index, query, sortField, size, includes,
+				excludes);
+	}
+
 	/**
 	 * @param index the index you want the settings for
 	 * @param type the type
@@ -161,12 +261,50 @@ public class SearchFacade {
 		return search.get(pid);
 	}
 
+	/**
+	 * @param pid a nodes pid
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return a map that contains the requested fields of the node
+	 */
+	public Map<String, Object> get(String pid, String[] includes,
+			String[] excludes) {
+		return search.get(pid, includes, excludes);
+	}
+
+	/**
+	 * @param pids a list of pids
+	 * @return maps in the order of the pids, null for pids that are not found
+	 */
+	public List<Map<String, Object>> getAll(List<String> pids) {
+		return search.multiGet(pids, null, null);
+	}
+
+	/**
+	 * @param pids a list of pids
+	 * @param includes fields to return, null for all fields
+	 * @param excludes fields to leave out, may be null
+	 * @return maps in the order of the pids, null for pids that are not found
+	 */
+	public List<Map<String, Object>> getAll(List<String> pids,
+			String[] includes, String[] excludes) {
+		return search.multiGet(pids, includes, excludes);
+	}
+
+	/**
+	 * @return true if the elasticsearch cluster answers and is not red
+	 */
+	public boolean isAvailable() {
+		return search.isAvailable();
+	}
+
 	/**
 	 * @param list
 	 * @param index
 	 * @return list of messages
 	 */
 	public List<String> indexAll(List<Node> list, String index) {
-		return search.indexAll(list, index);
+		return Globals.bulkThrottle.call(BACKEND, list.size(),
+				() -> search.indexAll(list, index));
 	}
 }
@@ -84,6 +84,11 @@ class SearchMock {
 		return search.list(index, type, from, until);
 	}
 
+	public List<Map<String, Object>> multiGet(List<String> pids,
+			String[] includes, String[] excludes) {
+		return search.multiGet(pids, includes, excludes);
+	}
+
 	public ActionResponse delete(String id, String index, String type) {
 		return search.delete(id, index, type);
 	}
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import javax.ws.rs.QueryParam;
 
@@ -34,7 +36,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wordnik.swagger.annotations.Api;
 
 import actions.BasicAuth;
-import actions.Read;
+import helper.StatusStore;
 import models.Globals;
 import models.Message;
 import play.libs.F.Promise;
@@ -53,22 +55,31 @@ import play.mvc.Result;
 @SuppressWarnings("javadoc")
 public class Checks extends MyController {
 
+	/**
+	 * The only fields read by {@link #getObject(SearchHit, JsonNode)}
+	 */
+	private static final String[] CHECK_FIELDS =
+			{ "parallelEdition", "doi", "urn" };
+
 	public static Promise<Result> missingUrn(@QueryParam("from") int from,
-			@QueryParam("until") int until) {
+			@QueryParam("until") int until,
+			@QueryParam("recheck") boolean recheck) {
 		return new BulkActionAccessor().call((userId) -> {
 			try {
 				QueryBuilder query = QueryBuilders.filteredQuery(
 						QueryBuilders.matchAllQuery(), FilterBuilders.missingFilter("urn"));
 				SearchHits sh =
-						Globals.search.query(Globals.namespaces, query, from, until);
+						Globals.search.query(Globals.namespaces, query, from, until,
+								CHECK_FIELDS, null);
 				SearchHit[] hits = sh.getHits();
-				List<Map<String, Object>> objects = new ArrayList<>();
+				List<CompletableFuture<Map<String, Object>>> objects =
+						new ArrayList<>();
 				for (SearchHit hit : hits) {
 					JsonNode node = mapper.convertValue(hit.getSource(), JsonNode.class);
-					Map<String, Object> object = getObject(hit, node);
-					objects.add(object);
+					objects.add(getObject(hit, node, recheck));
 				}
-				return getJsonResult(objects);
+				return getJsonResult(objects.stream().map(o -> o.join())
+						.collect(Collectors.toList()));
 			} catch (Exception e) {
 				return JsonMessage(new Message(e, 500));
 			}
@@ -76,21 +87,24 @@ public class Checks extends MyController {
 	}
 
 	public static Promise<Result> missingDoi(@QueryParam("from") int from,
-			@QueryParam("until") int until) {
+			@QueryParam("until") int until,
+			@QueryParam("recheck") boolean recheck) {
 		return new BulkActionAccessor().call((userId) -> {
 			try {
 				QueryBuilder query = QueryBuilders.filteredQuery(
 						QueryBuilders.matchAllQuery(), FilterBuilders.missingFilter("doi"));
 				SearchHits sh =
-						Globals.search.query(Globals.namespaces, query, from, until);
+						Globals.search.query(Globals.namespaces, query, from, until,
+								CHECK_FIELDS, null);
 				SearchHit[] hits = sh.getHits();
-				List<Map<String, Object>> objects = new ArrayList<>();
+				List<CompletableFuture<Map<String, Object>>> objects =
+						new ArrayList<>();
 				for (SearchHit hit : hits) {
 					JsonNode node = mapper.convertValue(hit.getSource(), JsonNode.class);
-					Map<String, Object> object = getObject(hit, node);
-					objects.add(object);
+					objects.add(getObject(hit, node, recheck));
 				}
-				return getJsonResult(objects);
+				return getJsonResult(objects.stream().map(o -> o.join())
+						.collect(Collectors.toList()));
 			} catch (Exception e) {
 				return JsonMessage(new Message(e, 500));
 			}
@@ -98,58 +112,65 @@ public class Checks extends MyController {
 	}
 
 	public static Promise<Result> doiStatus(@QueryParam("from") int from,
-			@QueryParam("until") int until) {
+			@QueryParam("until") int until,
+			@QueryParam("recheck") boolean recheck) {
 		return new BulkActionAccessor().call((userId) -> {
 			try {
 				ObjectMapper mapper = new ObjectMapper();
 				QueryBuilder query = QueryBuilders.matchAllQuery();
 				SearchHits sh =
-						Globals.search.query(Globals.namespaces, query, from, until);
+						Globals.search.query(Globals.namespaces, query, from, until,
+								CHECK_FIELDS, null);
 				SearchHit[] hits = sh.getHits();
-				List<Map<String, Object>> objects = new ArrayList<>();
+				List<CompletableFuture<Map<String, Object>>> objects =
+						new ArrayList<>();
 				for (SearchHit hit : hits) {
 					JsonNode node = mapper.convertValue(hit.getSource(), JsonNode.class);
-					Map<String, Object> object = getObject(hit, node);
-					objects.add(object);
+					objects.add(getObject(hit, node, recheck));
 				}
-				return getJsonResult(objects);
+				return getJsonResult(objects.stream().map(o -> o.join())
+						.collect(Collectors.toList()));
 			} catch (Exception e) {
 				return JsonMessage(new Message(e, 500));
 			}
 		});
 	}
 
-	private static Map<String, Object> getObject(SearchHit hit, JsonNode node) {
+	/**
+	 * Returns the resolver targets stored in {@link Globals#statusStore} or
+	 * starts the resolver checks of the hit on {@link Globals#statusChecker}
+	 */
+	private static CompletableFuture<Map<String, Object>> getObject(
+			SearchHit hit, JsonNode node, boolean recheck) {
+		String key = StatusStore.TARGETS + hit.getId();
 		Map<String, Object> object = new HashMap<String, Object>();
 		object.put("id", hit.getId());
 		object.put("ht", node.at("/parallelEdition/0/@id").asText());
 		object.put("doi", node.at("/doi").asText());
 		object.put("urn", node.at("/urn/0").asText());
-		object.put("doiTarget", getDoiStatus((String) object.get("doi")));
-		object.put("urnTarget", getUrnStatus((String) object.get("urn")));
-		return object;
-	}
-
-	private static String getUrnStatus(String urn) {
-		if (urn == null)
-			return "NONE";
-		try {
-			return new Read().getFinalURL(Globals.urnResolverAddress + urn);
-		} catch (Exception e) {
-			play.Logger.warn("", e);
-		}
-		return "NONE";
+		Map<String, Object> stored = Globals.statusStore.get(key);
+		if (!recheck && stored != null
+				&& object.get("doi").equals(stored.get("doi"))
+				&& object.get("urn").equals(stored.get("urn")))
+			return CompletableFuture.completedFuture(stored);
+		CompletableFuture<String> doiTarget = getTarget(
+				Globals.doiResolverAddress, (String) object.get("doi"), recheck);
+		CompletableFuture<String> urnTarget = getTarget(
+				Globals.urnResolverAddress, (String) object.get("urn"), recheck);
+		return doiTarget.thenCombine(urnTarget, (doi, urn) -> {
+			object.put("doiTarget", doi);
+			object.put("urnTarget", urn);
+			return Globals.statusStore.put(key, object);
+		});
 	}
 
-	private static String getDoiStatus(String doi) {
-		if (doi == null)
-			return "NONE";
-		try {
-			return new Read().getFinalURL(Globals.doiResolverAddress + doi);
-		} catch (Exception e) {
-			play.Logger.warn("", e);
-		}
-		return "NONE";
+	private static CompletableFuture<String> getTarget(String resolver,
+			String id, boolean recheck) {
+		if (id == null)
+			return CompletableFuture.completedFuture("NONE");
+		if (recheck)
+			Globals.statusChecker.invalidate("url:" + resolver + id);
+		return Globals.statusChecker.finalUrl(resolver + id, "NONE");
 	}
 
 }
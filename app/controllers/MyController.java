@@ -16,6 +16,8 @@
  */
 package controllers;
 
+import helper.ChunkedStream;
+import helper.HierarchyIndex;
 import helper.HttpArchiveError;
 import helper.HttpArchiveException;
 
@@ -27,13 +29,20 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TimeZone;
+
+import javax.xml.validation.Schema;
 
 import models.Globals;
+import models.Link;
 import models.Message;
 import models.Node;
 import play.Play;
+import play.libs.F.Function0;
 import play.libs.F.Promise;
 import play.mvc.Controller;
 import play.mvc.Http;
@@ -45,6 +54,7 @@ import actions.Index;
 import actions.Modify;
 import actions.Read;
 import actions.Transform;
+import actions.UnitOfWork;
 import archive.fedora.XmlUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -205,6 +215,21 @@ public class MyController extends Controller {
 		return status(msg.getCode(), msg.toString());
 	}
 
+	/**
+	 * Answers with a chunked response written on the shared stream pool. Set
+	 * the content type before.
+	 *
+	 * @param name names the stream in log messages
+	 * @param producer writes the content
+	 * @return the chunked response, or 503 if all stream writers are busy
+	 */
+	static Result stream(String name, ChunkedStream.Producer producer) {
+		if (ChunkedStream.isBusy())
+			return JsonMessage(
+					new Message("Too many running downloads, try again later", 503));
+		return ok(ChunkedStream.of(name, producer));
+	}
+
 	/**
 	 * @param accessScheme the accessScheme of the object
 	 * @param role the role of the user
@@ -299,13 +324,126 @@ public class MyController extends Controller {
 		Result exec(String userId);
 	}
 
+	/**
+	 * Runs the action asynchronously within a {@link UnitOfWork}, so nodes are
+	 * loaded and reindexed at most once per request.
+	 */
+	static Promise<Result> inUnitOfWork(Function0<Result> action) {
+		return Promise.promise(() -> {
+			UnitOfWork.begin();
+			try {
+				return action.apply();
+			} finally {
+				UnitOfWork.end();
+			}
+		});
+	}
+
+	/**
+	 * Sets ETag and Last-Modified of a representation of the node. Call it
+	 * before the representation is rendered. The ETag changes with the node,
+	 * with the labels of its parts and parents, which are embedded in the json
+	 * and html, and with the version of the renderer.
+	 *
+	 * @param node the node, read with the labels of its parts and parents
+	 * @param representation a name that differs for each representation and
+	 *          each of its variants, e.g. "rdf:ntriples"
+	 * @return 304 if the client already has this version, null otherwise
+	 */
+	static Result checkNotModified(Node node, String representation) {
+		Date lastModified = node.getLastModified();
+		if (lastModified == null)
+			return null;
+		return checkNotModified(representation, lastModified.getTime(),
+				"-" + Integer.toHexString(labelsHash(node)));
+	}
+
+	/**
+	 * @return a hash of the labels of the related nodes, independent of the
+	 *         order of the links
+	 */
+	private static int labelsHash(Node node) {
+		int hash = 0;
+		for (Link l : node.getRelsExt()) {
+			if (l.getObjectLabel() != null)
+				hash += Objects.hash(l.getPredicate(), l.getObject(),
+						l.getObjectLabel());
+		}
+		return hash;
+	}
+
+	/**
+	 * Like {@link #checkNotModified(Node, String)} for representations that
+	 * contain the parts of the node. The validators change whenever a node of
+	 * the tree is modified, added or removed.
+	 *
+	 * @param node the root of the tree
+	 * @param representation a name that differs for each representation
+	 * @return 304 if the client already has this version, null otherwise
+	 */
+	static Result checkTreeNotModified(Node node, String representation) {
+		HierarchyIndex hierarchy = read.loadHierarchy(node);
+		long newest = hierarchy.getNewest(node.getPid());
+		if (node.getLastModified() != null)
+			newest = Math.max(newest, node.getLastModified().getTime());
+		if (newest == 0)
+			return null;
+		return checkNotModified(representation, newest,
+				"-" + hierarchy.countDescendants(node.getPid()));
+	}
+
+	private static Result checkNotModified(String representation, long time,
+			String version) {
+		String etag = "\"" + representation + "-r"
+				+ Transform.rendererVersion(formatOf(representation)) + "-"
+				+ Long.toHexString(time) + version + "\"";
+		SimpleDateFormat httpDate =
+				new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+		response().setHeader(ETAG, etag);
+		response().setHeader(LAST_MODIFIED, httpDate.format(new Date(time)));
+		String ifNoneMatch = request().getHeader(IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				String t = tag.trim();
+				if (t.startsWith("W/"))
+					t = t.substring(2);
+				if (t.equals(etag) || t.equals("*"))
+					return status(NOT_MODIFIED);
+			}
+			return null;
+		}
+		String ifModifiedSince = request().getHeader(IF_MODIFIED_SINCE);
+		if (ifModifiedSince != null) {
+			try {
+				long since = httpDate.parse(ifModifiedSince).getTime();
+				if (time / 1000 <= since / 1000)
+					return status(NOT_MODIFIED);
+			} catch (ParseException e) {
+				// ignore an invalid date as RFC 7232 says
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the format of a representation name like "rdf:ntriples" or
+	 *         "all:json:short"
+	 */
+	private static String formatOf(String representation) {
+		String name = representation.startsWith("all:")
+				? representation.substring("all:".length()) : representation;
+		int end = name.indexOf(':');
+		return end < 0 ? name : name.substring(0, end);
+	}
+
 	/**
 	 * @author Jan Schnasse
 	 *
 	 */
 	public static class ReadMetadataAction {
 		Promise<Result> call(String pid, NodeAction ca) {
-			return Promise.promise(() -> {
+			return inUnitOfWork(() -> {
 				try {
 					Node node = null;
 					if (pid != null) {
@@ -343,7 +481,7 @@ public class MyController extends Controller {
 	 */
 	public static class ReadDataAction {
 		Promise<Result> call(String pid, NodeAction ca) {
-			return Promise.promise(() -> {
+			return inUnitOfWork(() -> {
 				try {
 					Node node = null;
 					if (pid != null) {
@@ -373,7 +511,7 @@ public class MyController extends Controller {
 	 */
 	public static class ListAction {
 		Promise<Result> call(Action ca) {
-			return Promise.promise(() -> {
+			return inUnitOfWork(() -> {
 				try {
 					String role = (String) Http.Context.current().args.get("role");
 					if (!readMetadata_accessIsAllowed("private", role)) {
@@ -397,7 +535,7 @@ public class MyController extends Controller {
 	 */
 	public static class ModifyAction {
 		Promise<Result> call(String pid, Action ca) {
-			return Promise.promise(() -> {
+			return inUnitOfWork(() -> {
 				try {
 					String role = (String) Http.Context.current().args.get("role");
 					String userId = request().getHeader("UserId");
@@ -429,7 +567,7 @@ public class MyController extends Controller {
 	 */
 	public static class IndexAction {
 		Promise<Result> call(String pid, NodeAction ca) {
-			return Promise.promise(() -> {
+			return inUnitOfWork(() -> {
 				try {
 					String role = (String) Http.Context.current().args.get("role");
 					play.Logger.debug("Try to access with role: " + role + ".");
@@ -459,7 +597,7 @@ public class MyController extends Controller {
 	 */
 	public static class CreateAction {
 		Promise<Result> call(Action ca) {
-			return Promise.promise(() -> {
+			return inUnitOfWork(() -> {
 				try {
 					String role = (String) Http.Context.current().args.get("role");
 					if (!modifyingAccessIsAllowed(role)) {
@@ -483,7 +621,7 @@ public class MyController extends Controller {
 	 */
 	public static class BulkActionAccessor {
 		Promise<Result> call(Action ca) {
-			return Promise.promise(() -> {
+			return inUnitOfWork(() -> {
 				try {
 					String role = (String) Http.Context.current().args.get("role");
 					play.Logger.debug("role={}", role);
@@ -543,14 +681,27 @@ public class MyController extends Controller {
 		return dateFormat.format(date);
 	}
 
+	/**
+	 * Validates xml against a schema from the classpath. The schema is compiled
+	 * once per process, see {@link XmlUtils#getSchema}. Used by the
+	 * ?validate=true variants of the xml representations, and by
+	 * {@link Modify#addDoi} and {@link Modify#updateDoi} before DataCite
+	 * metadata is registered.
+	 *
+	 * @param xml the xml
+	 * @param schema path of an xsd, e.g. "public/schemas/datacite.xsd". If
+	 *          null, the xml is only checked for well-formedness.
+	 * @throws HttpArchiveException 406 if the xml is not valid
+	 */
 	public static void validate(String xml, String schema) {
 		try {
 			if (schema != null) {
 				XmlUtils.validate(new ByteArrayInputStream(xml.getBytes("utf-8")),
-						Play.application().resourceAsStream(schema));
+						XmlUtils.getSchema(schema,
+								() -> Play.application().resourceAsStream(schema)));
 			} else {
 				XmlUtils.validate(new ByteArrayInputStream(xml.getBytes("utf-8")),
-						null);
+						(Schema) null);
 			}
 		} catch (Exception e) {
 			throw new HttpArchiveException(406, e.getMessage() + "\n" + xml);
@@ -18,9 +18,14 @@ package controllers;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.stream.Collectors;
 
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.PathParam;
@@ -32,10 +37,13 @@ import com.wordnik.swagger.annotations.ApiImplicitParams;
 import com.wordnik.swagger.annotations.ApiOperation;
 
 import actions.BasicAuth;
+import actions.BulkJobs;
 import actions.Create;
+import helper.AlephMabMaker;
 import helper.GatherconfImporter;
 import helper.Webgatherer;
 import helper.oai.OaiDispatcher;
+import models.BulkJob;
 import models.Gatherconf;
 import models.Globals;
 import models.Message;
@@ -71,23 +79,148 @@ public class MyUtils extends MyController {
 			@QueryParam("index") final String indexName) {
 		return new BulkActionAccessor().call((userId) -> {
 			String indexNameWithDatestamp = indexName + "-" + getCurrentDate();
+			Map<String, String> params = new HashMap<String, String>();
+			params.put("index", indexNameWithDatestamp);
+			BulkJob job =
+					BulkJobs.create(BulkJobs.INDEX_ALL, indexName, userId, params);
 			actions.BulkAction bulk = new actions.BulkAction();
-			bulk.execute(indexName, userId, nodes -> {
-				return index.indexAll(nodes, indexNameWithDatestamp);
-			});
+			bulk.executeJob(job, BulkJobs.processor(job));
 			response().setHeader("Transfer-Encoding", "Chunked");
 			return ok(bulk.getChunks());
 		});
 	}
 
+	@ApiOperation(produces = "application/json,application/html", nickname = "reindexModified", value = "reindexModified", notes = "Reindexes all resources that have been modified since the last run or since the given date (yyyy-MM-dd)", response = Message.class, httpMethod = "POST")
+	public static Promise<Result> reindexModified(
+			@QueryParam("namespace") final String namespace,
+			@QueryParam("since") final String since) {
+		return new BulkActionAccessor().call((userId) -> {
+			String ns = namespace;
+			if (ns == null || ns.isEmpty()) {
+				ns = Globals.namespaces[0];
+			}
+			Date sinceDate = null;
+			if (since != null && !since.isEmpty()) {
+				sinceDate = createDateFromString(since);
+			}
+			String result = Globals.incrementalIndexer.reindexModified(ns,
+					sinceDate);
+			return JsonMessage(new Message(result));
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "indexJournal", value = "indexJournal", notes = "Shows the number and age of index operations that wait for replay", response = Map.class, httpMethod = "GET")
+	public static Promise<Result> indexJournal() {
+		return new ListAction().call((userId) -> {
+			return getJsonResult(Globals.indexJournal.getStatus());
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "listJobs", value = "listJobs", notes = "Lists all namespace-wide bulk jobs", response = List.class, httpMethod = "GET")
+	public static Promise<Result> listJobs() {
+		return new ListAction().call((userId) -> {
+			return getJsonResult(BulkJobs.list().stream()
+					.map(job -> BulkJobs.summary(job)).collect(Collectors.toList()));
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "getJob", value = "getJob", notes = "Shows progress, cursor and failed items of a bulk job", response = BulkJob.class, httpMethod = "GET")
+	public static Promise<Result> getJob(@PathParam("id") String id) {
+		return new ListAction().call((userId) -> {
+			return getJsonResult(BulkJobs.get(id));
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "cancelJob", value = "cancelJob", notes = "Stops a bulk job after the chunks that are already read", response = BulkJob.class, httpMethod = "POST")
+	public static Promise<Result> cancelJob(@PathParam("id") String id) {
+		return new BulkActionAccessor().call((userId) -> {
+			return getJsonResult(BulkJobs.summary(BulkJobs.cancel(id)));
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "prioritizeJob", value = "prioritizeJob", notes = "Sets the priority of a bulk job. Waiting backend calls of jobs with a higher priority are served first. Default is 5.", response = BulkJob.class, httpMethod = "POST")
+	public static Promise<Result> prioritizeJob(@PathParam("id") String id,
+			@QueryParam("priority") int priority) {
+		return new BulkActionAccessor().call((userId) -> {
+			return getJsonResult(
+					BulkJobs.summary(BulkJobs.setPriority(id, priority)));
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "statusChecker", value = "statusChecker", notes = "Shows the result cache and the persistent store of the urn, doi and oai status checks", response = Map.class, httpMethod = "GET")
+	public static Promise<Result> statusChecker() {
+		return new ListAction().call((userId) -> {
+			Map<String, Object> result = new HashMap<String, Object>();
+			result.put("cache", Globals.statusChecker.getStatus());
+			result.put("store", Globals.statusStore.getStatus());
+			return getJsonResult(result);
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "stores", value = "stores", notes = "Shows hits, misses and writes of the stores of rendered representations and extracted fulltexts and the state of the extraction queue", response = Map.class, httpMethod = "GET")
+	public static Promise<Result> stores() {
+		return new ListAction().call((userId) -> {
+			Map<String, Object> result = new HashMap<String, Object>();
+			result.put("representations", Globals.representations.getStatus());
+			result.put("fulltexts", Globals.fulltexts.getStatus());
+			result.put("fulltextQueue", Globals.fulltextQueue.getStatus());
+			return getJsonResult(result);
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "throttle", value = "throttle", notes = "Shows the adaptive concurrency limit of bulk actions and the observed backend latencies", response = Map.class, httpMethod = "GET")
+	public static Promise<Result> throttle() {
+		return new ListAction().call((userId) -> {
+			return getJsonResult(Globals.bulkThrottle.getStatus());
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "resumeJob", value = "resumeJob", notes = "Continues a cancelled or interrupted bulk job at its cursor", response = BulkJob.class, httpMethod = "POST")
+	public static Promise<Result> resumeJob(@PathParam("id") String id) {
+		return new BulkActionAccessor().call((userId) -> {
+			return getJsonResult(BulkJobs.summary(BulkJobs.resume(id)));
+		});
+	}
+
+	@ApiOperation(produces = "application/json", nickname = "queryCache", value = "queryCache", notes = "Shows size and hit rate of the /find result cache", response = Map.class, httpMethod = "GET")
+	public static Promise<Result> queryCache() {
+		return new ListAction().call((userId) -> {
+			return getJsonResult(Globals.search.getQueryCacheStatus());
+		});
+	}
+
+	@ApiOperation(produces = "application/xml", nickname = "mabxml", value = "mabxml", notes = "Exports the resources of a namespace or a comma separated list of pids as one collection of mabxml records", response = String.class, httpMethod = "GET")
+	public static Promise<Result> mabxml(
+			@QueryParam("namespace") final String namespace,
+			@QueryParam("pids") final String pids) {
+		return new ListAction().call((userId) -> {
+			Iterator<String> it;
+			if (pids != null && !pids.isEmpty()) {
+				it = Arrays.asList(pids.split(",")).stream().map(String::trim)
+						.filter(p -> !p.isEmpty()).iterator();
+			} else if (namespace != null && !namespace.isEmpty()) {
+				it = read.streamRepoNamespace(namespace);
+			} else {
+				return JsonMessage(
+						new Message("Please provide a namespace or pids!", 400));
+			}
+			Iterator<String> exported = it;
+			response().setContentType("application/xml; charset=utf-8");
+			return stream("mabxml export", w -> {
+				int count = new AlephMabMaker().aleph(exported, w);
+				play.Logger.info("Exported " + count + " mabxml records");
+			});
+		});
+	}
+
 	@ApiOperation(produces = "application/json,application/html", nickname = "reinitOaisets", value = "reinitOaisets", notes = "Updates the oaisets of all resources", response = List.class, httpMethod = "POST")
 	public static Promise<Result> reinitOaisets(
 			@QueryParam("namespace") final String namespace) {
 		return new BulkActionAccessor().call((userId) -> {
+			BulkJob job =
+					BulkJobs.create(BulkJobs.REINIT_OAISETS, namespace, userId, null);
 			actions.BulkAction bulk = new actions.BulkAction();
-			bulk.execute(namespace, userId, nodes -> {
-				return modify.reinitOaiSets(nodes);
-			});
+			bulk.executeJob(job, BulkJobs.processor(job));
 			response().setHeader("Transfer-Encoding", "Chunked");
 			return ok(bulk.getChunks());
 		});
@@ -97,10 +230,10 @@ public class MyUtils extends MyController {
 	public static Promise<Result> lobidifyAll(
 			@QueryParam("namespace") final String namespace) {
 		return new BulkActionAccessor().call((userId) -> {
+			BulkJob job =
+					BulkJobs.create(BulkJobs.LOBIDIFY, namespace, userId, null);
 			actions.BulkAction bulk = new actions.BulkAction();
-			bulk.execute(namespace, userId, nodes -> {
-				return modify.lobidify(nodes);
-			});
+			bulk.executeJob(job, BulkJobs.processor(job));
 			response().setHeader("Transfer-Encoding", "Chunked");
 			return ok(bulk.getChunks());
 		});
@@ -113,12 +246,13 @@ public class MyUtils extends MyController {
 			@QueryParam("fromBefore") final String fromBefore) {
 		return new BulkActionAccessor().call((userId) -> {
 			Date fromBeforeDate = createDateFromString(fromBefore);
+			Map<String, String> params = new HashMap<String, String>();
+			params.put("snid", snid);
+			params.put("fromBefore", "" + fromBeforeDate.getTime());
+			BulkJob job =
+					BulkJobs.create(BulkJobs.ADD_URN, namespace, userId, params);
 			actions.BulkAction bulk = new actions.BulkAction();
-			bulk.execute(namespace, userId, nodes -> {
-				String msg = modify.addUrnToAll(nodes, snid, fromBeforeDate);
-				play.Logger.info(msg);
-				return msg;
-			});
+			bulk.executeJob(job, BulkJobs.processor(job));
 			response().setHeader("Transfer-Encoding", "Chunked");
 			return ok(bulk.getChunks());
 		});
@@ -174,11 +308,11 @@ public class MyUtils extends MyController {
 			if (t == null) {
 				t = node.getCreationDate();
 				modify.setObjectTimestamp(node, t, userId);
-				return JsonMessage(new Message(
-						pid + " set objectTimestamp to " + Globals.dateFormat.format(t)));
+				return JsonMessage(new Message(pid + " set objectTimestamp to "
+						+ Globals.dateFormat().format(t)));
 			}
 			return JsonMessage(new Message(pid + " already has objectTimestamp "
-					+ Globals.dateFormat.format(t)));
+					+ Globals.dateFormat().format(t)));
 		});
 	}
 
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package controllers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+
+import actions.BasicAuth;
+import helper.oai.OaiProvider;
+import models.Globals;
+import play.libs.F.Promise;
+import play.mvc.Result;
+
+/**
+ * 
+ * @author Jan Schnasse
+ * 
+ *         Api is documented using swagger. See:
+ *         https://github.com/wordnik/swagger-ui
+ * 
+ */
+@BasicAuth
+@Api(value = "/oai", description = "An OAI-PMH 2.0 interface to the oai sets of the repository")
+@SuppressWarnings("javadoc")
+public class Oai extends MyController {
+
+	@ApiOperation(produces = "text/xml", nickname = "oai", value = "oai", notes = "Answers OAI-PMH requests. Records are read from the index and the store of rendered representations.", httpMethod = "GET")
+	public static Promise<Result> oai() {
+		return new ReadMetadataAction().call(null, node -> {
+			Map<String, String[]> params =
+					new HashMap<String, String[]>(request().queryString());
+			Map<String, String[]> form = request().body().asFormUrlEncoded();
+			if (form != null)
+				params.putAll(form);
+			OaiProvider provider = new OaiProvider(
+					Globals.protocol + Globals.server + "/oai", Globals.oaiPageSize);
+			response().setContentType("text/xml; charset=utf-8");
+			return stream("oai", w -> provider.handle(params, w));
+		});
+	}
+}
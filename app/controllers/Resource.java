@@ -28,6 +28,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -38,7 +39,10 @@ import javax.ws.rs.QueryParam;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -49,15 +53,20 @@ import com.wordnik.swagger.annotations.ApiOperation;
 
 import actions.BasicAuth;
 import actions.BulkAction;
+import actions.BulkJobs;
+import actions.TreeLoader;
 import archive.fedora.RdfUtils;
+import helper.AlephMabMaker;
+import helper.HierarchyIndex;
 import helper.HttpArchiveException;
 import helper.JsonMapper;
+import helper.RepresentationStore;
 import helper.oai.OaiDispatcher;
+import models.BulkJob;
 import models.DublinCoreData;
 import models.Gatherconf;
 import models.Globals;
 import models.Link;
-import models.MabRecord;
 import models.Message;
 import models.Node;
 import models.RegalObject;
@@ -66,11 +75,7 @@ import play.libs.F.Promise;
 import play.mvc.Http.MultipartFormData;
 import play.mvc.Http.MultipartFormData.FilePart;
 import play.mvc.Result;
-import play.twirl.api.Html;
 import views.html.edit;
-import views.html.mab;
-import views.html.mets;
-import views.html.oaidc;
 import views.html.resource;
 import views.html.search;
 import views.html.status;
@@ -89,6 +94,11 @@ import views.html.frlResource;
 @SuppressWarnings("javadoc")
 public class Resource extends MyController {
 
+	/**
+	 * The extracted fulltext is searched but never rendered in hit lists
+	 */
+	private static final String[] SEARCH_EXCLUDES = { "fulltext-ocr" };
+
 	@ApiOperation(produces = "application/json", nickname = "listUrn", value = "listUrn", notes = "Returns infos about urn", httpMethod = "GET")
 	public static Promise<Result> listUrn(@PathParam("pid") String pid) {
 		return new ReadMetadataAction().call(pid, (Node node) -> {
@@ -142,6 +152,10 @@ public class Resource extends MyController {
 			int from, int until) {
 		return new ListAction().call((userId) -> {
 			try {
+				if (Globals.listFromIndex) {
+					return getJsonResult(
+							read.listRepoFromIndex(contentType, namespace, from, until));
+				}
 				List<Node> nodes = read.listRepo(contentType, namespace, from, until);
 				return getJsonResult(nodes);
 			} catch (HttpArchiveException e) {
@@ -158,6 +172,11 @@ public class Resource extends MyController {
 			try {
 				response().setHeader("Access-Control-Allow-Origin", "*");
 				response().setHeader("Content-Type", "text/html; charset=utf-8");
+				if (Globals.listFromIndex) {
+					return ok(resource.render(
+							read.listRepoFromIndex(contentType, namespace, from, until),
+							Globals.namespaces[0]));
+				}
 				List<Node> nodes = read.listRepo(contentType, namespace, from, until);
 				return ok(
 						resource.render(nodes.stream().map(n -> new JsonMapper(n).getLd())
@@ -175,7 +194,7 @@ public class Resource extends MyController {
 	public static Promise<Result> listResource(@PathParam("pid") String pid,
 			@QueryParam("design") String design) {
 		response().setHeader("Access-Control-Allow-Origin", "*");
-
+		response().setHeader(VARY, ACCEPT);
 		if (request().accepts("text/html"))
 			return asHtml(pid, design);
 		if (request().accepts("application/rdf+xml"))
@@ -190,18 +209,18 @@ public class Resource extends MyController {
 		return new ReadMetadataAction().call(pid, node -> {
 			try {
 				String result = "";
+				response().setHeader(VARY, ACCEPT);
 				if (request().accepts("application/rdf+xml")) {
-					result = RdfUtils.readRdfToString(
-							new ByteArrayInputStream(node.toString().getBytes("utf-8")),
-							RDFFormat.JSONLD, RDFFormat.RDFXML, node.getAggregationUri());
-					response().setContentType("application/rdf+xml");
-					return ok(result);
+					Result notModified = checkNotModified(node, "rdf:rdfxml");
+					if (notModified != null)
+						return notModified;
+					return storedRepresentation(node, "rdf", "application/rdf+xml");
 				} else if (request().accepts("text/plain")) {
-					result = RdfUtils.readRdfToString(
-							new ByteArrayInputStream(node.toString().getBytes("utf-8")),
-							RDFFormat.JSONLD, RDFFormat.NTRIPLES, node.getAggregationUri());
+					Result notModified = checkNotModified(node, "rdf:ntriples");
+					if (notModified != null)
+						return notModified;
 					response().setContentType("text/plain");
-					return ok(result);
+					return ok(transform.rdf(node, RDFFormat.NTRIPLES));
 				}
 				return JsonMessage(new Message(result));
 			} catch (Exception e) {
@@ -210,6 +229,23 @@ public class Resource extends MyController {
 		});
 	}
 
+	/**
+	 * Serves a representation from {@link Globals#representations}. Clients
+	 * that accept gzip get the stored bytes as they are.
+	 */
+	private static Result storedRepresentation(Node node, String format,
+			String contentType) {
+		byte[] gzipped = transform.representation(node, format);
+		response().setContentType(contentType);
+		response().setHeader(VARY, ACCEPT + ", " + ACCEPT_ENCODING);
+		String encodings = request().getHeader(ACCEPT_ENCODING);
+		if (encodings != null && encodings.contains("gzip")) {
+			response().setHeader(CONTENT_ENCODING, "gzip");
+			return ok(gzipped);
+		}
+		return ok(RepresentationStore.gunzip(gzipped));
+	}
+
 	@ApiOperation(produces = "text/plain", nickname = "listMetadata", value = "listMetadata", notes = "Shows Metadata of a resource.", response = play.mvc.Result.class, httpMethod = "GET")
 	public static Promise<Result> listMetadata(@PathParam("pid") String pid,
 			@QueryParam("field") String field) {
@@ -287,7 +323,7 @@ public class Resource extends MyController {
 	public static Promise<Result> patchResources(@PathParam("pid") String pid) {
 		return new BulkActionAccessor().call((userId) -> {
 			RegalObject object = getRegalObject(request().body().asJson());
-			List<Node> list = Globals.fedora.listComplexObject(pid);
+			List<Node> list = read.listComplexObject(pid);
 			BulkAction bulk = new BulkAction();
 			bulk.executeOnNodes(list, userId, nodes -> {
 				return create.patchResources(nodes, object);
@@ -429,7 +465,7 @@ public class Resource extends MyController {
 	public static Promise<Result> deleteResource(@PathParam("pid") String pid,
 			@QueryParam("purge") String purge) {
 		return new BulkActionAccessor().call((userId) -> {
-			List<Node> list = Globals.fedora.listComplexObject(pid);
+			List<Node> list = read.listComplexObject(pid);
 			BulkAction bulk = new BulkAction();
 			bulk.executeOnNodes(list, userId, nodes -> {
 				if ("true".equals(purge)) {
@@ -477,13 +513,12 @@ public class Resource extends MyController {
 			@QueryParam("namespace") String namespace,
 			@QueryParam("purge") String purge) {
 		return new BulkActionAccessor().call((userId) -> {
+			Map<String, String> params = new HashMap<String, String>();
+			params.put("purge", purge);
+			BulkJob job =
+					BulkJobs.create(BulkJobs.DELETE, namespace, userId, params);
 			actions.BulkAction bulk = new actions.BulkAction();
-			bulk.execute(namespace, userId, nodes -> {
-				if ("true".equals(purge)) {
-					return delete.purge(nodes);
-				}
-				return delete.delete(nodes);
-			});
+			bulk.executeJob(job, BulkJobs.processor(job));
 			response().setHeader("Transfer-Encoding", "Chunked");
 			return ok(bulk.getChunks());
 		});
@@ -522,10 +557,10 @@ public class Resource extends MyController {
 		return new ReadMetadataAction().call(null, node -> {
 			List<Map<String, Object>> hitMap = new ArrayList<Map<String, Object>>();
 			try {
-				SearchHits hits = Globals.search.query(
+				SearchHits hits = Globals.search.cachedQuery(
 						new String[] { Globals.PUBLIC_INDEX_PREF + Globals.namespaces[0],
 								Globals.PDFBOX_OCR_INDEX_PREF + Globals.namespaces[0] },
-						queryString, from, until);
+						queryString, from, until, null, SEARCH_EXCLUDES);
 				List<SearchHit> list = Arrays.asList(hits.getHits());
 				hitMap = read.hitlistToMap(list);
 				if (request().accepts("text/html")) {
@@ -549,7 +584,12 @@ public class Resource extends MyController {
 				if (!"short".equals(s)) {
 					style = "long";
 				}
+				response().setHeader(VARY, ACCEPT);
 				if (request().accepts("text/html")) {
+					Result notModified =
+							checkTreeNotModified(node, "all:html:" + design);
+					if (notModified != null)
+						return notModified;
 					if ("frl".equals(design)) {
 						return ok(frlResource.render(read.getMapWithParts(node),
 								Globals.namespaces[0]));
@@ -561,10 +601,13 @@ public class Resource extends MyController {
 					}
 
 				} else if (request().accepts("application/json")) {
-					return getJsonResult(read.getPartsAsTree(node, style));
+					Result notModified =
+							checkTreeNotModified(node, "all:json:" + style);
+					if (notModified != null)
+						return notModified;
+					return partsAsJsonStream(node, style);
 				} else {
-					List<Node> result = read.getParts(node);
-					return asRdf(result);
+					return partsAsRdfStream(node);
 				}
 			} catch (Exception e) {
 				return JsonMessage(new Message(e, 500));
@@ -572,39 +615,43 @@ public class Resource extends MyController {
 		});
 	}
 
-	private static Result asRdf(List<Node> result) {
-		try {
-			RDFFormat format = RDFFormat.TURTLE;
+	/**
+	 * Writes the statements of all nodes of the tree to a chunked response. The
+	 * tree is read level by level, no graph is built in memory.
+	 */
+	private static Result partsAsRdfStream(Node node) {
+		RDFFormat format = RDFFormat.TURTLE;
+		response().setContentType("text/turtle");
+		if (request().accepts("application/rdf+xml")) {
+			format = RDFFormat.RDFXML;
+			response().setContentType("application/rdf+xml");
+		} else if (request().accepts("text/turtle")) {
+			format = RDFFormat.TURTLE;
 			response().setContentType("text/turtle");
-			if (request().accepts("application/rdf+xml")) {
-				format = RDFFormat.RDFXML;
-				response().setContentType("application/rdf+xml");
-			} else if (request().accepts("text/turtle")) {
-				format = RDFFormat.TURTLE;
-				response().setContentType("text/turtle");
-			} else if (request().accepts("text/plain")) {
-				format = RDFFormat.NTRIPLES;
-				response().setContentType("text/plain");
-			}
-			String rdf = RdfUtils.readRdfToString(
-					new ByteArrayInputStream(json(result).getBytes("utf-8")),
-					RDFFormat.JSONLD, format, "");
-			return ok(rdf);
-		} catch (Exception e) {
-			throw new HttpArchiveException(500, e);
+		} else if (request().accepts("text/plain")) {
+			format = RDFFormat.NTRIPLES;
+			response().setContentType("text/plain");
 		}
-	}
-
-	private static Result asJson(Map<String, Object> result) {
-		return getJsonResult(result);
+		Result notModified = checkTreeNotModified(node,
+				"all:rdf:" + format.getDefaultFileExtension());
+		if (notModified != null)
+			return notModified;
+		RDFFormat outf = format;
+		return stream(node.getPid(), w -> {
+			RDFWriter writer = Rio.createWriter(outf, w);
+			writer.startRDF();
+			new TreeLoader(read::internalReadNode).stream(node,
+					n -> RdfUtils.writeStatements(n.getPid(), n.getMetadata(),
+							n.getRelsExt(), writer));
+			writer.endRDF();
+		});
 	}
 
 	@ApiOperation(produces = "application/json,text/html", nickname = "listAllParts", value = "listAllParts", notes = "List resources linked with hasPart", response = play.mvc.Result.class, httpMethod = "GET")
 	public static Promise<Result> listAllPartsAsRdf(
 			@PathParam("pid") String pid) {
 		return new ReadMetadataAction().call(pid, node -> {
-			List<Node> result = read.getParts(node);
-			return asRdf(result);
+			return partsAsRdfStream(node);
 		});
 	}
 
@@ -613,14 +660,26 @@ public class Resource extends MyController {
 			@QueryParam("style") String style) {
 		return new ReadMetadataAction().call(pid, node -> {
 			try {
-				Map<String, Object> result = read.getPartsAsTree(node, style);
-				return asJson(result);
+				Result notModified = checkTreeNotModified(node, "all:json:" + style);
+				if (notModified != null)
+					return notModified;
+				return partsAsJsonStream(node, style);
 			} catch (Exception e) {
 				return JsonMessage(new Message(e, 500));
 			}
 		});
 	}
 
+	private static Result partsAsJsonStream(Node node, String style) {
+		response().setHeader("Access-Control-Allow-Origin", "*");
+		response().setContentType("application/json");
+		return stream(node.getPid(), w -> {
+			try (JsonGenerator g = mapper.getFactory().createGenerator(w)) {
+				read.writePartsAsTree(node, style, g);
+			}
+		});
+	}
+
 	@ApiOperation(produces = "applicatio/json", nickname = "listSeq", value = "listSeq", notes = "Shows seq data for ordered print of parts.", response = play.mvc.Result.class, httpMethod = "GET")
 	public static Promise<Result> listSeq(@PathParam("pid") String pid) {
 		return new ReadMetadataAction().call(pid, node -> {
@@ -649,6 +708,9 @@ public class Resource extends MyController {
 			@QueryParam("design") String design) {
 		return new ReadMetadataAction().call(pid, node -> {
 			try {
+				Result notModified = checkNotModified(node, "html:" + design);
+				if (notModified != null)
+					return notModified;
 				List<Node> nodes = new ArrayList<Node>();
 				nodes.add(node);
 				response().setHeader("Content-Type", "text/html; charset=utf-8");
@@ -667,6 +729,9 @@ public class Resource extends MyController {
 	@ApiOperation(produces = "application/json", nickname = "asJson", value = "asJson", notes = "Returns a json display of the resource", response = Message.class, httpMethod = "GET")
 	public static Promise<Result> asJson(@PathParam("pid") String pid) {
 		return new ReadMetadataAction().call(pid, node -> {
+			Result notModified = checkNotModified(node, "json");
+			if (notModified != null)
+				return notModified;
 			return getJsonResult(node);
 		});
 	}
@@ -675,31 +740,46 @@ public class Resource extends MyController {
 	public static Promise<Result> asOaiDc(@PathParam("pid") String pid,
 			@QueryParam("validate") boolean validate) {
 		return new ReadMetadataAction().call(pid, node -> {
-			response().setContentType("application/xml");
-			Html result = oaidc.render(transform.oaidc(pid));
-			String xml = result.toString();
+			Result notModified = checkNotModified(node, "oaidc");
+			if (notModified != null)
+				return notModified;
 			if (validate) {
-				validate(xml, "public/schemas/oai_dc.xsd");
+				validate(RepresentationStore.gunzip(
+						transform.representation(node, "oaidc")),
+						"public/schemas/oai_dc.xsd");
 			}
-			return ok(result);
+			return storedRepresentation(node, "oaidc", "application/xml");
 		});
 	}
 
 	@ApiOperation(produces = "application/xml", nickname = "asEpicur", value = "asEpicur", notes = "Returns a epicur display of the resource", response = Message.class, httpMethod = "GET")
 	public static Promise<Result> asEpicur(@PathParam("pid") String pid) {
 		return new ReadMetadataAction().call(pid, node -> {
-			String result = transform.epicur(node);
-			response().setContentType("application/xml");
-			return ok(result);
+			Result notModified = checkNotModified(node, "epicur");
+			if (notModified != null)
+				return notModified;
+			return storedRepresentation(node, "epicur", "application/xml");
 		});
 	}
 
 	@ApiOperation(produces = "application/xml", nickname = "asAleph", value = "asAleph", notes = "Returns a aleph xml display of the resource", response = Message.class, httpMethod = "GET")
 	public static Promise<Result> asAleph(@PathParam("pid") String pid) {
 		return new ReadMetadataAction().call(pid, node -> {
-			MabRecord result = transform.aleph(pid);
-			response().setContentType("application/xml");
-			return ok(mab.render(result));
+			Result notModified = checkNotModified(node, "aleph");
+			if (notModified != null)
+				return notModified;
+			return storedRepresentation(node, "aleph", "application/xml");
+		});
+	}
+
+	@ApiOperation(produces = "application/xml", nickname = "asMabXml", value = "asMabXml", notes = "Returns a mabxml record of the resource", response = Message.class, httpMethod = "GET")
+	public static Promise<Result> asMabXml(@PathParam("pid") String pid) {
+		return new ReadMetadataAction().call(pid, node -> {
+			Result notModified = checkNotModified(node, "mabxml");
+			if (notModified != null)
+				return notModified;
+			response().setContentType("application/xml; charset=utf-8");
+			return stream(node.getPid(), w -> new AlephMabMaker().aleph(node, w));
 		});
 	}
 
@@ -707,6 +787,9 @@ public class Resource extends MyController {
 	public static Promise<Result> asDatacite(@PathParam("pid") String pid,
 			@QueryParam("validate") boolean validate) {
 		return new ReadMetadataAction().call(pid, node -> {
+			Result notModified = checkNotModified(node, "datacite");
+			if (notModified != null)
+				return notModified;
 			response().setContentType("application/xml");
 			String result = transform.datacite(node, node.getDoi());
 			if (validate) {
@@ -720,14 +803,15 @@ public class Resource extends MyController {
 	public static Promise<Result> asMets(@PathParam("pid") String pid,
 			@QueryParam("validate") boolean validate) {
 		return new ReadMetadataAction().call(pid, node -> {
-			response().setContentType("application/xml");
-			Html result =
-					mets.render(read.getPartsAsTree(node, "long"), transform.oaidc(pid));
-			String xml = result.toString();
+			Result notModified = checkTreeNotModified(node, "mets");
+			if (notModified != null)
+				return notModified;
 			if (validate) {
-				validate(xml, "public/schemas/mets.xsd");
+				validate(RepresentationStore.gunzip(
+						transform.representation(node, "mets")),
+						"public/schemas/mets.xsd");
 			}
-			return ok(result);
+			return storedRepresentation(node, "mets", "application/xml");
 		});
 	}
 
@@ -753,8 +837,8 @@ public class Resource extends MyController {
 
 	@ApiOperation(produces = "text/plain", nickname = "asPdfboxTxt", value = "asPdfboxTxt", notes = "Returns text display of a pdf datastream.", response = String.class, httpMethod = "GET")
 	public static Promise<Result> asPdfboxTxt(@PathParam("pid") String pid) {
-		return new ReadMetadataAction().call(pid, node -> {
-			String result = transform.pdfbox(pid).getFulltext();
+		return new ReadDataAction().call(pid, node -> {
+			String result = transform.pdfbox(node);
 			response().setHeader("Access-Control-Allow-Origin", "*");
 			response().setHeader("Content-Type", "text/plain; charset=utf-8");
 			return ok(result);
@@ -815,11 +899,11 @@ public class Resource extends MyController {
 		return new BulkActionAccessor().call((userId) -> {
 			List<Node> list = null;
 			if (contentType != null && !contentType.isEmpty()) {
-				list = Globals.fedora.listComplexObject(pid).stream()
+				list = read.listComplexObject(pid).stream()
 						.filter(n -> contentType.equals(n.getContentType()))
 						.collect(Collectors.toList());
 			} else {
-				list = Globals.fedora.listComplexObject(pid).stream()
+				list = read.listComplexObject(pid).stream()
 						.filter(n -> "file".equals(n.getContentType()))
 						.collect(Collectors.toList());
 			}
@@ -838,11 +922,11 @@ public class Resource extends MyController {
 		return new BulkActionAccessor().call((userId) -> {
 			List<Node> list = null;
 			if (contentType != null && !contentType.isEmpty()) {
-				list = Globals.fedora.listComplexObject(pid).stream()
+				list = read.listComplexObject(pid).stream()
 						.filter(n -> contentType.equals(n.getContentType()))
 						.collect(Collectors.toList());
 			} else {
-				list = Globals.fedora.listComplexObject(pid);
+				list = read.listComplexObject(pid);
 			}
 			BulkAction bulk = new BulkAction();
 			bulk.executeOnNodes(list, userId, nodes -> {
@@ -877,6 +961,18 @@ public class Resource extends MyController {
 		});
 	}
 
+	@ApiOperation(produces = "application/json", nickname = "countParts", value = "countParts", notes = "Counts all descendants of the resource, in total and by contentType", response = Map.class, httpMethod = "GET")
+	public static Promise<Result> countParts(@PathParam("pid") String pid) {
+		return new ReadMetadataAction().call(pid, node -> {
+			HierarchyIndex hierarchy = read.loadHierarchy(node);
+			Map<String, Object> result = new HashMap<String, Object>();
+			result.put("descendants", hierarchy.countDescendants(pid));
+			result.put("byContentType", hierarchy.countDescendantsByType(pid));
+			result.put("lastModified", hierarchy.getLastModified(pid));
+			return getJsonResult(result);
+		});
+	}
+
 	public static Promise<Result> updateConf(@PathParam("pid") String pid) {
 		return new ModifyAction().call(pid, userId -> {
 			Node node = readNodeOrNull(pid);
@@ -916,9 +1012,11 @@ public class Resource extends MyController {
 		});
 	}
 
-	public static Promise<Result> getStatus(@PathParam("pid") String pid) {
+	@ApiOperation(produces = "application/json", nickname = "getStatus", value = "getStatus", notes = "Returns the stored urn, doi and oai status of the object. Set recheck to check it again.", httpMethod = "GET")
+	public static Promise<Result> getStatus(@PathParam("pid") String pid,
+			@QueryParam("recheck") boolean recheck) {
 		return new ReadMetadataAction().call(pid, node -> {
-			return getJsonResult(read.getStatus(node));
+			return getJsonResult(read.getStatus(node, recheck));
 		});
 	}
 
@@ -926,7 +1024,8 @@ public class Resource extends MyController {
 	public static Promise<Result> listResourcesStatus(
 			@QueryParam("namespace") String namespace,
 			@QueryParam("contentType") String contentType,
-			@QueryParam("from") int from, @QueryParam("until") int until) {
+			@QueryParam("from") int from, @QueryParam("until") int until,
+			@QueryParam("recheck") boolean recheck) {
 		return new ListAction().call((userId) -> {
 			try {
 				String ns = namespace;
@@ -934,7 +1033,7 @@ public class Resource extends MyController {
 					ns = Globals.namespaces[0];
 				}
 				List<Node> nodes = read.listRepo(contentType, ns, from, until);
-				List<Map<String, Object>> stati = read.getStatus(nodes);
+				List<Map<String, Object>> stati = read.getStatus(nodes, recheck);
 				if (request().accepts("text/html")) {
 					return htmlStatusList(stati);
 				} else {
@@ -19,9 +19,11 @@ package converter.mab;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 
 import models.MabRecord;
 
+import org.openrdf.model.Statement;
 import org.openrdf.rio.RDFFormat;
 
 /**
@@ -51,10 +53,7 @@ public class MabConverter {
 	 */
 	public MabConverter(String topic) throws IOException {
 		this.topic = topic;
-		try (InputStream template = Thread.currentThread().getContextClassLoader()
-				.getResourceAsStream("mabxml-string-template-on-record.xml")) {
-			encoder = new Mabencoder(template);
-		}
+		encoder = Mabencoder.getDefault();
 	}
 
 	/**
@@ -66,6 +65,16 @@ public class MabConverter {
 		return convert(in, RDFFormat.NTRIPLES, Format.mabxml);
 	}
 
+	/**
+	 * @param statements parsed rdf, e.g. {@link models.Node#getMetadataStatements()}
+	 * @return the statements converted to mabxml
+	 */
+	public ByteArrayOutputStream convert(Collection<Statement> statements) {
+		RegalToMabMapper mapper = new RegalToMabMapper();
+		MabRecord record = mapper.map(statements, topic);
+		return encoder.render(record);
+	}
+
 	private ByteArrayOutputStream convert(InputStream in, RDFFormat inputFormat,
 			Format output) {
 		RegalToMabMapper mapper = new RegalToMabMapper();
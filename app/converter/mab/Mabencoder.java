@@ -19,8 +19,10 @@ package converter.mab;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 
 import models.MabRecord;
@@ -28,14 +30,36 @@ import models.MabRecord.Person;
 import models.MabRecord.PersonType;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.stringtemplate.v4.AutoIndentWriter;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
+ * Renders MabRecords with a StringTemplate template. The template is compiled
+ * once into a group and every record is rendered from a fresh instance of it,
+ * so an encoder can be shared by threads. String values are xml escaped while
+ * they are rendered.
+ *
  * @author Jan Schnasse schnasse@hbz-nrw.de
  * 
  */
 public class Mabencoder {
-	ST st = null;
+
+	/**
+	 * The xml declaration written in front of a single record
+	 */
+	public static final String XML_DECLARATION =
+			"<?xml version = \"1.0\" encoding = \"UTF-8\"?>\n";
+
+	private static final String TEMPLATE_NAME = "record";
+	private static final String DEFAULT_TEMPLATE =
+			"mabxml-string-template-on-record.xml";
+	private static final int MAX_PERSONS = 3;
+
+	private static Mabencoder defaultEncoder = null;
+
+	private final STGroup group;
 
 	/**
 	 * @param template a StringTemplate template file
@@ -43,51 +67,96 @@ public class Mabencoder {
 	public Mabencoder(InputStream template) {
 		try {
 			StringWriter st_writer = new StringWriter();
-			IOUtils.copy(template, st_writer);
-			String data = st_writer.toString();
-			st = new ST(data, '$', '$');
-
+			IOUtils.copy(template, st_writer, "utf-8");
+			String data = st_writer.toString()
+					.replaceFirst("^\\s*<\\?xml[^>]*\\?>\\s*", "");
+			group = new STGroup('$', '$');
+			group.defineTemplate(TEMPLATE_NAME, formalArguments(), data);
+			group.registerRenderer(String.class,
+					(o, formatString, locale) -> StringEscapeUtils
+							.escapeXml((String) o));
 		} catch (IOException e) {
 			throw new MabException("Couldn't read template file.", e);
 		}
 	}
 
+	/**
+	 * @return an encoder with the template of the classpath. It is compiled on
+	 *         the first call.
+	 */
+	public static synchronized Mabencoder getDefault() {
+		if (defaultEncoder == null) {
+			try (InputStream template = Thread.currentThread()
+					.getContextClassLoader().getResourceAsStream(DEFAULT_TEMPLATE)) {
+				defaultEncoder = new Mabencoder(template);
+			} catch (IOException e) {
+				throw new MabException("Couldn't read template file.", e);
+			}
+		}
+		return defaultEncoder;
+	}
+
 	/**
 	 * @param record a MabRecord
 	 * @return string output in binary form
 	 */
 	public ByteArrayOutputStream render(MabRecord record) {
-		addFields(record);
-		addPersons(record);
-		return render();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+			writer.write(XML_DECLARATION);
+			write(record, writer);
+		} catch (IOException e) {
+			throw new MabException("Couldn't render record.", e);
+		}
+		return out;
 	}
 
-	private void addFields(MabRecord record) {
+	/**
+	 * Renders the record without xml declaration, e.g. to add it to a
+	 * collection of records
+	 *
+	 * @param record a MabRecord
+	 * @param writer the record is written to
+	 */
+	public void write(MabRecord record, Writer writer) {
+		ST st = group.getInstanceOf(TEMPLATE_NAME);
+		addFields(st, record);
+		addPersons(st, record);
+		try {
+			st.write(new AutoIndentWriter(writer));
+		} catch (IOException e) {
+			throw new MabException("Couldn't render record.", e);
+		}
+	}
+
+	private static void addFields(ST st, MabRecord record) {
 		st.add("record", record);
 	}
 
-	private void addPersons(MabRecord record) {
+	private static void addPersons(ST st, MabRecord record) {
 		Iterator<Person> persons = record.personen.values().iterator();
 		int cP = 1;
 		int cC = 1;
 		while (persons.hasNext()) {
 			Person p = persons.next();
 			if (PersonType.natuerlichePerson.equals(p.type)) {
-				st.add("person" + cP, p);
+				if (cP <= MAX_PERSONS)
+					st.add("person" + cP, p);
 				cP++;
 			} else {
-				st.add("corporateBody" + cC, p);
+				if (cC <= MAX_PERSONS)
+					st.add("corporateBody" + cC, p);
 				cC++;
 			}
 		}
 	}
 
-	private ByteArrayOutputStream render() {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		try (PrintWriter writer = new PrintWriter(out)) {
-			writer.append(st.render());
-			return out;
+	private static String formalArguments() {
+		StringBuilder args = new StringBuilder("record");
+		for (int i = 1; i <= MAX_PERSONS; i++) {
+			args.append(",person" + i + ",corporateBody" + i);
 		}
+		return args.toString();
 	}
 
 }
@@ -18,6 +18,7 @@ package converter.mab;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -50,17 +51,29 @@ public class RegalToMabMapper {
 	 * @return a mab record
 	 */
 	public MabRecord map(InputStream in, String topic) {
+		Graph graph = RdfUtils.readRdfToGraph(in, RDFFormat.NTRIPLES, "");
+		return map(graph, topic);
+	}
+
+	/**
+	 * Values are not escaped. This is up to the template or view the record is
+	 * rendered with.
+	 *
+	 * @param statements parsed rdf, e.g. {@link models.Node#getMetadataStatements()}
+	 * @param topic the id of a resource
+	 * @return a mab record
+	 */
+	public MabRecord map(Collection<Statement> statements, String topic) {
 		record = new MabRecord();
 		types = new HashMap<String, List<String>>();
 		this.topic = topic;
-		mapStatements(in);
+		mapStatements(statements);
 		analyseTypes();
 		return record;
 	}
 
-	private void mapStatements(InputStream in) {
-		Graph graph = RdfUtils.readRdfToGraph(in, RDFFormat.NTRIPLES, "");
-		Iterator<Statement> it = graph.iterator();
+	private void mapStatements(Collection<Statement> statements) {
+		Iterator<Statement> it = statements.iterator();
 		while (it.hasNext()) {
 			Statement st = it.next();
 			mapStatement(st);
@@ -70,8 +83,7 @@ public class RegalToMabMapper {
 	private void mapStatement(Statement st) {
 
 		String pred = st.getPredicate().stringValue();
-		String obj = org.apache.commons.lang3.StringEscapeUtils
-				.escapeXml(st.getObject().stringValue());
+		String obj = st.getObject().stringValue();
 		String subj = st.getSubject().stringValue();
 
 		handleFreeFields(subj, pred, obj);
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of concurrent bulk calls per backend, e.g. Fedora and
+ * elasticsearch. Every backend has its own limit that follows an AIMD rule:
+ * it grows by one per limit successful calls and is halved if a call fails or
+ * takes more than twice the best latency seen for that backend. The limit
+ * never exceeds the share of the budget that is not reserved for interactive
+ * requests.
+ *
+ * Only threads that run bulk work, see {@link #runAs(int, Callable)}, are
+ * throttled. Calls of other threads pass through. Waiting calls with a higher
+ * priority are served first, and a waiting call gains one priority level per
+ * five seconds of waiting, so low priority work is never starved.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class AdaptiveThrottle {
+
+	/**
+	 * Priority of bulk work that has not been given one
+	 */
+	public static final int DEFAULT_PRIORITY = 5;
+
+	private static final double TOLERANCE = 2.0;
+
+	private static final double SMOOTHING = 0.2;
+
+	private static final long DECREASE_PAUSE_MILLIS = 1000;
+
+	private static final long AGING_MILLIS = 5000;
+
+	private static final ThreadLocal<Integer> bulkPriority =
+			new ThreadLocal<Integer>();
+
+	private static final ThreadLocal<String> currentBackend =
+			new ThreadLocal<String>();
+
+	private final int maxLimit;
+	private final Map<String, Backend> backends = new HashMap<String, Backend>();
+
+	/**
+	 * @param budget the number of concurrent calls each backend can take
+	 * @param interactiveShare share of the budget kept free for interactive
+	 *          requests, between 0 and 1
+	 */
+	public AdaptiveThrottle(int budget, double interactiveShare) {
+		this.maxLimit =
+				Math.max(1, (int) Math.floor(budget * (1.0 - interactiveShare)));
+	}
+
+	/**
+	 * Runs bulk work on the current thread. Backend calls made by the work are
+	 * throttled with the given priority.
+	 *
+	 * @param priority higher values are served first
+	 * @param work the bulk work
+	 * @return the result of the work
+	 * @throws Exception if the work fails
+	 */
+	public static <T> T runAs(int priority, Callable<T> work) throws Exception {
+		Integer old = bulkPriority.get();
+		bulkPriority.set(priority);
+		try {
+			return work.call();
+		} finally {
+			if (old == null) {
+				bulkPriority.remove();
+			} else {
+				bulkPriority.set(old);
+			}
+		}
+	}
+
+	/**
+	 * Makes a backend call. Within bulk work the call waits for a slot of the
+	 * backend. Calls nested in another throttled call are not throttled again.
+	 *
+	 * @param backend name of the called backend, e.g. "fedora"
+	 * @param items number of items processed by the call
+	 * @param call the call
+	 * @return the result of the call
+	 */
+	public <T> T call(String backend, int items, Supplier<T> call) {
+		Integer priority = bulkPriority.get();
+		if (priority == null || currentBackend.get() != null)
+			return call.get();
+		try {
+			acquire(backend, priority);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HttpArchiveException(500, e);
+		}
+		currentBackend.set(backend);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = call.get();
+			failed = false;
+			return result;
+		} catch (HttpArchiveException e) {
+			// a missing object or a bad request says nothing about the load
+			failed = e.getCode() >= 500;
+			throw e;
+		} finally {
+			currentBackend.remove();
+			double millis = (System.nanoTime() - start) / 1000000.0;
+			release(backend, millis / Math.max(1, items), failed);
+		}
+	}
+
+	/**
+	 * Like {@link #call(String, int, Supplier)} for calls without a result
+	 *
+	 * @param backend name of the called backend
+	 * @param call the call
+	 */
+	public void run(String backend, Runnable call) {
+		call(backend, 1, () -> {
+			call.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Blocks until the backend has a free slot and no waiting call has a higher
+	 * priority.
+	 *
+	 * @param backend name of the called backend
+	 * @param priority higher values are served first
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized void acquire(String backend, int priority)
+			throws InterruptedException {
+		Backend b = backend(backend);
+		Waiter w = new Waiter(priority, System.currentTimeMillis());
+		b.waiting.add(w);
+		try {
+			while (b.inFlight >= (int) b.limit || b.next() != w) {
+				// wakes up from time to time, aging can change the order
+				wait(AGING_MILLIS);
+			}
+			b.inFlight++;
+		} finally {
+			b.waiting.remove(w);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Frees the slot and adapts the limit of the backend to the outcome of the
+	 * call
+	 *
+	 * @param backend name of the called backend
+	 * @param millisPerItem duration of the call divided by the number of
+	 *          processed items
+	 * @param failed true if the call failed
+	 */
+	public synchronized void release(String backend, double millisPerItem,
+			boolean failed) {
+		Backend b = backend(backend);
+		b.inFlight--;
+		if (failed || b.isSlow(millisPerItem)) {
+			long now = System.currentTimeMillis();
+			// one decrease per congestion event, not one per concurrent call
+			if (now - b.lastDecrease > DECREASE_PAUSE_MILLIS) {
+				b.limit = Math.max(1.0, b.limit / 2);
+				b.lastDecrease = now;
+				b.decreases++;
+			}
+		} else if (b.limit < maxLimit) {
+			b.limit = Math.min(maxLimit, b.limit + 1.0 / b.limit);
+			b.increases++;
+		}
+		notifyAll();
+	}
+
+	private Backend backend(String name) {
+		Backend b = backends.get(name);
+		if (b == null) {
+			b = new Backend(maxLimit);
+			backends.put(name, b);
+		}
+		return b;
+	}
+
+	/**
+	 * @return a map with the limit, the calls and the latencies per backend
+	 */
+	public synchronized Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("maxLimit", maxLimit);
+		Map<String, Object> status = new HashMap<String, Object>();
+		for (Map.Entry<String, Backend> e : backends.entrySet()) {
+			Backend b = e.getValue();
+			Map<String, Object> s = new HashMap<String, Object>();
+			s.put("limit", (int) b.limit);
+			s.put("inFlight", b.inFlight);
+			s.put("waiting", b.waiting.size());
+			s.put("increases", b.increases);
+			s.put("decreases", b.decreases);
+			s.put("bestMillisPerItem", b.best);
+			s.put("avgMillisPerItem", b.avg);
+			status.put(e.getKey(), s);
+		}
+		result.put("backends", status);
+		return result;
+	}
+
+	private static class Waiter {
+		final int priority;
+		final long since;
+
+		Waiter(int priority, long since) {
+			this.priority = priority;
+			this.since = since;
+		}
+
+		double effectivePriority(long now) {
+			return priority + (now - since) / (double) AGING_MILLIS;
+		}
+	}
+
+	private static class Backend {
+		double limit;
+		int inFlight = 0;
+		long lastDecrease = 0;
+		long increases = 0;
+		long decreases = 0;
+		double best = -1;
+		double avg = -1;
+		final List<Waiter> waiting = new ArrayList<Waiter>();
+
+		Backend(int limit) {
+			this.limit = limit;
+		}
+
+		/**
+		 * @return the waiting call that is served next
+		 */
+		Waiter next() {
+			long now = System.currentTimeMillis();
+			Waiter next = null;
+			for (Waiter w : waiting) {
+				if (next == null
+						|| w.effectivePriority(now) > next.effectivePriority(now))
+					next = w;
+			}
+			return next;
+		}
+
+		boolean isSlow(double millisPerItem) {
+			if (best < 0) {
+				best = millisPerItem;
+				avg = millisPerItem;
+				return false;
+			}
+			avg = (1 - SMOOTHING) * avg + SMOOTHING * millisPerItem;
+			// the best latency ages slowly, so a lasting change of the backend is
+			// accepted as new normal
+			best = Math.min(best * 1.01, avg);
+			return avg > TOLERANCE * Math.max(best, 1.0);
+		}
+	}
+}
@@ -16,18 +16,38 @@
  */
 package helper;
 
-import java.io.InputStream;
-import java.net.URL;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
+import actions.Read;
+import actions.Transform;
 import models.Node;
-import converter.mab.MabConverter;
+import converter.mab.Mabencoder;
 
 /**
+ * Exports objects as mabxml. The records are mapped from the parsed metadata
+ * of the nodes and rendered with the compiled template of
+ * {@link Mabencoder#getDefault()}, no http roundtrip to the api is needed.
+ *
  * @author Jan Schnasse schnasse@hbz-nrw.de
  * 
  */
 public class AlephMabMaker {
 
+	/**
+	 * Root element of a batch export
+	 */
+	public static final String COLLECTION_START =
+			"<collection xmlns=\"http://www.ddb.de/professionell/mabxml/mabxml-1.xsd\">\n";
+	/**
+	 * End of a batch export
+	 */
+	public static final String COLLECTION_END = "</collection>\n";
+
 	@SuppressWarnings({ "javadoc", "serial" })
 	public class AlephException extends RuntimeException {
 
@@ -41,24 +61,74 @@ public class AlephMabMaker {
 
 	}
 
+	private static final int STEP_SIZE = 100;
+
+	private final Transform transform = new Transform();
+	private final Mabencoder encoder = Mabencoder.getDefault();
+
 	/**
 	 * @param node the node to create a mab xml entry for
-	 * @param uriPrefix server host
 	 * @return a string containing mab xml for the obeject
 	 */
-	public String aleph(Node node, String uriPrefix) {
-		try {
-			String pid = node.getPid();
-			String metadata = uriPrefix + "/resource/" + pid + "/metadata";
-			try (InputStream input =
-					new URL(metadata).openConnection().getInputStream()) {
-				MabConverter converter = new MabConverter(node.getPid());
-				return new String(converter.convert(input).toByteArray(), "utf-8");
-			}
+	public String aleph(Node node) {
+		StringWriter out = new StringWriter();
+		aleph(node, out);
+		return out.toString();
+	}
 
+	/**
+	 * @param node the node to create a mab xml entry for
+	 * @param out the mab xml is written to
+	 */
+	public void aleph(Node node, Writer out) {
+		try {
+			out.write(Mabencoder.XML_DECLARATION);
+			encoder.write(transform.aleph(node), out);
 		} catch (Exception e) {
 			throw new AlephException("Conversion Problem!", e);
 		}
 	}
 
+	/**
+	 * Writes the records of all objects into one collection. Objects are read
+	 * in chunks, deleted objects are skipped and objects that can't be
+	 * converted are logged and skipped.
+	 *
+	 * @param pids the pids of the objects to export
+	 * @param out the mab xml is written to
+	 * @return number of exported records
+	 */
+	public int aleph(Iterator<String> pids, Writer out) {
+		Read read = new Read();
+		int count = 0;
+		try {
+			out.write(Mabencoder.XML_DECLARATION);
+			out.write(COLLECTION_START);
+			while (pids.hasNext()) {
+				List<String> chunk = new ArrayList<String>();
+				while (pids.hasNext() && chunk.size() < STEP_SIZE) {
+					chunk.add(pids.next());
+				}
+				List<Node> nodes = read.getNodes(chunk, (pid, e) -> play.Logger
+						.warn("Cannot export " + pid + ": " + e.getMessage()));
+				for (Node node : nodes) {
+					if ("D".equals(node.getState()))
+						continue;
+					try {
+						encoder.write(transform.aleph(node), out);
+						out.write("\n");
+						count++;
+					} catch (Exception e) {
+						play.Logger.warn(
+								"Cannot export " + node.getPid() + ": " + e.getMessage());
+					}
+				}
+			}
+			out.write(COLLECTION_END);
+			return count;
+		} catch (IOException e) {
+			throw new AlephException("Export Problem!", e);
+		}
+	}
+
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import play.mvc.Results.Chunks;
+
+/**
+ * A Writer that passes its content to a chunked http response. Content is
+ * buffered up to a chunk size, so only one chunk is held in memory. Once the
+ * client has disconnected, every write fails, so the producer stops early.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class ChunkWriter extends Writer {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private final Chunks.Out<String> out;
+	private final StringBuilder buffer = new StringBuilder(CHUNK_SIZE);
+	private volatile boolean disconnected = false;
+
+	/**
+	 * Thrown by writes after the client has disconnected
+	 */
+	public static class DisconnectedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		DisconnectedException() {
+			super("Client disconnected");
+		}
+	}
+
+	/**
+	 * @param out the chunked response. It is not closed by this writer.
+	 */
+	public ChunkWriter(Chunks.Out<String> out) {
+		this.out = out;
+		out.onDisconnected(() -> disconnected = true);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if (disconnected)
+			throw new DisconnectedException();
+		buffer.append(cbuf, off, len);
+		if (buffer.length() >= CHUNK_SIZE)
+			flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (disconnected)
+			throw new DisconnectedException();
+		if (buffer.length() == 0)
+			return;
+		out.write(buffer.toString());
+		buffer.setLength(0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import models.Globals;
+import play.mvc.Results.Chunks;
+import play.mvc.Results.StringChunks;
+
+/**
+ * Writes chunked responses on a shared, bounded pool of
+ * {@link Globals#streamParallelism} threads. At most
+ * {@link Globals#streamQueueSize} further streams wait for a thread. Callers
+ * check {@link #isBusy()} and answer 503 instead of starting a stream that
+ * would be rejected.
+ *
+ * The status line has been sent when a stream starts, so a failing stream
+ * cannot change it. Instead the response ends with {@link #ERROR_MARKER} and
+ * the message. The marker is not valid XML, JSON or RDF, so a client never
+ * takes a cut off response for a complete one.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class ChunkedStream {
+
+	/**
+	 * Ends a response that has been cut off by an error
+	 */
+	public static final String ERROR_MARKER = "\n!!! STREAM ABORTED: ";
+
+	private static final ThreadPoolExecutor writers = new ThreadPoolExecutor(
+			Globals.streamParallelism, Globals.streamParallelism, 60,
+			TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(Math.max(1, Globals.streamQueueSize)),
+			r -> {
+				Thread t = new Thread(r, "chunked-stream");
+				t.setDaemon(true);
+				return t;
+			});
+
+	static {
+		writers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Writes the content of a response
+	 */
+	public interface Producer {
+		/**
+		 * @param out the response
+		 * @throws Exception if the content cannot be written
+		 */
+		void write(Writer out) throws Exception;
+	}
+
+	/**
+	 * @return true if all threads are busy and the queue is full
+	 */
+	public static boolean isBusy() {
+		return writers.getQueue().remainingCapacity() == 0;
+	}
+
+	/**
+	 * @param name names the stream in log messages
+	 * @param producer writes the content
+	 * @return chunks that are written by the producer on the shared pool
+	 */
+	public static Chunks<String> of(String name, Producer producer) {
+		return new StringChunks() {
+			public void onReady(Chunks.Out<String> out) {
+				try {
+					writers.execute(() -> write(name, producer, out));
+				} catch (RejectedExecutionException e) {
+					play.Logger.warn("Reject stream " + name + ", all writers are busy");
+					out.write(ERROR_MARKER + "server busy\n");
+					out.close();
+				}
+			}
+		};
+	}
+
+	private static void write(String name, Producer producer,
+			Chunks.Out<String> out) {
+		ChunkWriter w = new ChunkWriter(out);
+		try {
+			producer.write(w);
+			w.flush();
+		} catch (ChunkWriter.DisconnectedException e) {
+			play.Logger.debug("Client left stream " + name);
+		} catch (Exception e) {
+			play.Logger.error("Stream " + name + " failed", e);
+			try {
+				w.flush();
+				out.write(ERROR_MARKER + e + "\n");
+			} catch (Exception ignore) {
+				// the client has left
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
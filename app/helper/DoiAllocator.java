@@ -52,7 +52,8 @@ public class DoiAllocator implements Runnable {
 		List<SearchHit> hits = new Read().list(Globals.namespaces[0], from, until);
 		List<String> ids = hits.stream().map((SearchHit s) -> s.getId())
 				.collect(Collectors.toList());
-		List<Node> nodes = new Read().getNodes(ids);
+		List<Node> nodes = new Read().getNodes(ids, (pid, e) -> play.Logger
+				.warn("DoiAllocator cannot read " + pid + ": " + e.getMessage()));
 		nodes.stream().forEach(n -> n.setLastModifiedBy("DoiAllocator"));
 		play.Logger.info(new Modify().addDoiToAll(nodes, until));
 	}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import actions.Read;
+import actions.Transform;
+import archive.search.IndexJournal;
+import models.Globals;
+import models.Node;
+import play.Logger;
+
+/**
+ * Extracts the text of pdf data in the background and publishes it to the
+ * fulltext index when it is done, so indexing doesn't wait for pdfbox. A
+ * fixed number of workers takes pids from a bounded queue. Pids that don't
+ * fit into the queue are skipped and indexed with their next reindex.
+ *
+ * A pid is queued once. Submitting it again while it waits keeps only the
+ * newest node. The worker doesn't trust the queued node: it reads the object
+ * again before extraction and once more before it publishes. Nothing is
+ * published if the object is no longer public, has been deleted or got new
+ * data in the meantime. The last check and the index write run under a lock
+ * per pid that {@link actions.Index} also takes for removals from the fulltext index,
+ * so a removal is never overtaken by a late publish.
+ *
+ * Data is spooled to a temporary file and parsed with a scratch file by
+ * {@link PdfText#toString(File, int, long)}, which limits pages and time of
+ * each document.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class FulltextQueue {
+
+	private static final Logger.ALogger fulltextLogger = Logger.of("fulltext");
+
+	private static final int LOCKS = 64;
+
+	/**
+	 * Reads, extracts and publishes for the queue
+	 */
+	public interface Publisher {
+		/**
+		 * @param pid a pid
+		 * @return the object as currently stored, null if it doesn't exist
+		 */
+		Node read(String pid);
+
+		/**
+		 * @param node a node with pdf data
+		 * @return the document for the fulltext index
+		 */
+		String source(Node node);
+
+		/**
+		 * @param node a node with pdf data
+		 * @param source the document for the fulltext index
+		 */
+		void index(Node node, String source);
+	}
+
+	/**
+	 * Text of an extraction
+	 */
+	public static class Extraction {
+		/**
+		 * the extracted text
+		 */
+		public final String text;
+		/**
+		 * true if the extracted data has the expected checksum, so the text
+		 * may be stored under it
+		 */
+		public final boolean verified;
+
+		Extraction(String text, boolean verified) {
+			this.text = text;
+			this.verified = verified;
+		}
+	}
+
+	private final ThreadPoolExecutor workers;
+	private final Publisher publisher;
+	private final int maxPages;
+	private final long timeoutMillis;
+	private final Map<String, Node> latest = new ConcurrentHashMap<String, Node>();
+	private final Object[] locks = new Object[LOCKS];
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param workers number of documents extracted at the same time
+	 * @param queueSize number of documents waiting for extraction at most
+	 * @param maxPages pages beyond are not extracted
+	 * @param timeoutMillis time the extraction of a document may take
+	 */
+	public FulltextQueue(int workers, int queueSize, int maxPages,
+			long timeoutMillis) {
+		this(workers, queueSize, maxPages, timeoutMillis, new IndexPublisher());
+	}
+
+	/**
+	 * @param workers number of documents extracted at the same time
+	 * @param queueSize number of documents waiting for extraction at most
+	 * @param maxPages pages beyond are not extracted
+	 * @param timeoutMillis time the extraction of a document may take
+	 * @param publisher reads, extracts and publishes the queued objects
+	 */
+	public FulltextQueue(int workers, int queueSize, int maxPages,
+			long timeoutMillis, Publisher publisher) {
+		this.workers = new ThreadPoolExecutor(workers, workers, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+				r -> {
+					Thread t = new Thread(r, "fulltext-worker");
+					t.setDaemon(true);
+					return t;
+				});
+		this.publisher = publisher;
+		this.maxPages = maxPages;
+		this.timeoutMillis = timeoutMillis;
+		for (int i = 0; i < LOCKS; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * @param node a node
+	 * @return true if the node belongs into the fulltext index
+	 */
+	public static boolean isIndexable(Node node) {
+		return node != null && !"D".equals(node.getState())
+				&& "public".equals(node.getAccessScheme())
+				&& "file".equals(node.getContentType())
+				&& "application/pdf".equals(node.getMimeType());
+	}
+
+	/**
+	 * Queues the node for extraction. When the text is extracted, the node is
+	 * written to the fulltext index of its namespace. If the pid is queued
+	 * already, the node replaces the queued one.
+	 *
+	 * @param node a node with pdf data
+	 * @return false if the queue is full
+	 */
+	public boolean submit(Node node) {
+		String pid = node.getPid();
+		if (latest.put(pid, node) != null)
+			return true;
+		try {
+			workers.execute(() -> process(pid));
+			return true;
+		} catch (RejectedExecutionException e) {
+			latest.remove(pid);
+			rejected.incrementAndGet();
+			fulltextLogger.warn("Fulltext queue is full. Skip " + pid);
+			return false;
+		}
+	}
+
+	/**
+	 * Runs the action while no fulltext of the pid is published
+	 *
+	 * @param pid a pid
+	 * @param action e.g. a removal from the fulltext index
+	 * @return the result of the action
+	 */
+	public <T> T withLock(String pid, Supplier<T> action) {
+		synchronized (lockFor(pid)) {
+			return action.get();
+		}
+	}
+
+	/**
+	 * Extracts the text on the calling thread with the limits of this queue
+	 *
+	 * @param pdf pdf data. The stream is read to the end but not closed.
+	 * @param checksum the checksum the data is expected to have, may be null
+	 * @return the plain text of the pdf and whether the data had the checksum
+	 */
+	public Extraction extract(InputStream pdf, String checksum) {
+		File spool = null;
+		try {
+			String algorithm = FulltextStore.algorithm(checksum);
+			MessageDigest digest =
+					MessageDigest.getInstance(algorithm == null ? "MD5" : algorithm);
+			spool = File.createTempFile("fulltext", ".pdf");
+			Files.copy(new DigestInputStream(pdf, digest), spool.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			boolean verified = algorithm != null
+					&& checksum.equalsIgnoreCase(toHex(digest.digest()));
+			String text =
+					new PdfText().toString(spool, maxPages, timeoutMillis);
+			return new Extraction(text, verified);
+		} catch (IOException | NoSuchAlgorithmException e) {
+			throw new HttpArchiveException(500, e);
+		} finally {
+			if (spool != null)
+				spool.delete();
+		}
+	}
+
+	/**
+	 * @return a map with queue length and counters
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("queued", workers.getQueue().size());
+		result.put("running", workers.getActiveCount());
+		result.put("published", published.get());
+		result.put("skipped", skipped.get());
+		result.put("failed", failed.get());
+		result.put("rejected", rejected.get());
+		return result;
+	}
+
+	/**
+	 * Stops the workers. Queued documents are dropped.
+	 */
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+
+	private void process(String pid) {
+		Node queued = latest.remove(pid);
+		try {
+			Node node = publisher.read(pid);
+			if (!isIndexable(node)) {
+				skip(pid, queued);
+				return;
+			}
+			String source = publisher.source(node);
+			synchronized (lockFor(pid)) {
+				Node current = publisher.read(pid);
+				if (!isIndexable(current)
+						|| !Objects.equals(current.getChecksum(), node.getChecksum())) {
+					skip(pid, queued);
+					return;
+				}
+				publisher.index(current, source);
+			}
+			published.incrementAndGet();
+		} catch (Exception e) {
+			failed.incrementAndGet();
+			fulltextLogger
+					.warn("Fulltext of " + pid + " not indexed: " + e.getMessage());
+		}
+	}
+
+	private void skip(String pid, Node queued) {
+		skipped.incrementAndGet();
+		fulltextLogger.debug("Skip fulltext of " + pid + ", queued as "
+				+ (queued == null ? null : queued.getAccessScheme())
+				+ ", changed or removed since.");
+	}
+
+	private Object lockFor(String pid) {
+		return locks[(pid.hashCode() & 0x7fffffff) % LOCKS];
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private static class IndexPublisher implements Publisher {
+
+		@Override
+		public Node read(String pid) {
+			try {
+				return new Read().reloadNode(pid);
+			} catch (Exception e) {
+				return null;
+			}
+		}
+
+		@Override
+		public String source(Node node) {
+			return new Transform().pdfboxSource(node);
+		}
+
+		@Override
+		public void index(Node node, String source) {
+			String pid = node.getPid();
+			String namespace = node.getNamespace();
+			String type = node.getContentType();
+			try {
+				Globals.search.index(Globals.PDFBOX_OCR_INDEX_PREF + namespace, type,
+						pid, source);
+				fulltextLogger.debug(
+						pid + " indexed in " + Globals.PDFBOX_OCR_INDEX_PREF + namespace);
+			} catch (Exception e) {
+				IndexJournal.Entry entry = Globals.indexJournal
+						.append(IndexJournal.INDEX, pid, namespace, type);
+				entry.fail();
+				Globals.indexJournal.commit(entry);
+				throw e;
+			}
+		}
+	}
+}
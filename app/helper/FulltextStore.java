@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps text extracted from data streams gzipped on disk. Texts are stored
+ * under the checksum of the data they are extracted from, so they survive
+ * reindexing and are shared by objects with the same data. New data has a new
+ * checksum and is extracted again.
+ *
+ * Files are laid out as dir/bucket/checksum.txt.gz.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class FulltextStore {
+
+	private final File dir;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+
+	/**
+	 * @param dir the directory of the store
+	 */
+	public FulltextStore(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * @param checksum a checksum as provided by fedora
+	 * @return true if the checksum can be used as key. Fedora answers "none"
+	 *         if checksums are disabled.
+	 */
+	public static boolean isKey(String checksum) {
+		return algorithm(checksum) != null;
+	}
+
+	/**
+	 * @param checksum a hex checksum
+	 * @return the name of the digest the checksum has been made with, guessed
+	 *         from its length, or null if it isn't a known checksum
+	 */
+	public static String algorithm(String checksum) {
+		if (checksum == null || !checksum.matches("[0-9a-fA-F]+"))
+			return null;
+		switch (checksum.length()) {
+		case 32:
+			return "MD5";
+		case 40:
+			return "SHA-1";
+		case 64:
+			return "SHA-256";
+		case 128:
+			return "SHA-512";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @param checksum the checksum of the data
+	 * @return true if a text is stored for the checksum
+	 */
+	public boolean contains(String checksum) {
+		return isKey(checksum) && getFile(checksum).exists();
+	}
+
+	/**
+	 * @param checksum the checksum of the data
+	 * @return the extracted text or null if it is not stored
+	 */
+	public String get(String checksum) {
+		if (!isKey(checksum))
+			return null;
+		try {
+			String text = RepresentationStore
+					.gunzip(Files.readAllBytes(getFile(checksum).toPath()));
+			hits.incrementAndGet();
+			return text;
+		} catch (IOException e) {
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * @param checksum the checksum of the data
+	 * @param text the extracted text
+	 */
+	public void put(String checksum, String text) {
+		if (!isKey(checksum))
+			return;
+		File file = getFile(checksum);
+		try {
+			File bucket = file.getParentFile();
+			bucket.mkdirs();
+			File tmp = File.createTempFile("fulltext", ".tmp", bucket);
+			Files.write(tmp.toPath(), RepresentationStore.gzip(text));
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			writes.incrementAndGet();
+		} catch (IOException e) {
+			play.Logger.warn("Fulltext " + file + " not writable!", e);
+		}
+	}
+
+	/**
+	 * @return a map with hits, misses and writes
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("hits", hits.get());
+		result.put("misses", misses.get());
+		result.put("writes", writes.get());
+		result.put("dir", dir.getAbsolutePath());
+		return result;
+	}
+
+	private File getFile(String checksum) {
+		String key = checksum.toLowerCase();
+		return new File(new File(dir, key.substring(0, 2)), key + ".txt.gz");
+	}
+}
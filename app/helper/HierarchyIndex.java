@@ -0,0 +1,560 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import models.Node;
+import archive.fedora.FedoraVocabulary;
+
+/**
+ * Keeps the object hierarchy in memory. Pids are encoded to int ids, parents
+ * and children are stored in int arrays. Every node carries aggregates of its
+ * subtree: the newest timestamp and the node that has it, the number of
+ * descendants and the number of descendants per contentType. The aggregates
+ * are updated along the path to the root whenever a node is put or removed.
+ *
+ * A subtree is complete if all its nodes have been put. Callers load a
+ * subtree once and mark it complete; afterwards it is kept up to date by
+ * {@link #put(Node)} and {@link #remove(String)}. Modifications call
+ * {@link #invalidate(String)}, so the subtrees that contain the modified
+ * node are loaded again on their next read. A complete subtree also expires
+ * after maxAge, which catches changes made to Fedora outside this
+ * application.
+ *
+ * The index holds at most maxNodes pids. If it is full, the trees whose
+ * roots have not been used for the longest time are dropped and their ids
+ * are reused. Trees that are being loaded are pinned and never dropped, so
+ * a load can mark its tree complete.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class HierarchyIndex {
+
+	private static final int NONE = -1;
+
+	private final int maxNodes;
+	private final long maxAgeMillis;
+	private long evicted = 0;
+	private final Deque<Integer> free = new ArrayDeque<Integer>();
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private final Map<String, Integer> typeIds = new HashMap<String, Integer>();
+	private final Map<String, Integer> pinned = new HashMap<String, Integer>();
+	private final List<String> types = new ArrayList<String>();
+
+	private int size = 0;
+	private String[] pids = new String[1024];
+	private boolean[] present = new boolean[1024];
+	private boolean[] complete = new boolean[1024];
+	private int[] parent = new int[1024];
+	private int[][] children = new int[1024][];
+	private int[] childCount = new int[1024];
+	private int[] type = new int[1024];
+	private long[] timestamp = new long[1024];
+	private long[] subtreeMax = new long[1024];
+	private int[] subtreeArgMax = new int[1024];
+	private int[] descendants = new int[1024];
+	private int[][] typeCounts = new int[1024][];
+	private long[] loadedAt = new long[1024];
+	private long[] used = new long[1024];
+
+	/**
+	 * @param maxNodes maximum number of pids kept, 0 for no limit
+	 * @param maxAgeMillis time after which a complete subtree is loaded again,
+	 *          0 for no limit
+	 */
+	public HierarchyIndex(int maxNodes, long maxAgeMillis) {
+		this.maxNodes = maxNodes;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * An index without limits
+	 */
+	public HierarchyIndex() {
+		this(0, 0);
+	}
+
+	/**
+	 * Adds or updates a node. If its parent has changed, the node and its
+	 * subtree are moved.
+	 *
+	 * @param node the node
+	 */
+	public void put(Node node) {
+		if ("D".equals(node.getState())) {
+			remove(node.getPid());
+			return;
+		}
+		Date ts = node.getObjectTimestamp();
+		if (ts == null)
+			ts = node.getLastModified();
+		put(node.getPid(), node.getParentPid(), node.getContentType(),
+				ts == null ? 0 : ts.getTime(),
+				node.getRelatives(FedoraVocabulary.HAS_PART).isEmpty());
+	}
+
+	/**
+	 * @param pid the pid of the node
+	 * @param parentPid the pid of its parent, null or empty for a root
+	 * @param contentType the contentType
+	 * @param time the time of the last modification in milliseconds
+	 * @param leaf true if the node has no parts
+	 */
+	public synchronized void put(String pid, String parentPid,
+			String contentType, long time, boolean leaf) {
+		// room for the node and its parent
+		if (maxNodes > 0 && ids.size() + 2 > maxNodes)
+			evict();
+		int id = id(pid);
+		if (!present[id]) {
+			present[id] = true;
+			// a node without parts is complete by itself
+			complete[id] = leaf && childCount[id] == 0;
+			loadedAt[id] = System.currentTimeMillis();
+		}
+		int t = typeId(contentType);
+		if (type[id] != t) {
+			for (int a = parent[id]; a != NONE; a = parent[a]) {
+				count(a, type[id], -1);
+				count(a, t, 1);
+			}
+			type[id] = t;
+		}
+		timestamp[id] = time;
+		int p = parentPid == null || parentPid.isEmpty() ? NONE : id(parentPid);
+		if (p != parent[id]) {
+			detach(id);
+			attach(id, p);
+		}
+		refreshMax(id);
+	}
+
+	/**
+	 * Removes a node. Its children are kept as roots of their own.
+	 *
+	 * @param pid the pid of the node
+	 */
+	public synchronized void remove(String pid) {
+		Integer id = ids.get(pid);
+		if (id == null)
+			return;
+		detach(id);
+		for (int i = 0; i < childCount[id]; i++) {
+			parent[children[id][i]] = NONE;
+		}
+		childCount[id] = 0;
+		release(id);
+	}
+
+	/**
+	 * @param pid the pid of a node
+	 * @return true if the whole subtree of the node is known
+	 */
+	public synchronized boolean isComplete(String pid) {
+		Integer id = ids.get(pid);
+		if (id == null || !present[id] || !complete[id])
+			return false;
+		long now = System.currentTimeMillis();
+		if (maxAgeMillis > 0 && now - loadedAt[id] > maxAgeMillis)
+			return false;
+		touch(id, now);
+		return true;
+	}
+
+	/**
+	 * Marks the node and its ancestors as incomplete. The next caller that
+	 * needs one of their subtrees loads it again.
+	 *
+	 * @param pid the pid of a node that has been modified
+	 */
+	public synchronized void invalidate(String pid) {
+		Integer id = ids.get(pid);
+		if (id == null)
+			return;
+		for (int a = id; a != NONE; a = parent[a]) {
+			complete[a] = false;
+		}
+	}
+
+	/**
+	 * Keeps the tree that contains the node from being dropped until
+	 * {@link #unpin(String)} is called. Pin the root of a subtree before its
+	 * nodes are put and unpin it after {@link #markComplete(String)}.
+	 *
+	 * @param pid the pid of the root of a subtree that is being loaded
+	 */
+	public synchronized void pin(String pid) {
+		pinned.merge(pid, 1, Integer::sum);
+	}
+
+	/**
+	 * @param pid a pid passed to {@link #pin(String)} before
+	 */
+	public synchronized void unpin(String pid) {
+		pinned.computeIfPresent(pid, (k, count) -> count > 1 ? count - 1 : null);
+	}
+
+	/**
+	 * Marks the known subtree of the node as complete. Call this after all
+	 * nodes of the subtree have been put.
+	 *
+	 * @param pid the pid of the root of the subtree
+	 */
+	public synchronized void markComplete(String pid) {
+		Integer id = ids.get(pid);
+		if (id == null)
+			return;
+		long now = System.currentTimeMillis();
+		touch(id, now);
+		int[] stack = new int[descendants[id] + 1];
+		int top = 0;
+		stack[top++] = id;
+		while (top > 0) {
+			int n = stack[--top];
+			complete[n] = true;
+			loadedAt[n] = now;
+			for (int i = 0; i < childCount[n]; i++) {
+				stack[top++] = children[n][i];
+			}
+		}
+	}
+
+	/**
+	 * @param pid the pid of the root of a subtree
+	 * @return the pid of the node with the newest timestamp in the subtree.
+	 *         Descendants win over their ancestors on equal timestamps.
+	 */
+	public synchronized String getLastModified(String pid) {
+		Integer id = ids.get(pid);
+		if (id == null)
+			return pid;
+		return pids[subtreeArgMax[id]];
+	}
+
+	/**
+	 * @param pid the pid of the root of a subtree
+	 * @param contentType only nodes of this type are considered
+	 * @return the pid of the newest node of the type in the subtree or null if
+	 *         there is none
+	 */
+	public synchronized String getLastModified(String pid, String contentType) {
+		Integer id = ids.get(pid);
+		Integer t = typeIds.get(contentType);
+		if (id == null || t == null)
+			return null;
+		int best = NONE;
+		int[] stack = new int[descendants[id] + 1];
+		int top = 0;
+		stack[top++] = id;
+		while (top > 0) {
+			int n = stack[--top];
+			if (type[n] == t && (best == NONE || timestamp[n] > timestamp[best]))
+				best = n;
+			for (int i = 0; i < childCount[n]; i++) {
+				stack[top++] = children[n][i];
+			}
+		}
+		return best == NONE ? null : pids[best];
+	}
+
+	/**
+	 * @param pid the pid of the root of a subtree
+	 * @return the newest timestamp in the subtree in milliseconds, 0 if the
+	 *         node is not known
+	 */
+	public synchronized long getNewest(String pid) {
+		Integer id = ids.get(pid);
+		return id == null ? 0 : subtreeMax[id];
+	}
+
+	/**
+	 * @param pid the pid of a node
+	 * @return the number of descendants of the node
+	 */
+	public synchronized int countDescendants(String pid) {
+		Integer id = ids.get(pid);
+		return id == null ? 0 : descendants[id];
+	}
+
+	/**
+	 * @param pid the pid of a node
+	 * @return the number of descendants per contentType
+	 */
+	public synchronized Map<String, Integer> countDescendantsByType(
+			String pid) {
+		Map<String, Integer> result = new HashMap<String, Integer>();
+		Integer id = ids.get(pid);
+		if (id == null || typeCounts[id] == null)
+			return result;
+		for (int t = 0; t < typeCounts[id].length; t++) {
+			if (typeCounts[id][t] > 0)
+				result.put(types.get(t), typeCounts[id][t]);
+		}
+		return result;
+	}
+
+	/**
+	 * @param pid the pid of a node
+	 * @return the pids of the ancestors of the node, the parent first
+	 */
+	public synchronized List<String> getAncestors(String pid) {
+		List<String> result = new ArrayList<String>();
+		Integer id = ids.get(pid);
+		if (id == null)
+			return result;
+		for (int a = parent[id]; a != NONE; a = parent[a]) {
+			result.add(pids[a]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return a map with the size of the index
+	 */
+	public synchronized Map<String, Object> getStatus() {
+		int known = 0;
+		for (int i = 0; i < size; i++) {
+			if (present[i])
+				known++;
+		}
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("nodes", known);
+		result.put("ids", ids.size());
+		result.put("maxNodes", maxNodes);
+		result.put("maxAgeMillis", maxAgeMillis);
+		result.put("evicted", evicted);
+		result.put("contentTypes", new ArrayList<String>(types));
+		return result;
+	}
+
+	private void attach(int id, int p) {
+		if (p == NONE)
+			return;
+		for (int a = p; a != NONE; a = parent[a]) {
+			if (a == id) {
+				play.Logger.warn("Ignore cycle: " + pids[id] + " is an ancestor of "
+						+ pids[p]);
+				return;
+			}
+		}
+		if (children[p] == null)
+			children[p] = new int[4];
+		if (childCount[p] == children[p].length)
+			children[p] = Arrays.copyOf(children[p], childCount[p] * 2);
+		children[p][childCount[p]++] = id;
+		parent[id] = p;
+		for (int a = p; a != NONE; a = parent[a]) {
+			descendants[a] += 1 + descendants[id];
+			count(a, type[id], 1);
+			if (typeCounts[id] != null) {
+				for (int t = 0; t < typeCounts[id].length; t++) {
+					count(a, t, typeCounts[id][t]);
+				}
+			}
+			if (!complete[id])
+				complete[a] = false;
+		}
+		refreshMax(p);
+	}
+
+	private void detach(int id) {
+		int p = parent[id];
+		if (p == NONE)
+			return;
+		for (int i = 0; i < childCount[p]; i++) {
+			if (children[p][i] == id) {
+				children[p][i] = children[p][--childCount[p]];
+				break;
+			}
+		}
+		parent[id] = NONE;
+		for (int a = p; a != NONE; a = parent[a]) {
+			descendants[a] -= 1 + descendants[id];
+			count(a, type[id], -1);
+			if (typeCounts[id] != null) {
+				for (int t = 0; t < typeCounts[id].length; t++) {
+					count(a, t, -typeCounts[id][t]);
+				}
+			}
+		}
+		refreshMax(p);
+	}
+
+	/**
+	 * Recomputes the newest timestamp of the node's subtree and of its
+	 * ancestors as long as something changes.
+	 */
+	private void refreshMax(int id) {
+		for (int a = id; a != NONE; a = parent[a]) {
+			long max = timestamp[a];
+			int arg = a;
+			for (int i = 0; i < childCount[a]; i++) {
+				int c = children[a][i];
+				if (subtreeMax[c] >= max) {
+					max = subtreeMax[c];
+					arg = subtreeArgMax[c];
+				}
+			}
+			if (a != id && subtreeMax[a] == max && subtreeArgMax[a] == arg)
+				break;
+			subtreeMax[a] = max;
+			subtreeArgMax[a] = arg;
+		}
+	}
+
+	private void count(int id, int t, int delta) {
+		if (t == NONE || delta == 0)
+			return;
+		if (typeCounts[id] == null || typeCounts[id].length <= t)
+			typeCounts[id] = typeCounts[id] == null ? new int[types.size()]
+					: Arrays.copyOf(typeCounts[id], types.size());
+		typeCounts[id][t] += delta;
+	}
+
+	private int typeId(String contentType) {
+		if (contentType == null)
+			return NONE;
+		Integer t = typeIds.get(contentType);
+		if (t == null) {
+			t = types.size();
+			types.add(contentType);
+			typeIds.put(contentType, t);
+		}
+		return t;
+	}
+
+	private int id(String pid) {
+		Integer id = ids.get(pid);
+		if (id != null)
+			return id;
+		if (!free.isEmpty()) {
+			id = free.pop();
+		} else {
+			if (size == pids.length)
+				grow();
+			id = size++;
+		}
+		ids.put(pid, id);
+		pids[id] = pid;
+		parent[id] = NONE;
+		type[id] = NONE;
+		subtreeArgMax[id] = id;
+		used[id] = System.currentTimeMillis();
+		return id;
+	}
+
+	/**
+	 * Marks the tree of the node as used
+	 */
+	private void touch(int id, long now) {
+		used[rootOf(id)] = now;
+	}
+
+	private int rootOf(int id) {
+		int root = id;
+		while (parent[root] != NONE) {
+			root = parent[root];
+		}
+		return root;
+	}
+
+	/**
+	 * Drops the least recently used trees until a tenth of maxNodes is free.
+	 * Pinned trees are kept, even if the index stays full.
+	 */
+	private void evict() {
+		int target = maxNodes - Math.max(2, maxNodes / 10);
+		Set<Integer> keep = new HashSet<Integer>();
+		for (String pid : pinned.keySet()) {
+			Integer id = ids.get(pid);
+			if (id != null)
+				keep.add(rootOf(id));
+		}
+		List<Integer> roots = new ArrayList<Integer>();
+		for (int i = 0; i < size; i++) {
+			if (pids[i] != null && parent[i] == NONE && !keep.contains(i))
+				roots.add(i);
+		}
+		roots.sort((a, b) -> Long.compare(used[a], used[b]));
+		for (int root : roots) {
+			if (ids.size() <= target)
+				return;
+			int[] stack = new int[descendants[root] + 1];
+			int top = 0;
+			stack[top++] = root;
+			while (top > 0) {
+				int n = stack[--top];
+				for (int i = 0; i < childCount[n]; i++) {
+					stack[top++] = children[n][i];
+				}
+				childCount[n] = 0;
+				parent[n] = NONE;
+				release(n);
+				evicted++;
+			}
+		}
+	}
+
+	/**
+	 * Forgets a node that has neither parent nor children and frees its id
+	 */
+	private void release(int id) {
+		ids.remove(pids[id]);
+		pids[id] = null;
+		children[id] = null;
+		descendants[id] = 0;
+		typeCounts[id] = null;
+		present[id] = false;
+		complete[id] = false;
+		type[id] = NONE;
+		timestamp[id] = 0;
+		subtreeMax[id] = 0;
+		subtreeArgMax[id] = id;
+		loadedAt[id] = 0;
+		used[id] = 0;
+		free.push(id);
+	}
+
+	private void grow() {
+		int capacity = pids.length * 2;
+		pids = Arrays.copyOf(pids, capacity);
+		present = Arrays.copyOf(present, capacity);
+		complete = Arrays.copyOf(complete, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		children = Arrays.copyOf(children, capacity);
+		childCount = Arrays.copyOf(childCount, capacity);
+		type = Arrays.copyOf(type, capacity);
+		timestamp = Arrays.copyOf(timestamp, capacity);
+		subtreeMax = Arrays.copyOf(subtreeMax, capacity);
+		subtreeArgMax = Arrays.copyOf(subtreeArgMax, capacity);
+		descendants = Arrays.copyOf(descendants, capacity);
+		typeCounts = Arrays.copyOf(typeCounts, capacity);
+		loadedAt = Arrays.copyOf(loadedAt, capacity);
+		used = Arrays.copyOf(used, capacity);
+	}
+}
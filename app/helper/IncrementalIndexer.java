@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import actions.Index;
+import actions.Read;
+import models.Globals;
+import models.Node;
+import play.Logger;
+
+/**
+ * Reindexes all objects that have been modified in Fedora since the last run.
+ * The date of the last successful run is kept as a watermark in
+ * {@link Globals#localDataDir}. A single instance is shared by the scheduled
+ * task and the utils endpoint, so runs don't overlap.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class IncrementalIndexer implements Runnable {
+
+	private static final Logger.ALogger reindexLogger = Logger.of("reindex");
+
+	private static final int STEP_SIZE = 100;
+
+	@Override
+	public void run() {
+		for (String namespace : Globals.namespaces) {
+			try {
+				reindexLogger.info(reindex(namespace, readWatermark(namespace), true));
+			} catch (Exception e) {
+				reindexLogger.error("Reindex of " + namespace + " failed!", e);
+			}
+		}
+	}
+
+	/**
+	 * Reindexes all objects of the namespace that have been modified after the
+	 * given date. The watermark is left as it is; only the scheduled run
+	 * advances it.
+	 *
+	 * @param namespace the namespace to reindex
+	 * @param since if null, the persisted watermark will be used
+	 * @return a message
+	 */
+	public String reindexModified(String namespace, Date since) {
+		return reindex(namespace, since == null ? readWatermark(namespace) : since,
+				false);
+	}
+
+	/**
+	 * Objects that cannot be read or are still pending in
+	 * {@link Globals#indexJournal} afterwards count as failed. The watermark is
+	 * only advanced to the start time of this run if none has failed, so the
+	 * next run picks them up again.
+	 */
+	private synchronized String reindex(String namespace, Date from,
+			boolean advance) {
+		Date start = new Date();
+		List<String> pids = Globals.fedora.findPidsModifiedSince(namespace, from);
+		StringBuffer msg = new StringBuffer();
+		msg.append("Reindex " + pids.size() + " objects of " + namespace
+				+ " modified since " + format(from) + "\n");
+		Read read = new Read();
+		Index index = new Index();
+		Set<String> failed = new LinkedHashSet<String>();
+		for (int i = 0; i < pids.size(); i += STEP_SIZE) {
+			int until = Math.min(i + STEP_SIZE, pids.size());
+			List<Node> active = new ArrayList<Node>();
+			for (String pid : pids.subList(i, until)) {
+				Node n = null;
+				try {
+					n = read.reloadNode(pid);
+				} catch (Exception e) {
+					reindexLogger.warn("Cannot read " + pid, e);
+					failed.add(pid);
+					continue;
+				}
+				if ("D".equals(n.getState())) {
+					msg.append(index.remove(n));
+				} else {
+					active.add(n);
+				}
+			}
+			if (!active.isEmpty()) {
+				msg.append(index.indexAll(active, namespace));
+			}
+		}
+		for (String pid : pids) {
+			if (Globals.indexJournal.isPending(pid))
+				failed.add(pid);
+		}
+		if (!failed.isEmpty()) {
+			msg.append(failed.size() + " objects failed, watermark of " + namespace
+					+ " stays at " + format(from) + ": " + failed + "\n");
+		} else if (advance) {
+			writeWatermark(namespace, start);
+		}
+		return msg.toString();
+	}
+
+	private static String format(Date date) {
+		return Globals.dateFormat().format(date);
+	}
+
+	/**
+	 * @param namespace the namespace
+	 * @return the date of the last successful reindex or 1970-01-01 if the
+	 *         namespace has never been reindexed incrementally
+	 */
+	public Date readWatermark(String namespace) {
+		File file = getWatermarkFile(namespace);
+		if (!file.exists())
+			return new Date(0);
+		try {
+			String date = new String(Files.readAllBytes(file.toPath()),
+					StandardCharsets.UTF_8).trim();
+			return Globals.dateFormat().parse(date);
+		} catch (IOException | ParseException e) {
+			reindexLogger.warn("Watermark " + file + " not readable!", e);
+			return new Date(0);
+		}
+	}
+
+	private void writeWatermark(String namespace, Date date) {
+		File file = getWatermarkFile(namespace);
+		try {
+			file.getParentFile().mkdirs();
+			File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+			Files.write(tmp.toPath(),
+					format(date).getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new HttpArchiveException(500, e);
+		}
+	}
+
+	private File getWatermarkFile(String namespace) {
+		return new File(Globals.localDataDir,
+				"reindex-watermark-" + namespace + ".txt");
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import actions.Index;
+import actions.Read;
+import archive.search.IndexJournal;
+import models.Globals;
+import models.Node;
+import play.Logger;
+
+/**
+ * Replays index operations that are still pending in
+ * {@link Globals#indexJournal}. Runs only if elasticsearch is reachable.
+ * Index operations are replayed in bulk per index. Removals and nodes that
+ * may have to be removed from the public or fulltext index are replayed one
+ * by one. An operation that fails again stays pending and the replay goes on
+ * with the next one; after {@link #MAX_ATTEMPTS} runs it is given up.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class IndexJournalReplayer implements Runnable {
+
+	private static final Logger.ALogger journalLogger = Logger.of("indexjournal");
+
+	private static final int MAX_ATTEMPTS = 10;
+
+	private static final int STEP_SIZE = 100;
+
+	private final Map<String, Integer> attempts = new HashMap<String, Integer>();
+
+	@Override
+	public synchronized void run() {
+		IndexJournal journal = Globals.indexJournal;
+		if (journal.size() == 0)
+			return;
+		if (!Globals.search.isAvailable()) {
+			journalLogger.info("Elasticsearch not available. " + journal.size()
+					+ " index operations pending.");
+			return;
+		}
+		List<IndexJournal.Entry> pending = journal.getPending();
+		Map<String, List<IndexJournal.Entry>> indexOps =
+				new LinkedHashMap<String, List<IndexJournal.Entry>>();
+		for (IndexJournal.Entry entry : pending) {
+			if (IndexJournal.REMOVE.equals(entry.getOp())) {
+				replaySafely(entry.getPid(), () -> new Index().remove(
+						entry.getPid(), entry.getType(), entry.getNamespace()));
+			} else {
+				indexOps
+						.computeIfAbsent(entry.getNamespace(),
+								ns -> new ArrayList<IndexJournal.Entry>())
+						.add(entry);
+			}
+		}
+		indexOps.forEach((index, entries) -> {
+			for (int i = 0; i < entries.size(); i += STEP_SIZE) {
+				replayIndex(index,
+						entries.subList(i, Math.min(i + STEP_SIZE, entries.size())));
+			}
+		});
+		int replayed = 0;
+		for (IndexJournal.Entry entry : pending) {
+			String pid = entry.getPid();
+			if (!journal.isPending(pid)) {
+				attempts.remove(pid);
+				replayed++;
+				continue;
+			}
+			int count = attempts.getOrDefault(pid, 0) + 1;
+			if (count >= MAX_ATTEMPTS) {
+				journalLogger.error("Give up index operation " + entry.getOp()
+						+ " on " + pid + " after " + count + " attempts!");
+				journal.discard(pid);
+				attempts.remove(pid);
+				continue;
+			}
+			attempts.put(pid, count);
+		}
+		journal.countReplayed(replayed);
+		journalLogger.info("Replayed " + replayed + " of " + pending.size()
+				+ " pending index operations.");
+	}
+
+	private void replayIndex(String index, List<IndexJournal.Entry> entries) {
+		Read read = new Read();
+		Index indexer = new Index();
+		List<Node> bulk = new ArrayList<Node>();
+		for (IndexJournal.Entry entry : entries) {
+			String pid = entry.getPid();
+			Node node = null;
+			try {
+				node = read.reloadNode(pid);
+			} catch (HttpArchiveException e) {
+				if (e.getCode() == 404) {
+					replaySafely(pid, () -> indexer.remove(pid, entry.getType(),
+							entry.getNamespace()));
+				} else {
+					journalLogger.warn("Replay of " + pid + " failed!", e);
+				}
+				continue;
+			} catch (Exception e) {
+				journalLogger.warn("Replay of " + pid + " failed!", e);
+				continue;
+			}
+			Node n = node;
+			if ("D".equals(n.getState())) {
+				replaySafely(pid, () -> indexer.remove(n));
+			} else if (index.equals(n.getNamespace()) && !isPublic(n)) {
+				replaySafely(pid, () -> indexer.index(n));
+			} else {
+				bulk.add(n);
+			}
+		}
+		if (!bulk.isEmpty()) {
+			replaySafely(index, () -> indexer.indexAll(bulk, index));
+		}
+	}
+
+	/**
+	 * Nodes that are not public may have to be removed from the public or
+	 * fulltext index, which a bulk index doesn't do
+	 */
+	private static boolean isPublic(Node n) {
+		return "public".equals(n.getPublishScheme())
+				&& "public".equals(n.getAccessScheme());
+	}
+
+	private static void replaySafely(String name, Supplier<String> replay) {
+		try {
+			journalLogger.debug(replay.get());
+		} catch (Exception e) {
+			journalLogger.warn("Replay of " + name + " failed!", e);
+		}
+	}
+}
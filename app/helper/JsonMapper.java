@@ -17,6 +17,7 @@
 package helper;
 
 import static archive.fedora.FedoraVocabulary.HAS_PART;
+import static archive.fedora.FedoraVocabulary.IS_MEMBER_OF;
 import static archive.fedora.FedoraVocabulary.IS_PART_OF;
 import static archive.fedora.Vocabulary.REL_HBZ_ID;
 
@@ -36,6 +37,7 @@ import org.openrdf.rio.RDFFormat;
 import archive.fedora.RdfUtils;
 import de.hbz.lobid.helper.EtikettMakerInterface;
 import de.hbz.lobid.helper.JsonConverter;
+import helper.oai.OaiProvider;
 import models.Globals;
 import models.Link;
 import models.Node;
@@ -83,6 +85,13 @@ public class JsonMapper {
 	final static String fulltext_ocr = "fulltext-ocr";
 	final static String title = "title";
 	final static String fileLabel = "fileLabel";
+	final static String oai = "oai";
+
+	/**
+	 * Fields of {@link #getIndexLd()} that are not part of {@link #getLd()}.
+	 * Leave them out whenever a document of the private index is returned.
+	 */
+	public final static String[] privateFields = { oai };
 
 	final static String[] typePrios = new String[] {
 			"http://purl.org/lobid/lv#ArchivedWebPage",
@@ -403,6 +412,36 @@ public class JsonMapper {
 		}
 	}
 
+	/**
+	 * @return the map of {@link #getLd()} plus the oai sets and the datestamp
+	 *         of the node, the document of the private index
+	 */
+	public Map<String, Object> getIndexLd() {
+		Map<String, Object> rdf = getLd();
+		Map<String, Object> oaiMap = getOaiMap();
+		if (oaiMap != null)
+			rdf.put(oai, oaiMap);
+		return rdf;
+	}
+
+	/**
+	 * @return the oai sets of the node and its datestamp, used by
+	 *         {@link helper.oai.OaiProvider}. Null if the node is in no set.
+	 */
+	private Map<String, Object> getOaiMap() {
+		List<String> sets = node.getRelatives(IS_MEMBER_OF).stream()
+				.map(l -> l.getObject()).filter(o -> o.startsWith("info:fedora/oai:"))
+				.map(o -> o.substring("info:fedora/".length()))
+				.collect(Collectors.toList());
+		if (sets.isEmpty() || node.getLastModified() == null)
+			return null;
+		Map<String, Object> oaiMap = new TreeMap<>();
+		oaiMap.put("set", sets);
+		oaiMap.put("datestamp", OaiProvider.datestamp(node.getLastModified()));
+		oaiMap.put("lastModified", node.getLastModified().getTime());
+		return oaiMap;
+	}
+
 	private void addLinkToJsonMap(Map<String, Object> rdf, Link l) {
 		Map<String, Object> resolvedObject = null;
 		String id = l.getObject();
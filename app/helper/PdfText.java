@@ -20,7 +20,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.pdfbox.io.RandomAccessFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.util.PDFTextStripper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,6 +69,75 @@ public class PdfText {
 		}
 	}
 
+	/**
+	 * Extracts the text of the first maxPages pages. The document is parsed
+	 * once; its objects are kept in a scratch file instead of the heap. The
+	 * deadline is checked before every page, so a document stops at the first
+	 * page started after the time is up.
+	 *
+	 * @param pdfFile this file will be extracted.
+	 * @param maxPages number of pages to extract at most
+	 * @param timeoutMillis time the extraction may take
+	 * @return the plain text of the pdf
+	 */
+	public String toString(File pdfFile, int maxPages, long timeoutMillis) {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		File scratch = null;
+		RandomAccessFile scratchFile = null;
+		PDDocument doc = null;
+		try {
+			scratch = File.createTempFile("pdfbox", ".scratch");
+			scratchFile = new RandomAccessFile(scratch, "rw");
+			doc = PDDocument.load(pdfFile, scratchFile);
+			int pages = doc.getNumberOfPages();
+			int last = Math.min(pages, maxPages);
+			if (last < pages)
+				logger.info(pdfFile + " has " + pages + " pages, extracting " + last);
+			PDFTextStripper stripper = new DeadlineStripper(deadline);
+			stripper.setEndPage(last);
+			return stripper.getText(doc);
+		} catch (DeadlineException e) {
+			throw new HttpArchiveException(500, "Extraction of " + pdfFile
+					+ " exceeds " + timeoutMillis + " ms");
+		} catch (IOException e) {
+			throw new HttpArchiveException(500, e);
+		} finally {
+			try {
+				if (doc != null)
+					doc.close();
+				if (scratchFile != null)
+					scratchFile.close();
+			} catch (IOException e) {
+				logger.warn("", e);
+			}
+			if (scratch != null)
+				scratch.delete();
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class DeadlineException extends IOException {
+	}
+
+	/**
+	 * PDFBox doesn't react to interrupts, so the deadline is checked on every
+	 * page instead
+	 */
+	private static class DeadlineStripper extends PDFTextStripper {
+		private final long deadline;
+
+		DeadlineStripper(long deadline) throws IOException {
+			this.deadline = deadline;
+		}
+
+		@Override
+		protected void startPage(PDPage page) throws IOException {
+			if (System.currentTimeMillis() >= deadline)
+				throw new DeadlineException();
+			super.startPage(page);
+		}
+	}
+
 	/**
 	 * @param pdfFile this file will be extracted.
 	 * @return the plain text of the pdf
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import actions.Read;
+import actions.Transform;
+import models.Globals;
+import models.Node;
+import play.Logger;
+
+/**
+ * Renders the representations of {@link Transform#STORED_FORMATS} for all
+ * objects into {@link Globals#representations}. Representations that are
+ * stored already in their current version are skipped, so only new and
+ * changed objects are rendered after the first run.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class RepresentationBackfill implements Runnable {
+
+	private static final Logger.ALogger backfillLogger =
+			Logger.of("representations");
+
+	private static final int STEP_SIZE = 100;
+
+	@Override
+	public synchronized void run() {
+		for (String namespace : Globals.namespaces) {
+			try {
+				backfillLogger.info(backfill(namespace));
+			} catch (Exception e) {
+				backfillLogger.error("Backfill of " + namespace + " failed!", e);
+			}
+		}
+	}
+
+	/**
+	 * @param namespace the namespace to backfill
+	 * @return a message
+	 */
+	public String backfill(String namespace) {
+		Read read = new Read();
+		Transform transform = new Transform();
+		Iterator<String> pids = read.streamRepoNamespace(namespace);
+		int count = 0;
+		int failed = 0;
+		AtomicInteger unreadable = new AtomicInteger();
+		while (pids.hasNext()) {
+			List<String> chunk = new ArrayList<String>();
+			while (pids.hasNext() && chunk.size() < STEP_SIZE) {
+				chunk.add(pids.next());
+			}
+			List<Node> nodes = read.getNodes(chunk, (pid, e) -> {
+				backfillLogger.warn("Cannot read " + pid + ": " + e.getMessage());
+				unreadable.incrementAndGet();
+			});
+			for (Node node : nodes) {
+				if ("D".equals(node.getState()) || node.getLastModified() == null)
+					continue;
+				for (String format : Transform.STORED_FORMATS) {
+					try {
+						transform.representation(node, format);
+					} catch (Exception e) {
+						backfillLogger.warn("Cannot render " + format + " of "
+								+ node.getPid() + ": " + e.getMessage());
+						failed++;
+					}
+				}
+				count++;
+			}
+		}
+		return "Rendered representations of " + count + " objects of " + namespace
+				+ ", " + failed + " renderings failed, " + unreadable.get()
+				+ " objects could not be read.";
+	}
+}
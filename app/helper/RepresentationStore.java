@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps rendered representations of objects (oaidc, epicur, aleph, mets, rdf)
+ * gzipped on disk. A representation is stored under pid, format and a version
+ * that changes whenever the object changes, so outdated representations are
+ * never served. Storing a new version of a format removes the older ones.
+ *
+ * Files are laid out as dir/bucket/pid/format-version.gz.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class RepresentationStore {
+
+	private final File dir;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+
+	/**
+	 * @param dir the directory of the store
+	 */
+	public RepresentationStore(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * @param pid the pid of the object
+	 * @param format the format
+	 * @param version the version of the object
+	 * @return the gzipped representation or null if it is not stored
+	 */
+	public byte[] get(String pid, String format, String version) {
+		File file = getFile(pid, format, version);
+		try {
+			byte[] content = Files.readAllBytes(file.toPath());
+			hits.incrementAndGet();
+			return content;
+		} catch (IOException e) {
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a representation and removes older versions of the format
+	 *
+	 * @param pid the pid of the object
+	 * @param format the format
+	 * @param version the version of the object
+	 * @param gzipped the gzipped representation
+	 */
+	public void put(String pid, String format, String version, byte[] gzipped) {
+		File file = getFile(pid, format, version);
+		try {
+			File objectDir = file.getParentFile();
+			objectDir.mkdirs();
+			File tmp = File.createTempFile(format, ".tmp", objectDir);
+			Files.write(tmp.toPath(), gzipped);
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			writes.incrementAndGet();
+			File[] files = objectDir.listFiles();
+			for (File f : files == null ? new File[0] : files) {
+				if (f.getName().startsWith(format + "-") && !f.equals(file))
+					f.delete();
+			}
+		} catch (IOException e) {
+			play.Logger.warn("Representation " + file + " not writable!", e);
+		}
+	}
+
+	/**
+	 * Removes all representations of an object
+	 *
+	 * @param pid the pid of the object
+	 */
+	public void remove(String pid) {
+		File objectDir = getObjectDir(pid);
+		File[] files = objectDir.listFiles();
+		if (files == null)
+			return;
+		for (File f : files) {
+			f.delete();
+		}
+		objectDir.delete();
+	}
+
+	/**
+	 * @return a map with hits, misses and writes
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("hits", hits.get());
+		result.put("misses", misses.get());
+		result.put("writes", writes.get());
+		result.put("dir", dir.getAbsolutePath());
+		return result;
+	}
+
+	/**
+	 * @param content a string
+	 * @return the gzipped utf-8 bytes of the string
+	 */
+	public static byte[] gzip(String content) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new HttpArchiveException(500, e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param gzipped gzipped utf-8 bytes
+	 * @return the string
+	 */
+	public static String gunzip(byte[] gzipped) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in =
+				new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				bytes.write(buf, 0, n);
+			}
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new HttpArchiveException(500, e);
+		}
+	}
+
+	private File getFile(String pid, String format, String version) {
+		return new File(getObjectDir(pid), format + "-" + version + ".gz");
+	}
+
+	private File getObjectDir(String pid) {
+		try {
+			String bucket = String.format("%02x", (pid.hashCode() & 0xff));
+			return new File(new File(dir, bucket), URLEncoder.encode(pid, "utf-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new HttpArchiveException(500, e);
+		}
+	}
+}
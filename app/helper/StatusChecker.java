@@ -0,0 +1,308 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs outbound status checks (urn resolver, doi resolver, oai provider,
+ * heritrix) in parallel. At most a fixed number of checks run against the
+ * same host at a time, further checks wait in a queue of their host. Results are cached for a while, so repeated status
+ * pages don't hit the resolvers again. Connections are read to the end and
+ * closed, so the JDK keeps them alive for the next check.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class StatusChecker {
+
+	private static final int MAX_REDIRECTS = 10;
+
+	private static final int MAX_CACHE_SIZE = 100000;
+
+	private static class Cached {
+		final Object value;
+		final long expires;
+
+		Cached(Object value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Runs at most perHost checks of a host on the executor. Further checks of
+	 * the host wait in its queue, not in a pool thread, so a slow host does
+	 * not keep the checks of other hosts from running.
+	 */
+	private class Host {
+		private final Queue<Runnable> waiting = new ArrayDeque<Runnable>();
+		private int running = 0;
+
+		void submit(Runnable task) {
+			synchronized (this) {
+				if (running >= perHost) {
+					waiting.add(task);
+					return;
+				}
+				running++;
+			}
+			execute(task);
+		}
+
+		int getWaiting() {
+			synchronized (this) {
+				return waiting.size();
+			}
+		}
+
+		private void execute(Runnable task) {
+			executor.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					next();
+				}
+			});
+		}
+
+		private void next() {
+			Runnable task;
+			synchronized (this) {
+				task = waiting.poll();
+				if (task == null) {
+					running--;
+					return;
+				}
+			}
+			execute(task);
+		}
+	}
+
+	private final ExecutorService executor;
+	private final int maxCacheSize;
+	private final int perHost;
+	private final int timeoutMillis;
+	private final long ttlMillis;
+	private final Map<String, Host> hosts = new ConcurrentHashMap<String, Host>();
+	private final Map<String, Cached> cache =
+			new ConcurrentHashMap<String, Cached>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param parallelism number of checks that run at the same time
+	 * @param perHost number of checks that run against one host at the same
+	 *          time
+	 * @param timeoutMillis connect and read timeout of each request
+	 * @param ttlMillis time a result is cached
+	 */
+	public StatusChecker(int parallelism, int perHost, int timeoutMillis,
+			long ttlMillis) {
+		this(parallelism, perHost, timeoutMillis, ttlMillis, MAX_CACHE_SIZE);
+	}
+
+	StatusChecker(int parallelism, int perHost, int timeoutMillis,
+			long ttlMillis, int maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+		this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+			Thread t = new Thread(r, "status-checker");
+			t.setDaemon(true);
+			return t;
+		});
+		this.perHost = perHost;
+		this.timeoutMillis = timeoutMillis;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * @param key the result is cached under this key, null for no caching
+	 * @param host url or name of the checked host, used to limit concurrency
+	 * @param check the check
+	 * @param fallback returned if the check fails
+	 * @return the future result
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> check(String key, String host,
+			Callable<T> check, T fallback) {
+		if (key != null) {
+			Cached cached = cache.get(key);
+			if (cached != null && cached.expires > System.currentTimeMillis()) {
+				hits.incrementAndGet();
+				return CompletableFuture.completedFuture((T) cached.value);
+			}
+			misses.incrementAndGet();
+		}
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		hosts.computeIfAbsent(hostOf(host), h -> new Host()).submit(() -> {
+			try {
+				T value = check.call();
+				if (key != null)
+					put(key, value);
+				result.complete(value);
+			} catch (Exception e) {
+				play.Logger.debug("Check " + key + " failed", e);
+				result.complete(fallback);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @param url a url
+	 * @param fallback returned if the url cannot be reached
+	 * @return the status code after following all redirects
+	 */
+	public CompletableFuture<Integer> responseCode(String url, int fallback) {
+		return check("code:" + url, url, () -> (Integer) follow(url)[1],
+				fallback);
+	}
+
+	/**
+	 * @param url a url
+	 * @param fallback returned if the url cannot be reached or answers with an
+	 *          error
+	 * @return the url after following all redirects
+	 */
+	public CompletableFuture<String> finalUrl(String url, String fallback) {
+		return check("url:" + url, url, () -> {
+			Object[] result = follow(url);
+			if ((Integer) result[1] >= 400)
+				throw new IOException(url + " returns " + result[1]);
+			return (String) result[0];
+		}, fallback);
+	}
+
+	/**
+	 * @param url a url
+	 * @return a connection with the timeouts of this checker
+	 * @throws IOException if the url cannot be opened
+	 */
+	public HttpURLConnection open(String url) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+		con.setConnectTimeout(timeoutMillis);
+		con.setReadTimeout(timeoutMillis);
+		return con;
+	}
+
+	/**
+	 * Drops the cached result of a key
+	 *
+	 * @param key the key a result is cached under
+	 */
+	public void invalidate(String key) {
+		cache.remove(key);
+	}
+
+	/**
+	 * @return a map with cache metrics
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("cached", cache.size());
+		result.put("hits", hits.get());
+		result.put("misses", misses.get());
+		Map<String, Integer> waiting = new HashMap<String, Integer>();
+		hosts.forEach((name, h) -> waiting.put(name, h.getWaiting()));
+		result.put("hosts", waiting);
+		return result;
+	}
+
+	private Object[] follow(String url) throws IOException {
+		String current = url;
+		for (int hop = 0; hop < MAX_REDIRECTS; hop++) {
+			HttpURLConnection con = open(current);
+			con.setInstanceFollowRedirects(false);
+			int code = con.getResponseCode();
+			String location = con.getHeaderField("Location");
+			drain(con);
+			if ((code == HttpURLConnection.HTTP_MOVED_PERM
+					|| code == HttpURLConnection.HTTP_MOVED_TEMP || code == 303
+					|| code == 307) && location != null) {
+				current = new URL(new URL(current), location).toString();
+				continue;
+			}
+			return new Object[] { current, code };
+		}
+		throw new IOException("Too many redirects: " + url);
+	}
+
+	private static void drain(HttpURLConnection con) {
+		try (InputStream in = con.getResponseCode() >= 400 ? con.getErrorStream()
+				: con.getInputStream()) {
+			if (in == null)
+				return;
+			byte[] buf = new byte[4096];
+			while (in.read(buf) != -1) {
+				// read to the end, so the connection can be reused
+			}
+		} catch (IOException e) {
+			con.disconnect();
+		}
+	}
+
+	private void put(String key, Object value) {
+		long now = System.currentTimeMillis();
+		if (cache.size() >= maxCacheSize)
+			evict(now);
+		cache.put(key, new Cached(value, now + ttlMillis));
+	}
+
+	/**
+	 * Drops expired results and then the oldest results until a tenth of the
+	 * cache is free
+	 */
+	private synchronized void evict(long now) {
+		if (cache.size() < maxCacheSize)
+			return;
+		cache.values().removeIf(c -> c.expires <= now);
+		int excess = cache.size() - (maxCacheSize - Math.max(1, maxCacheSize / 10));
+		if (excess <= 0)
+			return;
+		List<Map.Entry<String, Cached>> entries =
+				new ArrayList<Map.Entry<String, Cached>>(cache.entrySet());
+		entries.sort(Comparator.comparingLong(e -> e.getValue().expires));
+		for (int i = 0; i < excess && i < entries.size(); i++) {
+			cache.remove(entries.get(i).getKey(), entries.get(i).getValue());
+		}
+	}
+
+	private static String hostOf(String host) {
+		try {
+			return new URL(host).getHost();
+		} catch (MalformedURLException e) {
+			return host;
+		}
+	}
+}
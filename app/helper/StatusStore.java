@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import models.Globals;
+
+/**
+ * Keeps the results of the urn, doi and oai resolver checks, so status pages
+ * don't check every listed object live. Only resolver results are stored,
+ * everything taken from the node itself is read on every request. Every
+ * result carries the time it has been checked in the field
+ * {@link #CHECKED_AT}. Results older than the maximum age are not returned, so
+ * they are checked again, and are dropped when the store is saved. The store
+ * is written to a json file in {@link Globals#localDataDir} by {@link #save()},
+ * which runs periodically as the statusSaveTask and on shutdown, and loaded
+ * again on startup. Besides the results, it keeps the position of the
+ * {@link StatusSweeper} in each namespace.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class StatusStore {
+
+	/**
+	 * Field added to every stored result
+	 */
+	public static final String CHECKED_AT = "checkedAt";
+
+	/**
+	 * Prefix of the keys the resolver targets of a pid are stored under
+	 */
+	public static final String TARGETS = "checks:";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final File file;
+	private final long maxAgeMillis;
+	private Map<String, Map<String, Object>> results =
+			new HashMap<String, Map<String, Object>>();
+	private Map<String, String> cursors = new HashMap<String, String>();
+	private boolean dirty = false;
+
+	/**
+	 * @param file the json file. Results of a previous run will be loaded.
+	 * @param maxAgeMillis results older than this are checked again
+	 */
+	public StatusStore(File file, long maxAgeMillis) {
+		this.file = file;
+		this.maxAgeMillis = maxAgeMillis;
+		load();
+	}
+
+	/**
+	 * @param key a pid or another key of a checked thing
+	 * @return the stored result or null if it has never been checked or is
+	 *         older than the maximum age
+	 */
+	public synchronized Map<String, Object> get(String key) {
+		Map<String, Object> result = results.get(key);
+		if (result == null || isOutdated(result))
+			return null;
+		return new HashMap<String, Object>(result);
+	}
+
+	/**
+	 * Stores a result together with the current time
+	 *
+	 * @param key a pid or another key of a checked thing
+	 * @param result the result of the check
+	 * @return the stored result
+	 */
+	public synchronized Map<String, Object> put(String key,
+			Map<String, Object> result) {
+		Map<String, Object> stored = new HashMap<String, Object>(result);
+		stored.put(CHECKED_AT, Globals.dateFormat().format(new Date()));
+		results.put(key, stored);
+		dirty = true;
+		return new HashMap<String, Object>(stored);
+	}
+
+	/**
+	 * Drops the status and the resolver targets stored for a pid
+	 *
+	 * @param pid the pid of a node
+	 */
+	public synchronized void remove(String pid) {
+		boolean removed = results.remove(pid) != null;
+		removed |= results.remove(TARGETS + pid) != null;
+		if (removed)
+			dirty = true;
+	}
+
+	/**
+	 * @param namespace a namespace
+	 * @return the last pid the sweeper has checked, empty if it starts over
+	 */
+	public synchronized String getCursor(String namespace) {
+		return cursors.getOrDefault(namespace, "");
+	}
+
+	/**
+	 * @param namespace a namespace
+	 * @param pid the last pid the sweeper has checked, empty to start over
+	 */
+	public synchronized void setCursor(String namespace, String pid) {
+		cursors.put(namespace, pid);
+		dirty = true;
+	}
+
+	/**
+	 * Drops outdated results and writes the store to its file, if something
+	 * has changed. The file is written from a copy, so checks can store results
+	 * meanwhile.
+	 */
+	public void save() {
+		synchronized (file) {
+			Map<String, Object> content = new HashMap<String, Object>();
+			synchronized (this) {
+				purge();
+				if (!dirty)
+					return;
+				// stored results are never modified, a shallow copy is enough
+				content.put("cursors", new HashMap<String, String>(cursors));
+				content.put("results",
+						new HashMap<String, Map<String, Object>>(results));
+				dirty = false;
+			}
+			try {
+				file.getAbsoluteFile().getParentFile().mkdirs();
+				File tmp = new File(file.getAbsolutePath() + ".tmp");
+				mapper.writeValue(tmp, content);
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				synchronized (this) {
+					dirty = true;
+				}
+				play.Logger.warn("Status store " + file + " not writable!", e);
+			}
+		}
+	}
+
+	/**
+	 * @return a map with the size of the store and the sweeper positions
+	 */
+	public synchronized Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("results", results.size());
+		result.put("cursors", new HashMap<String, String>(cursors));
+		result.put("file", file.getAbsolutePath());
+		return result;
+	}
+
+	/**
+	 * Drops all outdated results
+	 *
+	 * @return number of dropped results
+	 */
+	synchronized int purge() {
+		SimpleDateFormat format = Globals.dateFormat();
+		long now = System.currentTimeMillis();
+		int size = results.size();
+		results.values().removeIf(r -> isOutdated(r, format, now));
+		int purged = size - results.size();
+		if (purged > 0)
+			dirty = true;
+		return purged;
+	}
+
+	private boolean isOutdated(Map<String, Object> result) {
+		return isOutdated(result, Globals.dateFormat(),
+				System.currentTimeMillis());
+	}
+
+	private boolean isOutdated(Map<String, Object> result,
+			SimpleDateFormat format, long now) {
+		Object checkedAt = result.get(CHECKED_AT);
+		if (checkedAt == null)
+			return true;
+		try {
+			Date date = format.parse(checkedAt.toString());
+			return now - date.getTime() > maxAgeMillis;
+		} catch (ParseException e) {
+			return true;
+		}
+	}
+
+	private void load() {
+		if (!file.exists())
+			return;
+		try {
+			Map<String, Object> content = mapper.readValue(file,
+					new TypeReference<Map<String, Object>>() {
+					});
+			Map<String, Map<String, Object>> r = mapper.convertValue(
+					content.get("results"),
+					new TypeReference<Map<String, Map<String, Object>>>() {
+					});
+			Map<String, String> c = mapper.convertValue(content.get("cursors"),
+					new TypeReference<Map<String, String>>() {
+					});
+			if (r != null)
+				results = r;
+			if (c != null)
+				cursors = c;
+			play.Logger.info(
+					"Status store " + file + " has " + results.size() + " results.");
+		} catch (Exception e) {
+			play.Logger.warn("Status store " + file + " not readable!", e);
+		}
+	}
+}
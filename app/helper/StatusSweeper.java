@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import actions.Read;
+import models.Globals;
+import models.Node;
+import play.Logger;
+
+/**
+ * Rechecks the urn, doi and oai status of a batch of objects per namespace on
+ * every run and stores the results in {@link Globals#statusStore}. The
+ * position in each namespace is kept in the store and the next run asks the
+ * resource index for the pids after it, so the repository is swept
+ * incrementally and starts over after the last pid. The checks run on
+ * {@link Globals#statusChecker} and obey its per-host limits.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class StatusSweeper implements Runnable {
+
+	private static final Logger.ALogger statusLogger = Logger.of("status");
+
+	@Override
+	public synchronized void run() {
+		for (String namespace : Globals.namespaces) {
+			try {
+				statusLogger.info(sweep(namespace, Globals.statusSweepSize));
+			} catch (Exception e) {
+				statusLogger.error("Status sweep of " + namespace + " failed!", e);
+			}
+		}
+		Globals.statusStore.save();
+	}
+
+	/**
+	 * Rechecks the next objects of the namespace
+	 *
+	 * @param namespace a namespace
+	 * @param size maximum number of objects to check
+	 * @return a message
+	 */
+	public String sweep(String namespace, int size) {
+		String cursor = Globals.statusStore.getCursor(namespace);
+		Read read = new Read();
+		Iterator<String> pids = read.streamRepoNamespace(namespace,
+				cursor.isEmpty() ? null : cursor);
+		List<String> batch = new ArrayList<String>();
+		while (pids.hasNext() && batch.size() < size) {
+			batch.add(pids.next());
+		}
+		List<CompletableFuture<Map<String, Object>>> checks =
+				new ArrayList<CompletableFuture<Map<String, Object>>>();
+		List<Node> nodes = read.getNodes(batch, (pid, e) -> statusLogger
+				.warn("Cannot read " + pid + ": " + e.getMessage()));
+		for (Node node : nodes) {
+			checks.add(
+					read.getResolverStatusAsync(node, true).exceptionally(e -> {
+						statusLogger.warn("Status check of " + node.getPid() + " failed!",
+								e);
+						return null;
+					}));
+		}
+		CompletableFuture.allOf(checks.toArray(new CompletableFuture[0])).join();
+		boolean done = !pids.hasNext();
+		String last = done ? "" : batch.get(batch.size() - 1);
+		Globals.statusStore.setCursor(namespace, last);
+		return "Checked status of " + batch.size() + " objects of " + namespace
+				+ (done ? ". Sweep complete." : " up to " + last);
+	}
+}
@@ -61,6 +61,42 @@ public class TaskManager {
 					"Register Job: doi allocator. Will run every " + Globals.doiTask);
 			addTask("doi allocator", new DoiAllocator(), Globals.doiTask);
 		}
+
+		if (Globals.reindexTask != null && !Globals.reindexTask.isEmpty()) {
+			play.Logger.info("Register Job: incremental indexer. Will run every "
+					+ Globals.reindexTask);
+			addTask("incremental indexer", Globals.incrementalIndexer,
+					Globals.reindexTask);
+		}
+
+		if (Globals.indexJournalTask != null
+				&& !Globals.indexJournalTask.isEmpty()) {
+			play.Logger.info("Register Job: index journal replayer. Will run every "
+					+ Globals.indexJournalTask);
+			addTask("index journal replayer", new IndexJournalReplayer(),
+					Globals.indexJournalTask);
+		}
+
+		if (Globals.statusTask != null && !Globals.statusTask.isEmpty()) {
+			play.Logger.info(
+					"Register Job: status sweeper. Will run every " + Globals.statusTask);
+			addTask("status sweeper", new StatusSweeper(), Globals.statusTask);
+		}
+
+		if (Globals.statusSaveTask != null && !Globals.statusSaveTask.isEmpty()) {
+			play.Logger.info("Register Job: status store. Will be saved every "
+					+ Globals.statusSaveTask);
+			addTask("status store", () -> Globals.statusStore.save(),
+					Globals.statusSaveTask);
+		}
+
+		if (Globals.representationTask != null
+				&& !Globals.representationTask.isEmpty()) {
+			play.Logger.info("Register Job: representation backfill. Will run every "
+					+ Globals.representationTask);
+			addTask("representation backfill", new RepresentationBackfill(),
+					Globals.representationTask);
+		}
 	}
 
 	private void addTask(String name, Runnable r, String cronExpression) {
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU map from pid to title, used to label links to parts and
+ * parents. An entry is removed whenever its node is written. Titles that
+ * have been looked up before a write of the same node are not stored, see
+ * {@link #getGeneration()}. Every write is stamped with a counter per pid, so
+ * a write of one node does not keep the titles of other nodes out.
+ *
+ * @author Jan Schnasse
+ *
+ */
+public class TitleIndex {
+
+	private final int maxSize;
+	private final LinkedHashMap<String, String> titles;
+	private long generation = 0;
+	private final LinkedHashMap<String, Long> written;
+	// the newest stamp that has been dropped from written
+	private long forgotten = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param maxSize maximum number of titles kept in memory
+	 */
+	public TitleIndex(int maxSize) {
+		this.maxSize = maxSize;
+		this.titles = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> e) {
+				return size() > TitleIndex.this.maxSize;
+			}
+		};
+		this.written = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> e) {
+				if (size() <= Math.max(1, TitleIndex.this.maxSize))
+					return false;
+				forgotten = Math.max(forgotten, e.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param pid the pid of a node
+	 * @return the title or null if it is not known
+	 */
+	public synchronized String get(String pid) {
+		String title = titles.get(pid);
+		if (title == null)
+			misses++;
+		else
+			hits++;
+		return title;
+	}
+
+	/**
+	 * @return the current generation. Pass it to put after the title has been
+	 *         looked up elsewhere.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @param pid the pid of a node
+	 * @param title its title
+	 * @param lookedUpAt the generation before the title has been looked up. If
+	 *          the node has been written since, the title is not stored.
+	 */
+	public synchronized void put(String pid, String title, long lookedUpAt) {
+		Long writtenAt = written.get(pid);
+		if (writtenAt != null ? writtenAt > lookedUpAt : forgotten > lookedUpAt)
+			return;
+		titles.put(pid, title);
+	}
+
+	/**
+	 * Must be called when the node is written
+	 *
+	 * @param pid the pid of a node
+	 */
+	public synchronized void remove(String pid) {
+		generation++;
+		// moves the pid to the end, so the oldest stamps are dropped first
+		written.remove(pid);
+		written.put(pid, generation);
+		titles.remove(pid);
+	}
+
+	/**
+	 * @return a map with size, hits and misses
+	 */
+	public synchronized Map<String, Object> getStatus() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("size", titles.size());
+		result.put("maxSize", maxSize);
+		result.put("hits", hits);
+		result.put("misses", misses);
+		return result;
+	}
+}
@@ -59,7 +59,8 @@ public class UrnAllocator implements Runnable {
 		List<SearchHit> hits = new Read().list(Globals.namespaces[0], from, until);
 		List<String> ids = hits.stream().map((SearchHit s) -> s.getId())
 				.collect(Collectors.toList());
-		List<Node> nodes = new Read().getNodes(ids);
+		List<Node> nodes = new Read().getNodes(ids, (pid, e) -> addUrnLogger
+				.warn("Cannot read " + pid + ": " + e.getMessage()));
 		nodes.stream().forEach(n -> n.setLastModifiedBy("UrnAllocator"));
 		addUrnLogger.info(new Modify().addUrnToAll(nodes, Globals.urnSnid, until));
 	}
@@ -20,6 +20,7 @@ import play.Logger;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 import com.ibm.icu.util.Calendar;
@@ -45,17 +46,18 @@ public class Webgatherer implements Runnable {
 	public void run() {
 		// get all webpages
 
-		WebgatherLogger.info("List 50000 resources of type webpage from namespace "
+		WebgatherLogger.info("Iterate resources of type webpage from namespace "
 				+ Globals.namespaces[0] + ".");
-		List<Node> webpages =
-				new Read().listRepo("webpage", Globals.namespaces[0], 0, 50000);
-		WebgatherLogger.info("Found " + webpages.size() + " webpages.");
+		Read read = new Read();
+		Iterator<Node> webpages = read.streamNodes(
+				read.streamRepoType("webpage", Globals.namespaces[0]));
 		int count = 0;
 		int precount = 0;
 		int limit = play.Play.application().configuration()
 				.getInt("regal-api.heritrix.crawlsPerNight");
 		// get all configs
-		for (Node n : webpages) {
+		while (webpages.hasNext()) {
+			Node n = webpages.next();
 			try {
 				precount++;
 				WebgatherLogger.info("Precount: " + precount);
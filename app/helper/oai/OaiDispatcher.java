@@ -19,7 +19,12 @@ package helper.oai;
 import static archive.fedora.FedoraVocabulary.IS_MEMBER_OF;
 import static archive.fedora.FedoraVocabulary.ITEM_ID;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import models.DublinCoreData;
@@ -41,6 +46,11 @@ import archive.fedora.RdfUtils;
  */
 public class OaiDispatcher {
 
+	/**
+	 * Pids of set objects that are known to exist in Fedora
+	 */
+	private static final Set<String> knownSets = new HashSet<String>();
+
 	/**
 	 * @param node the node to be published on the oai interface
 	 * @return A short message.
@@ -50,11 +60,13 @@ public class OaiDispatcher {
 			play.Logger.info("Connect transformer to " + node.getPid());
 			updateTransformer(null, node);
 			play.Logger.info("Create OAI-Sets for " + node.getPid());
-			createDDCSets(node);
-			createOpenAccessSet(node);
-			createUrnSets(node);
-			createAlephSet(node);
-			createContentTypeSet(node);
+			Map<String, OaiSet> sets = new LinkedHashMap<String, OaiSet>();
+			createDDCSets(node, sets);
+			createOpenAccessSet(node, sets);
+			createUrnSets(node, sets);
+			createAlephSet(node, sets);
+			createContentTypeSet(node, sets);
+			linkObjectToOaiSets(node, sets.values());
 			new Modify().updateIndex(node.getPid());
 			return node.getPid() + " successfully created oai sets!";
 		} catch (Exception e) {
@@ -117,7 +129,8 @@ public class OaiDispatcher {
 		return "Success!";
 	}
 
-	private static void createDDCSets(Node node) throws RepositoryException {
+	private static void createDDCSets(Node node, Map<String, OaiSet> sets)
+			throws RepositoryException {
 		OaiSetBuilder oaiSetBuilder = new OaiSetBuilder();
 		String metadata = node.getMetadata();
 		if (metadata == null)
@@ -133,75 +146,91 @@ public class OaiDispatcher {
 			if (set == null) {
 				continue;
 			}
-			if (!Globals.fedora.nodeExists(set.getPid())) {
-				createOAISet(set.getName(), set.getSpec(), set.getPid());
-			}
-			linkObjectToOaiSet(node, set.getSpec(), set.getPid());
+			sets.put(set.getPid(), set);
 		}
 	}
 
-	private static void createOpenAccessSet(Node node) {
+	private static void createOpenAccessSet(Node node,
+			Map<String, OaiSet> sets) {
 		if ("public".equals(node.getAccessScheme())) {
-			addSet(node, "open_access");
+			addSet(sets, "open_access");
 		}
 	}
 
-	private static void createUrnSets(Node node) {
+	private static void createUrnSets(Node node, Map<String, OaiSet> sets) {
 		if (node.hasUrnInMetadata()) {
-			addSet(node, "epicur");
+			addSet(sets, "epicur");
 			String urn = node.getUrnFromMetadata();
 			if (urn.startsWith("urn:nbn:de:hbz:929:01")) {
-				addSet(node, "urn-set-1");
+				addSet(sets, "urn-set-1");
 			} else if (urn.startsWith("urn:nbn:de:hbz:929:02")) {
-				addSet(node, "urn-set-2");
+				addSet(sets, "urn-set-2");
 			}
 		}
 		if (node.hasUrn()) {
-			addSet(node, "epicur");
+			addSet(sets, "epicur");
 			String urn = node.getUrn();
 			if (urn.startsWith("urn:nbn:de:hbz:929:01")) {
-				addSet(node, "urn-set-1");
+				addSet(sets, "urn-set-1");
 			} else if (urn.startsWith("urn:nbn:de:hbz:929:02")) {
-				addSet(node, "urn-set-2");
+				addSet(sets, "urn-set-2");
 			}
 		}
 	}
 
-	private static void createContentTypeSet(Node node) {
-		addSet(node, node.getContentType());
+	private static void createContentTypeSet(Node node,
+			Map<String, OaiSet> sets) {
+		addSet(sets, node.getContentType());
 	}
 
-	private static void createAlephSet(Node node) {
+	private static void createAlephSet(Node node, Map<String, OaiSet> sets) {
 		if (node.hasLinkToCatalogId()) {
 			play.Logger.info(node.getPid() + " add aleph set!");
-			addSet(node, "aleph");
-			addSet(node, Globals.alephSetName);
+			addSet(sets, "aleph");
+			addSet(sets, Globals.alephSetName);
 		}
 	}
 
-	private static void addSet(Node node, String name) {
-		play.Logger.info("Add OAI-Set " + name + " to " + node.getPid());
+	private static void addSet(Map<String, OaiSet> sets, String name) {
 		String spec = name;
 		String namespace = "oai";
 		String oaipid = namespace + ":" + name;
-		if (!Globals.fedora.nodeExists(oaipid)) {
-			createOAISet(name, spec, oaipid);
-		}
-		linkObjectToOaiSet(node, spec, oaipid);
+		if (!sets.containsKey(oaipid))
+			sets.put(oaipid, new OaiSet(name, spec, oaipid));
 	}
 
-	private static void linkObjectToOaiSet(Node node, String spec, String pid) {
+	/**
+	 * Adds all memberships to the node and writes its RELS-EXT once
+	 */
+	private static void linkObjectToOaiSets(Node node, Collection<OaiSet> sets) {
 		node.removeRelations(ITEM_ID);
-		node.removeRelation(IS_MEMBER_OF, "info:fedora/" + pid);
+		for (OaiSet set : sets) {
+			play.Logger.info("Add OAI-Set " + set.getSpec() + " to " + node.getPid());
+			ensureOAISet(set);
+			node.removeRelation(IS_MEMBER_OF, "info:fedora/" + set.getPid());
+			Link link = new Link();
+			link.setPredicate(IS_MEMBER_OF);
+			link.setObject("info:fedora/" + set.getPid(), false);
+			node.addRelation(link);
+		}
 		Link link = new Link();
-		link.setPredicate(IS_MEMBER_OF);
-		link.setObject("info:fedora/" + pid, false);
-		node.addRelation(link);
-		link = new Link();
 		link.setPredicate(ITEM_ID);
 		link.setObject("oai:" + Globals.server + ":" + node.getPid(), false);
 		node.addRelation(link);
-		Globals.fedora.updateNode(node);
+		Globals.fedora.updateRelsExt(node);
+	}
+
+	/**
+	 * Creates the set object unless it is known to exist. Synchronized, so
+	 * parallel bulk jobs don't create the same set twice.
+	 */
+	private static synchronized void ensureOAISet(OaiSet set) {
+		if (knownSets.contains(set.getPid()))
+			return;
+		if (!Globals.fedora.nodeExists(set.getPid())) {
+			createOAISet(set.getName(), set.getSpec(), set.getPid());
+		}
+		knownSets.add(set.getPid());
 	}
 
 	private static void createOAISet(String name, String spec, String pid) {
@@ -0,0 +1,554 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package helper.oai;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+
+import actions.Read;
+import actions.Transform;
+import helper.RepresentationStore;
+import models.Globals;
+import models.Link;
+
+/**
+ * Answers OAI-PMH 2.0 requests from the elasticsearch index. Records are
+ * selected by the transformers and oai sets of each object, the same way the
+ * Fedora disseminators publish them. The metadata is taken from
+ * {@link Globals#representations}.
+ *
+ * Lists are paged by pid. A resumption token carries the request arguments,
+ * the last pid and the cursor, so no state is kept between requests.
+ *
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("unchecked")
+public class OaiProvider {
+
+	private static final String OAI_DATESTAMP = "oai.datestamp";
+	private static final String OAI_SET = "oai.set";
+	private static final String[] HEADER_FIELDS = { "oai" };
+	private static final String[] RECORD_FIELDS = { "oai", "transformer" };
+	private static final long SET_REFRESH_MILLIS = 60000;
+
+	/**
+	 * metadataPrefix to format in {@link Transform#STORED_FORMATS}, schema and
+	 * namespace
+	 */
+	private static final Map<String, String[]> FORMATS =
+			new LinkedHashMap<String, String[]>();
+
+	static {
+		FORMATS.put("oai_dc",
+				new String[] { "oaidc",
+						"http://www.openarchives.org/OAI/2.0/oai_dc.xsd",
+						"http://www.openarchives.org/OAI/2.0/oai_dc/" });
+		FORMATS.put("epicur", new String[] { "epicur",
+				"http://www.persistent-identifier.de/xepicur/version1.0/xepicur.xsd",
+				"urn:nbn:de:1111-2004033116" });
+		FORMATS.put("aleph",
+				new String[] { "aleph",
+						"http://www.ddb.de/professionell/mabxml/mabxml-1.xsd",
+						"http://www.ddb.de/professionell/mabxml/mabxml-1.xsd" });
+		FORMATS.put("mets",
+				new String[] { "mets", "http://www.loc.gov/standards/mets/mets.xsd",
+						"http://www.loc.gov/METS/" });
+		FORMATS.put("rdf",
+				new String[] { "rdf", "http://www.openarchives.org/OAI/2.0/rdf.xsd",
+						"http://www.w3.org/1999/02/22-rdf-syntax-ns#" });
+	}
+
+	/**
+	 * The oai sets, replaced as a whole when they are reloaded
+	 */
+	private static class Sets {
+		final Map<String, String> pids;
+		final Map<String, String> specs;
+		final Map<String, String> names;
+		final long loaded;
+
+		Sets(Map<String, String> pids, Map<String, String> specs,
+				Map<String, String> names, long loaded) {
+			this.pids = pids;
+			this.specs = specs;
+			this.names = names;
+			this.loaded = loaded;
+		}
+	}
+
+	private static volatile Sets sets =
+			new Sets(new HashMap<String, String>(), new HashMap<String, String>(),
+					new HashMap<String, String>(), 0);
+
+	/**
+	 * Thrown on requests that must be answered with an OAI-PMH error
+	 */
+	@SuppressWarnings("serial")
+	public static class OaiError extends RuntimeException {
+		final String code;
+
+		OaiError(String code, String message) {
+			super(message);
+			this.code = code;
+		}
+	}
+
+	private final String baseUrl;
+	private final int pageSize;
+	private final Transform transform = new Transform();
+	private final Read read = new Read();
+
+	/**
+	 * @param baseUrl the url of the oai endpoint
+	 * @param pageSize number of records or headers per list response
+	 */
+	public OaiProvider(String baseUrl, int pageSize) {
+		this.baseUrl = baseUrl;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @param date a date
+	 * @return the date in the granularity of this provider
+	 */
+	public static String datestamp(Date date) {
+		return utc("yyyy-MM-dd'T'HH:mm:ss'Z'").format(date);
+	}
+
+	/**
+	 * Writes the answer to a request. Errors are written as OAI-PMH errors.
+	 *
+	 * @param params the request arguments
+	 * @param out the response
+	 * @throws IOException if the response cannot be written
+	 */
+	public void handle(Map<String, String[]> params, Writer out)
+			throws IOException {
+		Map<String, String> args = new LinkedHashMap<String, String>();
+		boolean repeated = false;
+		for (Map.Entry<String, String[]> p : params.entrySet()) {
+			args.put(p.getKey(), p.getValue()[0]);
+			repeated |= p.getValue().length > 1;
+		}
+		String verb = args.get("verb");
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\" "
+				+ "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+				+ "xsi:schemaLocation=\"http://www.openarchives.org/OAI/2.0/ "
+				+ "http://www.openarchives.org/OAI/2.0/OAI-PMH.xsd\">\n");
+		out.write("<responseDate>" + datestamp(new Date()) + "</responseDate>\n");
+		Map<String, String> request = null;
+		try {
+			if (repeated)
+				throw new OaiError("badArgument", "Repeated argument");
+			request = parse(verb, args);
+		} catch (OaiError e) {
+			// the request element has no attributes if the arguments are illegal
+			out.write("<request>" + escape(baseUrl) + "</request>\n");
+			writeError(e, out);
+			return;
+		}
+		out.write("<request");
+		for (Map.Entry<String, String> arg : args.entrySet()) {
+			out.write(" " + arg.getKey() + "=\"" + escape(arg.getValue()) + "\"");
+		}
+		out.write(">" + escape(baseUrl) + "</request>\n");
+		try {
+			if ("Identify".equals(verb)) {
+				identify(out);
+			} else if ("ListMetadataFormats".equals(verb)) {
+				listMetadataFormats(out);
+			} else if ("ListSets".equals(verb)) {
+				listSets(out);
+			} else if ("GetRecord".equals(verb)) {
+				getRecord(request, out);
+			} else {
+				list(request, "ListRecords".equals(verb), out);
+			}
+		} catch (OaiError e) {
+			writeError(e, out);
+			return;
+		}
+		out.write("</OAI-PMH>\n");
+	}
+
+	private static void writeError(OaiError e, Writer out) throws IOException {
+		out.write("<error code=\"" + e.code + "\">" + escape(e.getMessage())
+				+ "</error>\n</OAI-PMH>\n");
+	}
+
+	/**
+	 * Checks the arguments of the verb and decodes a resumption token
+	 */
+	static Map<String, String> parse(String verb,
+			Map<String, String> args) {
+		String[] allowed;
+		if ("Identify".equals(verb) || "ListSets".equals(verb)) {
+			allowed = new String[] { "verb" };
+		} else if ("ListMetadataFormats".equals(verb)) {
+			allowed = new String[] { "verb", "identifier" };
+		} else if ("GetRecord".equals(verb)) {
+			allowed = new String[] { "verb", "identifier", "metadataPrefix" };
+		} else if ("ListRecords".equals(verb) || "ListIdentifiers".equals(verb)) {
+			allowed = new String[] { "verb", "metadataPrefix", "set", "from",
+					"until", "resumptionToken" };
+		} else {
+			throw new OaiError("badVerb", "Illegal verb " + verb);
+		}
+		for (String key : args.keySet()) {
+			if (!Arrays.asList(allowed).contains(key))
+				throw new OaiError("badArgument", "Illegal argument " + key);
+		}
+		Map<String, String> request = new HashMap<String, String>(args);
+		String token = args.get("resumptionToken");
+		if (token != null) {
+			if (args.size() != 2)
+				throw new OaiError("badArgument",
+						"resumptionToken is an exclusive argument");
+			request.putAll(decodeToken(token));
+		}
+		if ("GetRecord".equals(verb) && (request.get("identifier") == null
+				|| request.get("metadataPrefix") == null))
+			throw new OaiError("badArgument",
+					"identifier and metadataPrefix are required");
+		if (("ListRecords".equals(verb) || "ListIdentifiers".equals(verb))
+				&& request.get("metadataPrefix") == null)
+			throw new OaiError("badArgument", "metadataPrefix is required");
+		String from = request.get("from");
+		String until = request.get("until");
+		if (from != null && until != null) {
+			if (from.length() != until.length())
+				throw new OaiError("badArgument",
+						"from and until must have the same granularity");
+			if (toDatestamp(from, false).compareTo(toDatestamp(until, true)) > 0)
+				throw new OaiError("badArgument", "from is after until");
+		} else if (from != null) {
+			toDatestamp(from, false);
+		} else if (until != null) {
+			toDatestamp(until, true);
+		}
+		return request;
+	}
+
+	private void identify(Writer out) throws IOException {
+		out.write("<Identify>\n<repositoryName>" + escape(Globals.server)
+				+ "</repositoryName>\n<baseURL>" + escape(baseUrl)
+				+ "</baseURL>\n<protocolVersion>2.0</protocolVersion>\n"
+				+ "<adminEmail>admin@" + escape(Globals.server) + "</adminEmail>\n"
+				+ "<earliestDatestamp>1970-01-01T00:00:00Z</earliestDatestamp>\n"
+				+ "<deletedRecord>no</deletedRecord>\n"
+				+ "<granularity>YYYY-MM-DDThh:mm:ssZ</granularity>\n</Identify>\n");
+	}
+
+	private static void listMetadataFormats(Writer out) throws IOException {
+		out.write("<ListMetadataFormats>\n");
+		for (Map.Entry<String, String[]> f : FORMATS.entrySet()) {
+			out.write("<metadataFormat><metadataPrefix>" + f.getKey()
+					+ "</metadataPrefix><schema>" + f.getValue()[1]
+					+ "</schema><metadataNamespace>" + f.getValue()[2]
+					+ "</metadataNamespace></metadataFormat>\n");
+		}
+		out.write("</ListMetadataFormats>\n");
+	}
+
+	private static void listSets(Writer out) throws IOException {
+		Sets current = loadSets(true);
+		out.write("<ListSets>\n");
+		for (Map.Entry<String, String> set : current.pids.entrySet()) {
+			String name = current.names.get(set.getValue());
+			out.write("<set><setSpec>" + escape(set.getKey()) + "</setSpec><setName>"
+					+ escape(name == null || name.isEmpty() ? set.getKey() : name)
+					+ "</setName></set>\n");
+		}
+		out.write("</ListSets>\n");
+	}
+
+	private void getRecord(Map<String, String> request, Writer out)
+			throws IOException {
+		String format = getFormat(request.get("metadataPrefix"));
+		String pid = getPid(request.get("identifier"));
+		Map<String, Object> oai = null;
+		List<Object> transformers = null;
+		try {
+			Map<String, Object> source =
+					Globals.search.get(pid, RECORD_FIELDS, null);
+			if (source != null) {
+				oai = (Map<String, Object>) source.get("oai");
+				transformers = (List<Object>) source.get("transformer");
+			}
+		} catch (Exception e) {
+			play.Logger.debug("", e);
+		}
+		if (oai == null)
+			throw new OaiError("idDoesNotExist", request.get("identifier"));
+		if (transformers == null || !transformers.contains(format))
+			throw new OaiError("cannotDisseminateFormat",
+					request.get("metadataPrefix"));
+		out.write("<GetRecord>\n");
+		writeRecord(pid, oai, format, true, out);
+		out.write("</GetRecord>\n");
+	}
+
+	private void list(Map<String, String> request, boolean records, Writer out)
+			throws IOException {
+		String format = getFormat(request.get("metadataPrefix"));
+		BoolFilterBuilder filter = FilterBuilders.boolFilter()
+				.must(FilterBuilders.termFilter("transformer", format));
+		String set = request.get("set");
+		if (set != null) {
+			String setPid = getSetPid(set);
+			if (setPid == null)
+				throw new OaiError("noRecordsMatch", "Unknown set " + set);
+			filter.must(FilterBuilders.termFilter(OAI_SET, setPid));
+		} else {
+			filter.must(FilterBuilders.existsFilter(OAI_SET));
+		}
+		String from = request.get("from");
+		String until = request.get("until");
+		if (from != null || until != null) {
+			filter.must(FilterBuilders.rangeFilter(OAI_DATESTAMP)
+					.gte(from == null ? null : toDatestamp(from, false))
+					.lte(until == null ? null : toDatestamp(until, true)));
+		}
+		String last = request.get("last");
+		String idField = Globals.profile.getIdAlias();
+		if (last != null) {
+			filter.must(FilterBuilders.rangeFilter(idField).gt(last));
+		}
+		SearchHits hits = Globals.search.querySorted(Globals.namespaces,
+				QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter),
+				idField, pageSize, HEADER_FIELDS, null);
+		if (hits.getTotalHits() == 0 && last == null)
+			throw new OaiError("noRecordsMatch", "No records match the request");
+		String verb = records ? "ListRecords" : "ListIdentifiers";
+		out.write("<" + verb + ">\n");
+		String pid = null;
+		for (SearchHit hit : hits.getHits()) {
+			pid = hit.getId();
+			Map<String, Object> oai = (Map<String, Object>) hit.getSource().get("oai");
+			try {
+				writeRecord(pid, oai, format, records, out);
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				play.Logger.warn("Cannot write oai record " + pid, e);
+			}
+		}
+		int cursor = request.get("cursor") == null ? 0
+				: Integer.parseInt(request.get("cursor"));
+		long total = cursor + hits.getTotalHits();
+		int next = cursor + hits.getHits().length;
+		if (next < total) {
+			request.put("last", pid);
+			request.put("cursor", "" + next);
+			out.write("<resumptionToken completeListSize=\"" + total
+					+ "\" cursor=\"" + cursor + "\">" + encodeToken(request)
+					+ "</resumptionToken>\n");
+		} else if (last != null) {
+			out.write("<resumptionToken completeListSize=\"" + total
+					+ "\" cursor=\"" + cursor + "\"/>\n");
+		}
+		out.write("</" + verb + ">\n");
+	}
+
+	private void writeRecord(String pid, Map<String, Object> oai, String format,
+			boolean withMetadata, Writer out) throws IOException {
+		StringBuilder header = new StringBuilder();
+		header.append("<header><identifier>" + escape(getIdentifier(pid))
+				+ "</identifier><datestamp>" + oai.get("datestamp")
+				+ "</datestamp>");
+		for (Object setPid : (List<Object>) oai.get("set")) {
+			String spec = getSetSpec((String) setPid);
+			if (spec != null)
+				header.append("<setSpec>" + escape(spec) + "</setSpec>");
+		}
+		header.append("</header>\n");
+		if (!withMetadata) {
+			out.write(header.toString());
+			return;
+		}
+		String metadata = getMetadata(pid, format,
+				((Number) oai.get("lastModified")).longValue());
+		out.write("<record>" + header + "<metadata>" + metadata
+				+ "</metadata></record>\n");
+	}
+
+	/**
+	 * Takes the metadata from the store. Only on a miss the object is read and
+	 * rendered.
+	 */
+	private String getMetadata(String pid, String format, long lastModified) {
+		byte[] stored =
+				transform.storedRepresentation(pid, format, lastModified);
+		if (stored == null)
+			stored = transform.representation(read.internalReadNode(pid), format);
+		String xml = RepresentationStore.gunzip(stored).trim();
+		if (xml.startsWith("<?xml"))
+			xml = xml.substring(xml.indexOf("?>") + 2).trim();
+		return xml;
+	}
+
+	private static String getFormat(String metadataPrefix) {
+		String[] format = FORMATS.get(metadataPrefix);
+		if (format == null)
+			throw new OaiError("cannotDisseminateFormat",
+					"Unknown metadataPrefix " + metadataPrefix);
+		return format[0];
+	}
+
+	private static String getIdentifier(String pid) {
+		return "oai:" + Globals.server + ":" + pid;
+	}
+
+	private static String getPid(String identifier) {
+		String prefix = "oai:" + Globals.server + ":";
+		if (!identifier.startsWith(prefix))
+			throw new OaiError("idDoesNotExist", identifier);
+		return identifier.substring(prefix.length());
+	}
+
+	private static String getSetPid(String spec) {
+		Sets current = loadSets(false);
+		if (!current.pids.containsKey(spec))
+			current = loadSets(true);
+		return current.pids.get(spec);
+	}
+
+	private static String getSetSpec(String pid) {
+		return loadSets(false).specs.get(pid);
+	}
+
+	/**
+	 * Reads the set objects of the oai namespace, at most once a minute
+	 *
+	 * @return the current sets
+	 */
+	private static Sets loadSets(boolean refresh) {
+		Sets current = sets;
+		if (isFresh(current, refresh))
+			return current;
+		synchronized (OaiProvider.class) {
+			current = sets;
+			if (isFresh(current, refresh))
+				return current;
+			sets = readSets();
+			return sets;
+		}
+	}
+
+	private static boolean isFresh(Sets current, boolean refresh) {
+		return current.loaded > 0 && (!refresh || System.currentTimeMillis()
+				- current.loaded < SET_REFRESH_MILLIS);
+	}
+
+	private static Sets readSets() {
+		long now = System.currentTimeMillis();
+		Map<String, String> pids = new HashMap<String, String>();
+		Map<String, String> specs = new HashMap<String, String>();
+		Map<String, String> names = new HashMap<String, String>();
+		Iterator<String> it = Globals.fedora.iteratePids("oai");
+		while (it.hasNext()) {
+			String pid = it.next();
+			try {
+				for (Link l : Globals.fedora.readNode(pid).getRelsExt()) {
+					if (l.getPredicate().endsWith("/OAI/2.0/setSpec")) {
+						pids.put(l.getObject(), pid);
+						specs.put(pid, l.getObject());
+					} else if (l.getPredicate().endsWith("/OAI/2.0/setName")) {
+						names.put(pid, l.getObject());
+					}
+				}
+			} catch (Exception e) {
+				play.Logger.warn("Cannot read oai set " + pid, e);
+			}
+		}
+		return new Sets(pids, specs, names, now);
+	}
+
+	static String toDatestamp(String date, boolean until) {
+		try {
+			if (date.length() == 10) {
+				utc("yyyy-MM-dd").parse(date);
+				return date + (until ? "T23:59:59Z" : "T00:00:00Z");
+			}
+			return datestamp(utc("yyyy-MM-dd'T'HH:mm:ss'Z'").parse(date));
+		} catch (ParseException e) {
+			throw new OaiError("badArgument", "Illegal date " + date);
+		}
+	}
+
+	static String encodeToken(Map<String, String> request) {
+		StringBuilder token = new StringBuilder();
+		for (String key : new String[] { "metadataPrefix", "set", "from", "until",
+				"last", "cursor" }) {
+			token.append(request.get(key) == null ? "" : request.get(key))
+					.append('\n');
+		}
+		return Base64.getUrlEncoder().encodeToString(
+				token.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	static Map<String, String> decodeToken(String token) {
+		try {
+			String[] values =
+					new String(Base64.getUrlDecoder().decode(token),
+							StandardCharsets.UTF_8).split("\n", -1);
+			String[] keys = { "metadataPrefix", "set", "from", "until", "last",
+					"cursor" };
+			Map<String, String> result = new HashMap<String, String>();
+			for (int i = 0; i < keys.length; i++) {
+				if (!values[i].isEmpty())
+					result.put(keys[i], values[i]);
+			}
+			Integer.parseInt(result.get("cursor"));
+			return result;
+		} catch (Exception e) {
+			throw new OaiError("badResumptionToken", "Illegal resumptionToken");
+		}
+	}
+
+	private static SimpleDateFormat utc(String pattern) {
+		SimpleDateFormat format = new SimpleDateFormat(pattern);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		format.setLenient(false);
+		return format;
+	}
+
+	private static String escape(String s) {
+		return s == null ? "" : s.replace("&", "&amp;").replace("<", "&lt;")
+				.replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import helper.AdaptiveThrottle;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * State of a namespace-wide bulk operation. The cursor is the number of pids,
+ * in sorted order, that have been processed completely, lastPid is the last
+ * of them. A resumed job starts after lastPid, so pids created or purged in
+ * the meantime don't shift it.
+ *
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class BulkJob {
+
+	public static final String RUNNING = "running";
+	public static final String FINISHED = "finished";
+	public static final String CANCELLED = "cancelled";
+	public static final String INTERRUPTED = "interrupted";
+	public static final String FAILED = "failed";
+
+	/**
+	 * Only the first failures are kept, all of them are counted
+	 */
+	public static final int MAX_FAILURES = 100;
+
+	String id;
+	String operation;
+	String namespace;
+	String userId;
+	Map<String, String> params = new HashMap<String, String>();
+	String state = RUNNING;
+	long total = 0;
+	long cursor = 0;
+	String lastPid = null;
+	long processed = 0;
+	long errorCount = 0;
+	int priority = AdaptiveThrottle.DEFAULT_PRIORITY;
+	List<Map<String, String>> failures = new ArrayList<Map<String, String>>();
+	long created = System.currentTimeMillis();
+	long updated = System.currentTimeMillis();
+
+	@JsonIgnore
+	volatile boolean cancelRequested = false;
+
+	@JsonIgnore
+	TreeMap<Long, Long> doneRanges = new TreeMap<Long, Long>();
+
+	@JsonIgnore
+	Map<Long, String> lastPids = new HashMap<Long, String>();
+
+	public BulkJob() {
+		// for jackson
+	}
+
+	public BulkJob(String id, String operation, String namespace,
+			String userId, Map<String, String> params) {
+		this.id = id;
+		this.operation = operation;
+		this.namespace = namespace;
+		this.userId = userId;
+		if (params != null)
+			this.params.putAll(params);
+	}
+
+	/**
+	 * Marks the pids from (inclusive) to until (exclusive) as processed and
+	 * advances the cursor and lastPid as far as all pids before are processed.
+	 *
+	 * @param from absolute position of the first pid of a chunk
+	 * @param until absolute position after the last pid of a chunk
+	 * @param last the last pid of the chunk
+	 */
+	public synchronized void chunkDone(long from, long until, String last) {
+		processed += until - from;
+		doneRanges.put(from, until);
+		lastPids.put(until, last);
+		Long next = null;
+		while ((next = doneRanges.remove(cursor)) != null) {
+			cursor = next;
+			lastPid = lastPids.remove(next);
+		}
+		updated = System.currentTimeMillis();
+	}
+
+	/**
+	 * @param pid the pid that could not be processed
+	 * @param message the cause
+	 */
+	public synchronized void addFailure(String pid, String message) {
+		errorCount++;
+		if (failures.size() < MAX_FAILURES) {
+			Map<String, String> failure = new HashMap<String, String>();
+			failure.put("pid", pid);
+			failure.put("message", message);
+			failures.add(failure);
+		}
+	}
+
+	public void cancel() {
+		cancelRequested = true;
+	}
+
+	@JsonIgnore
+	public boolean isCancelRequested() {
+		return cancelRequested;
+	}
+
+	@JsonIgnore
+	public synchronized boolean isRunning() {
+		return RUNNING.equals(state);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+
+	public String getNamespace() {
+		return namespace;
+	}
+
+	public void setNamespace(String namespace) {
+		this.namespace = namespace;
+	}
+
+	public String getUserId() {
+		return userId;
+	}
+
+	public void setUserId(String userId) {
+		this.userId = userId;
+	}
+
+	public Map<String, String> getParams() {
+		return params;
+	}
+
+	public void setParams(Map<String, String> params) {
+		this.params = params;
+	}
+
+	public synchronized String getState() {
+		return state;
+	}
+
+	public synchronized void setState(String state) {
+		this.state = state;
+		this.updated = System.currentTimeMillis();
+	}
+
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	public synchronized void setTotal(long total) {
+		this.total = total;
+	}
+
+	public synchronized long getCursor() {
+		return cursor;
+	}
+
+	public synchronized void setCursor(long cursor) {
+		this.cursor = cursor;
+	}
+
+	public synchronized String getLastPid() {
+		return lastPid;
+	}
+
+	public synchronized void setLastPid(String lastPid) {
+		this.lastPid = lastPid;
+	}
+
+	public synchronized long getProcessed() {
+		return processed;
+	}
+
+	public synchronized void setProcessed(long processed) {
+		this.processed = processed;
+	}
+
+	public synchronized long getErrorCount() {
+		return errorCount;
+	}
+
+	public synchronized void setErrorCount(long errorCount) {
+		this.errorCount = errorCount;
+	}
+
+	public synchronized int getPriority() {
+		return priority;
+	}
+
+	public synchronized void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	public synchronized List<Map<String, String>> getFailures() {
+		return new ArrayList<Map<String, String>>(failures);
+	}
+
+	public synchronized void setFailures(List<Map<String, String>> failures) {
+		this.failures = failures;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public void setCreated(long created) {
+		this.created = created;
+	}
+
+	public synchronized long getUpdated() {
+		return updated;
+	}
+
+	public synchronized void setUpdated(long updated) {
+		this.updated = updated;
+	}
+}
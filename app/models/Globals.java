@@ -16,10 +16,20 @@
  */
 package models;
 
+import helper.AdaptiveThrottle;
+import helper.FulltextQueue;
+import helper.FulltextStore;
+import helper.HierarchyIndex;
+import helper.IncrementalIndexer;
 import helper.Heritrix;
 import helper.MyEtikettMaker;
+import helper.RepresentationStore;
+import helper.StatusChecker;
+import helper.StatusStore;
 import helper.TaskManager;
+import helper.TitleIndex;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.Map;
@@ -27,6 +37,7 @@ import java.util.Map;
 import play.Play;
 import archive.fedora.FedoraFacade;
 import archive.fedora.FedoraFactory;
+import archive.search.IndexJournal;
 import archive.search.SearchFacade;
 import de.hbz.lobid.helper.EtikettMakerInterface;
 
@@ -160,6 +171,176 @@ public class Globals {
 	public static String heartbeatTask =
 			Play.application().configuration().getString("regal-api.heartbeatTask");
 
+	/**
+	 * if set, objects modified since the last run will be reindexed
+	 */
+	public static String reindexTask =
+			Play.application().configuration().getString("regal-api.reindexTask");
+
+	/**
+	 * Reindexes modified objects, shared by the task and the utils endpoint
+	 */
+	public static IncrementalIndexer incrementalIndexer =
+			new IncrementalIndexer();
+
+	/**
+	 * A local directory to persist state that must survive a restart
+	 */
+	public static String localDataDir = Play.application().configuration()
+			.getString("regal-api.localDataDir", "data");
+
+	/**
+	 * Pending index operations. Survives elasticsearch outages and restarts.
+	 */
+	public static IndexJournal indexJournal =
+			new IndexJournal(new File(localDataDir, "index-journal.log"));
+
+	/**
+	 * if set, pending index operations will be replayed on the defined interval
+	 */
+	public static String indexJournalTask = Play.application().configuration()
+			.getString("regal-api.indexJournalTask", "0 * * * * ?");
+
+	/**
+	 * Stored results of the urn, doi and oai status checks
+	 */
+	public static StatusStore statusStore =
+			new StatusStore(new File(localDataDir, "status-store.json"),
+					Play.application().configuration()
+							.getInt("regal-api.statusMaxAge", 7 * 24 * 3600) * 1000L);
+
+	/**
+	 * if set, the status store will be written to disk on the defined interval
+	 */
+	public static String statusSaveTask = Play.application().configuration()
+			.getString("regal-api.statusSaveTask", "0 */5 * * * ?");
+
+	/**
+	 * if set, the status of a batch of objects will be rechecked on the
+	 * defined interval
+	 */
+	public static String statusTask =
+			Play.application().configuration().getString("regal-api.statusTask");
+
+	/**
+	 * number of objects per namespace the status task checks on each run
+	 */
+	public static int statusSweepSize = Play.application().configuration()
+			.getInt("regal-api.statusSweepSize", 500);
+
+	/**
+	 * Rendered oaidc, epicur, aleph, mets and rdf representations
+	 */
+	public static RepresentationStore representations =
+			new RepresentationStore(new File(localDataDir, "representations"));
+
+	/**
+	 * Text extracted from pdf data, keyed by the checksum of the data
+	 */
+	public static FulltextStore fulltexts =
+			new FulltextStore(new File(localDataDir, "fulltext"));
+
+	/**
+	 * Background text extraction for the fulltext index
+	 */
+	public static FulltextQueue fulltextQueue = new FulltextQueue(
+			Play.application().configuration().getInt("regal-api.fulltextWorkers",
+					2),
+			Play.application().configuration()
+					.getInt("regal-api.fulltextQueueSize", 1000),
+			Play.application().configuration().getInt("regal-api.fulltextMaxPages",
+					2000),
+			Play.application().configuration().getInt("regal-api.fulltextTimeout",
+					300) * 1000L);
+
+	/**
+	 * if set, missing and outdated representations will be rendered on the
+	 * defined interval
+	 */
+	public static String representationTask = Play.application()
+			.configuration().getString("regal-api.representationTask");
+
+	/**
+	 * number of records or identifiers per page of the built-in oai interface
+	 */
+	public static int oaiPageSize =
+			Play.application().configuration().getInt("regal-api.oaiPageSize", 100);
+
+	/**
+	 * if true, /resource lists are built from the private elasticsearch index
+	 * instead of reading every listed object from Fedora
+	 */
+	public static boolean listFromIndex = Play.application().configuration()
+			.getBoolean("regal-api.listFromIndex", true);
+
+	/**
+	 * Number of threads that read and process chunks in bulk actions
+	 */
+	public static int bulkParallelism = Play.application().configuration()
+			.getInt("regal-api.bulkParallelism", 4);
+
+	/**
+	 * Number of threads that write chunked responses
+	 */
+	public static int streamParallelism = Play.application().configuration()
+			.getInt("regal-api.streamParallelism", 8);
+
+	/**
+	 * Number of chunked responses that may wait for a thread, more are
+	 * rejected with 503
+	 */
+	public static int streamQueueSize = Play.application().configuration()
+			.getInt("regal-api.streamQueueSize", 16);
+
+	/**
+	 * Number of threads that read the parts of object trees
+	 */
+	public static int treeParallelism = Play.application().configuration()
+			.getInt("regal-api.treeParallelism", 8);
+
+	/**
+	 * Maximum number of nodes loaded for one object tree, 0 for no limit
+	 */
+	public static int treeMaxSize = Play.application().configuration()
+			.getInt("regal-api.treeMaxSize", 0);
+
+	/**
+	 * Parents, children and subtree aggregates of the objects read recently
+	 */
+	public static HierarchyIndex hierarchy = new HierarchyIndex(
+			Play.application().configuration()
+					.getInt("regal-api.hierarchyMaxNodes", 1000000),
+			Play.application().configuration()
+					.getInt("regal-api.hierarchyMaxAge", 3600) * 1000L);
+
+	/**
+	 * Titles of nodes, used to label links to parts and parents
+	 */
+	public static TitleIndex titles = new TitleIndex(Play.application()
+			.configuration().getInt("regal-api.titleIndexSize", 100000));
+
+	/**
+	 * Runs urn, doi, oai and crawler checks of the status pages
+	 */
+	public static StatusChecker statusChecker = new StatusChecker(
+			Play.application().configuration().getInt("regal-api.statusParallelism",
+					16),
+			Play.application().configuration()
+					.getInt("regal-api.statusHostConcurrency", 4),
+			Play.application().configuration().getInt("regal-api.statusTimeout",
+					2000),
+			Play.application().configuration().getInt("regal-api.statusCacheTtl",
+					600) * 1000L);
+
+	/**
+	 * Limits the concurrent Fedora and elasticsearch calls of all bulk actions,
+	 * separately for each backend
+	 */
+	public static AdaptiveThrottle bulkThrottle = new AdaptiveThrottle(
+			Play.application().configuration().getInt("regal-api.bulkBudget", 8),
+			Play.application().configuration()
+					.getInt("regal-api.bulkInteractivePercent", 50) / 100.0);
+
 	/**
 	 * A urn subnamespace that belongs to this application
 	 */
@@ -239,10 +420,14 @@ public class Globals {
 					.getString("regal-api.ipWhiteList").split("\\s*,[,\\s]*"));
 
 	/**
-	 * This formatter shall be used wherever dates are written
+	 * This format shall be used wherever dates are written. SimpleDateFormat
+	 * is not thread-safe, so every call returns a new instance.
+	 *
+	 * @return a new formatter
 	 */
-	public static SimpleDateFormat dateFormat =
-			new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+	public static SimpleDateFormat dateFormat() {
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+	}
 
 	/**
 	 * the string for the mab field
@@ -27,6 +27,7 @@ import java.io.StringWriter;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -36,6 +37,7 @@ import java.util.stream.Collectors;
 
 import javax.xml.bind.annotation.XmlRootElement;
 
+import org.openrdf.model.Statement;
 import org.openrdf.rio.RDFFormat;
 
 import archive.fedora.RdfUtils;
@@ -69,6 +71,7 @@ public class Node implements java.io.Serializable {
 	private List<Transformer> transformer = new Vector<Transformer>();
 
 	private String metadata = null;
+	private transient Collection<Statement> metadataStatements = null;
 	private String seq = null;
 
 	private String conf = null;
@@ -579,9 +582,28 @@ public class Node implements java.io.Serializable {
 	 */
 	public Node setMetadata(String metadata) {
 		this.metadata = metadata;
+		this.metadataStatements = null;
 		return this;
 	}
 
+	/**
+	 * The metadata is parsed on the first call. Later calls return the same
+	 * statements until the metadata is set again.
+	 *
+	 * @return the n-triple metadata as parsed statements
+	 */
+	@JsonIgnore()
+	public synchronized Collection<Statement> getMetadataStatements() {
+		if (metadataStatements == null) {
+			metadataStatements = metadata == null ? new ArrayList<Statement>()
+					: RdfUtils.readRdfToGraph(
+							new ByteArrayInputStream(
+									metadata.getBytes(StandardCharsets.UTF_8)),
+							RDFFormat.NTRIPLES, "");
+		}
+		return metadataStatements;
+	}
+
 	/**
 	 * @return the content of seq datastream in a string
 	 */
@@ -1178,6 +1200,19 @@ public class Node implements java.io.Serializable {
 		return objectTimestamp;
 	}
 
+	/**
+	 * @return the json of {@link #toString()} plus the fields that are only
+	 *         kept in the private index, like the oai sets
+	 */
+	public String toIndexString() {
+		try {
+			return JsonUtil.mapper()
+					.writeValueAsString(new JsonMapper(this).getIndexLd());
+		} catch (Exception e) {
+			throw new HttpArchiveException(500, e);
+		}
+	}
+
 	/**
 	 * @return a map representing the rdf data on this object
 	 */
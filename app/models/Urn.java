@@ -19,7 +19,6 @@ package models;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Scanner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -30,6 +29,8 @@ import java.util.regex.Pattern;
  */
 @SuppressWarnings("javadoc")
 public class Urn implements java.io.Serializable {
+	private static final int MAX_REDIRECTS = 10;
+
 	String resolver = Globals.urnResolverAddress;
 	String urn = null;
 	String resolvesTo = "NONE";
@@ -44,20 +45,25 @@ public class Urn implements java.io.Serializable {
 		this.urn = urn;
 	}
 
+	/**
+	 * Checks the urn at the resolver. All connections are opened by
+	 * {@link Globals#statusChecker}, so they obey its timeouts.
+	 * 
+	 * @param httpUriOfResource the url the urn should resolve to
+	 */
 	public void init(String httpUriOfResource) {
 		try {
 
 			if (getFinalURL(resolver + urn).toString().equals(httpUriOfResource)) {
 				success = true;
 			} else {
-				URL url = new URL(resolver + urn);
-				HttpURLConnection con = (HttpURLConnection) url.openConnection();
-				con.setReadTimeout(1000 * 2);
-				HttpURLConnection.setFollowRedirects(true);
+				HttpURLConnection con = Globals.statusChecker.open(resolver + urn);
+				con.setInstanceFollowRedirects(true);
 				con.connect();
 				resolverStatus = con.getResponseCode();
-				resolvesTo =
-						parseAdressFromHtml(con.getInputStream(), httpUriOfResource);
+				try (InputStream in = con.getInputStream()) {
+					resolvesTo = parseAdressFromHtml(in, httpUriOfResource);
+				}
 				if (resolvesTo.equals(httpUriOfResource))
 					success = true;
 			}
@@ -67,21 +73,24 @@ public class Urn implements java.io.Serializable {
 	}
 
 	public String getFinalURL(String url) throws IOException {
-		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-		con.setReadTimeout(1000 * 2);
-		con.setInstanceFollowRedirects(false);
-		con.connect();
-		con.getInputStream();
-		if (con.getResponseCode() == HttpURLConnection.HTTP_MOVED_PERM
-				|| con.getResponseCode() == HttpURLConnection.HTTP_MOVED_TEMP
-				|| con.getResponseCode() == 307 || con.getResponseCode() == 303) {
-			String redirectUrl = con.getHeaderField("Location");
-
-			return getFinalURL(redirectUrl);
+		String current = url;
+		for (int hop = 0; hop < MAX_REDIRECTS; hop++) {
+			HttpURLConnection con = Globals.statusChecker.open(current);
+			con.setInstanceFollowRedirects(false);
+			con.connect();
+			con.getInputStream().close();
+			int code = con.getResponseCode();
+			if (code == HttpURLConnection.HTTP_MOVED_PERM
+					|| code == HttpURLConnection.HTTP_MOVED_TEMP || code == 307
+					|| code == 303) {
+				current = con.getHeaderField("Location");
+				continue;
+			}
+			resolverStatus = code;
+			resolvesTo = con.getURL().toString();
+			return current;
 		}
-		resolverStatus = con.getResponseCode();
-		resolvesTo = con.getURL().toString();
-		return url;
+		throw new IOException("Too many redirects: " + url);
 	}
 
 	private String parseAdressFromHtml(InputStream inputStream,
@@ -0,0 +1,213 @@
+package actions;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import base.BaseModelTest;
+import helper.HttpArchiveException;
+import models.BulkJob;
+import models.Globals;
+import models.Node;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class BulkActionTest extends BaseModelTest {
+
+	static final int SIZE = 250;
+
+	/**
+	 * A namespace of {@value #SIZE} pids. Broken pids can never be read, flaky
+	 * ones only when they are read again.
+	 */
+	static class FakeRead extends Read {
+		final Set<String> broken = new TreeSet<String>();
+		final Set<String> flaky = new TreeSet<String>();
+		final Map<String, AtomicInteger> reloads =
+				new ConcurrentHashMap<String, AtomicInteger>();
+
+		@Override
+		public Iterator<String> streamRepoNamespace(String namespace,
+				String after) {
+			List<String> pids = new ArrayList<String>();
+			for (int i = 1; i <= SIZE; i++) {
+				String pid = pid(i);
+				if (after == null || pid.compareTo(after) > 0)
+					pids.add(pid);
+			}
+			return pids.iterator();
+		}
+
+		@Override
+		public List<Node> getNodes(List<String> ids,
+				BiConsumer<String, Exception> failed) {
+			List<Node> result = new ArrayList<Node>();
+			for (String id : ids) {
+				if (broken.contains(id) || flaky.contains(id))
+					failed.accept(id, new HttpArchiveException(500, id));
+				else
+					result.add(new Node(id));
+			}
+			return result;
+		}
+
+		@Override
+		public Node reloadNode(String pid) {
+			reloads.computeIfAbsent(pid, p -> new AtomicInteger())
+					.incrementAndGet();
+			if (broken.contains(pid))
+				throw new HttpArchiveException(500, pid);
+			return new Node(pid);
+		}
+	}
+
+	List<BulkJob> jobs = new ArrayList<BulkJob>();
+
+	@After
+	public void tearDown() {
+		for (BulkJob job : jobs)
+			new File(new File(Globals.localDataDir, "jobs"), job.getId() + ".json")
+					.delete();
+	}
+
+	static String pid(int i) {
+		return String.format("test:%03d", i);
+	}
+
+	BulkJob job() {
+		BulkJob job = new BulkJob("test-" + System.nanoTime(),
+				BulkJobs.INDEX_ALL, "test", "test", null);
+		jobs.add(job);
+		return job;
+	}
+
+	static List<String> failedPids(BulkJob job) {
+		return job.getFailures().stream().map(f -> f.get("pid")).sorted()
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void failuresAreRetriedAndCounted() {
+		FakeRead read = new FakeRead();
+		read.broken.add(pid(7));
+		read.broken.add(pid(123));
+		read.flaky.add(pid(50));
+		Set<String> processed = Collections.synchronizedSet(new TreeSet<String>());
+		BulkAction action = new BulkAction();
+		action.read = read;
+		BulkJob job = job();
+		action.bulkJob(job, nodes -> {
+			if (nodes.stream().anyMatch(n -> pid(200).equals(n.getPid())))
+				throw new HttpArchiveException(500, "cannot process");
+			nodes.forEach(n -> processed.add(n.getPid()));
+			return "";
+		});
+		Assert.assertEquals(BulkJob.FINISHED, job.getState());
+		Assert.assertEquals(SIZE, job.getTotal());
+		Assert.assertEquals(SIZE, job.getCursor());
+		Assert.assertEquals(pid(SIZE), job.getLastPid());
+		// flaky pids are processed after reading them again
+		Assert.assertTrue(processed.contains(pid(50)));
+		Assert.assertEquals(1, read.reloads.get(pid(50)).get());
+		// the other nodes of a failing chunk are processed one by one
+		Assert.assertTrue(processed.contains(pid(150)));
+		Assert.assertEquals(SIZE - 3, processed.size());
+		Assert.assertEquals(2, read.reloads.get(pid(7)).get());
+		Assert.assertEquals(3, job.getErrorCount());
+		Assert.assertEquals(3, action.errorCount.get());
+		Assert.assertEquals(Arrays.asList(pid(7), pid(123), pid(200)),
+				failedPids(job));
+	}
+
+	@Test
+	public void resumedJobsStartAfterTheLastPid() {
+		FakeRead read = new FakeRead();
+		List<String> processed = Collections.synchronizedList(
+				new ArrayList<String>());
+		BulkJob job = job();
+		job.setCursor(100);
+		job.setLastPid(pid(100));
+		job.addFailure(pid(3), "earlier failure");
+		BulkAction action = new BulkAction();
+		action.read = read;
+		action.bulkJob(job, nodes -> {
+			nodes.forEach(n -> processed.add(n.getPid()));
+			return "";
+		});
+		Collections.sort(processed);
+		Assert.assertEquals(SIZE - 100, processed.size());
+		Assert.assertEquals(pid(101), processed.get(0));
+		Assert.assertEquals(BulkJob.FINISHED, job.getState());
+		Assert.assertEquals(SIZE, job.getTotal());
+		Assert.assertEquals(SIZE, job.getCursor());
+		Assert.assertEquals(SIZE, job.getProcessed());
+		Assert.assertEquals(pid(SIZE), job.getLastPid());
+		// failures of the earlier run are kept
+		Assert.assertEquals(1, job.getErrorCount());
+	}
+
+	@Test
+	public void jobsWithoutLastPidStartOver() {
+		BulkJob job = job();
+		job.setCursor(100);
+		BulkAction action = new BulkAction();
+		action.read = new FakeRead();
+		AtomicInteger count = new AtomicInteger();
+		action.bulkJob(job, nodes -> {
+			count.addAndGet(nodes.size());
+			return "";
+		});
+		Assert.assertEquals(SIZE, count.get());
+		Assert.assertEquals(SIZE, job.getCursor());
+	}
+
+	@Test
+	public void cursorOnlyAdvancesOverContiguousChunks() {
+		BulkJob job = new BulkJob("test", BulkJobs.INDEX_ALL, "test", "test",
+				null);
+		job.chunkDone(100, 200, pid(200));
+		Assert.assertEquals(0, job.getCursor());
+		Assert.assertNull(job.getLastPid());
+		Assert.assertEquals(100, job.getProcessed());
+		job.chunkDone(200, 250, pid(250));
+		Assert.assertEquals(0, job.getCursor());
+		job.chunkDone(0, 100, pid(100));
+		Assert.assertEquals(250, job.getCursor());
+		Assert.assertEquals(pid(250), job.getLastPid());
+		Assert.assertEquals(250, job.getProcessed());
+	}
+}
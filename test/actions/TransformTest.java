@@ -0,0 +1,55 @@
+package actions;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import base.BaseModelTest;
+import helper.HierarchyIndex;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TransformTest extends BaseModelTest {
+
+	@Test
+	public void versionsStartWithTheRendererVersion() {
+		Assert.assertEquals(2, Transform.rendererVersion("aleph"));
+		Assert.assertEquals(0, Transform.rendererVersion("unknown"));
+		Assert.assertEquals("r1-ff",
+				Transform.version("oaidc", 255, null, "test:1"));
+		Assert.assertEquals("r2-ff",
+				Transform.version("aleph", 255, null, "test:1"));
+	}
+
+	@Test
+	public void metsVersionsFollowTheTree() {
+		HierarchyIndex tree = new HierarchyIndex();
+		tree.put("test:1", null, "journal", 255, false);
+		tree.put("test:2", "test:1", "file", 256, true);
+		tree.markComplete("test:1");
+		Assert.assertEquals("r1-100-1",
+				Transform.version("mets", 255, tree, "test:1"));
+		tree.put("test:3", "test:1", "file", 257, true);
+		Assert.assertEquals("r1-101-2",
+				Transform.version("mets", 255, tree, "test:1"));
+	}
+}
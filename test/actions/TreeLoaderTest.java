@@ -0,0 +1,155 @@
+package actions;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import static archive.fedora.FedoraVocabulary.HAS_PART;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import base.BaseModelTest;
+import helper.HttpArchiveException;
+import models.Link;
+import models.Node;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TreeLoaderTest extends BaseModelTest {
+
+	Map<String, Node> repository = new HashMap<String, Node>();
+
+	Function<String, Node> reader = pid -> {
+		if (pid.startsWith("broken:"))
+			throw new HttpArchiveException(500, "Fedora down");
+		Node node = repository.get(pid);
+		if (node == null)
+			throw new HttpArchiveException(404, pid + " not found");
+		return node;
+	};
+
+	@Before
+	public void setUp() {
+		repository.clear();
+	}
+
+	private Node node(String pid, String... parts) {
+		Node node = new Node(pid);
+		for (String part : parts) {
+			node.addRelation(new Link(HAS_PART, part, false));
+		}
+		repository.put(pid, node);
+		return node;
+	}
+
+	private static List<String> pids(List<Node> nodes) {
+		return nodes.stream().map(Node::getPid).collect(Collectors.toList());
+	}
+
+	@Test
+	public void treeIsLoadedDepthFirst() {
+		Node root = node("test:1", "test:2", "test:3");
+		node("test:2", "test:4");
+		node("test:3");
+		node("test:4");
+		TreeLoader loader = new TreeLoader(reader, 0, 0);
+		Assert.assertEquals(Arrays.asList("test:1", "test:2", "test:4", "test:3"),
+				pids(loader.load(root)));
+		Assert.assertTrue(loader.isComplete());
+		Assert.assertEquals(Arrays.asList("test:4"),
+				pids(loader.getChildren("test:2")));
+	}
+
+	@Test
+	public void cyclesAreLoadedOnce() {
+		Node root = node("test:1", "test:2");
+		node("test:2", "test:3", "test:1");
+		node("test:3", "test:2");
+		TreeLoader loader = new TreeLoader(reader, 0, 0);
+		Assert.assertEquals(Arrays.asList("test:1", "test:2", "test:3"),
+				pids(loader.load(root)));
+		Assert.assertTrue(loader.isComplete());
+	}
+
+	@Test
+	public void unreadablePartsAreMarkedAsFailed() {
+		Node root = node("test:1", "test:2", "broken:1");
+		node("test:2");
+		TreeLoader loader = new TreeLoader(reader, 0, 0);
+		List<Node> tree = loader.load(root);
+		Assert.assertEquals(Arrays.asList("test:1", "test:2", "broken:1"),
+				pids(tree));
+		Assert.assertTrue(loader.isFailed("broken:1"));
+		Assert.assertFalse(loader.isFailed("test:2"));
+		Assert.assertFalse(loader.isComplete());
+	}
+
+	@Test
+	public void strictLoadSkipsMissingParts() {
+		Node root = node("test:1", "test:2", "missing:1");
+		node("test:2");
+		TreeLoader loader = new TreeLoader(reader, 0, 0, true);
+		Assert.assertEquals(Arrays.asList("test:1", "test:2"),
+				pids(loader.load(root)));
+		Assert.assertTrue(loader.isComplete());
+	}
+
+	@Test
+	public void strictLoadFailsOnUnreadableParts() {
+		Node root = node("test:1", "test:2");
+		node("test:2", "broken:1");
+		try {
+			new TreeLoader(reader, 0, 0, true).load(root);
+			Assert.fail("Unreadable part not reported");
+		} catch (HttpArchiveException e) {
+			Assert.assertEquals(500, e.getCode());
+		}
+	}
+
+	@Test
+	public void loadStopsAtMaxSize() {
+		Node root = node("test:1", "test:2", "test:3", "test:4");
+		node("test:2");
+		node("test:3");
+		node("test:4");
+		TreeLoader loader = new TreeLoader(reader, 0, 3);
+		Assert.assertEquals(3, loader.load(root).size());
+		Assert.assertFalse(loader.isComplete());
+	}
+
+	@Test
+	public void loadStopsAtMaxDepth() {
+		Node root = node("test:1", "test:2");
+		node("test:2", "test:3");
+		node("test:3");
+		TreeLoader loader = new TreeLoader(reader, 1, 0);
+		Assert.assertEquals(Arrays.asList("test:1", "test:2"),
+				pids(loader.load(root)));
+		Assert.assertNull(loader.getChildren("test:2"));
+	}
+}
@@ -0,0 +1,121 @@
+package actions;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class UnitOfWorkTest {
+
+	Consumer<String> original = null;
+	List<String> reindexed = new ArrayList<String>();
+	List<Boolean> deferredWhileReindexing = new ArrayList<Boolean>();
+
+	@Before
+	public void setUp() {
+		original = UnitOfWork.reindexer;
+		UnitOfWork.reindexer = pid -> {
+			// a write made while reindexing must be indexed at once
+			deferredWhileReindexing.add(UnitOfWork.markDirty(pid + "-write"));
+			reindexed.add(pid);
+		};
+	}
+
+	@After
+	public void tearDown() {
+		while (UnitOfWork.markDirty("cleanup")) {
+			UnitOfWork.discard("cleanup");
+			UnitOfWork.end();
+		}
+		UnitOfWork.reindexer = original;
+	}
+
+	@Test
+	public void writesAreReindexedOnceAtTheEnd() {
+		UnitOfWork.begin();
+		Assert.assertTrue(UnitOfWork.markDirty("test:1"));
+		Assert.assertTrue(UnitOfWork.markDirty("test:2"));
+		Assert.assertTrue(UnitOfWork.markDirty("test:1"));
+		Assert.assertTrue(reindexed.isEmpty());
+		UnitOfWork.end();
+		Assert.assertEquals(Arrays.asList("test:1", "test:2"), reindexed);
+		Assert.assertFalse(UnitOfWork.markDirty("test:3"));
+	}
+
+	@Test
+	public void flushIndexReindexesBeforeARead() {
+		UnitOfWork.begin();
+		UnitOfWork.markDirty("test:1");
+		UnitOfWork.flushIndex();
+		Assert.assertEquals(Arrays.asList("test:1"), reindexed);
+		Assert.assertEquals(Arrays.asList(false), deferredWhileReindexing);
+		// the unit of work is still active and defers the next write
+		Assert.assertTrue(UnitOfWork.markDirty("test:2"));
+		UnitOfWork.flushIndex();
+		UnitOfWork.flushIndex();
+		UnitOfWork.end();
+		Assert.assertEquals(Arrays.asList("test:1", "test:2"), reindexed);
+	}
+
+	@Test
+	public void onlyTheOutermostEndReindexes() {
+		UnitOfWork.begin();
+		UnitOfWork.begin();
+		UnitOfWork.markDirty("test:1");
+		UnitOfWork.end();
+		Assert.assertTrue(reindexed.isEmpty());
+		UnitOfWork.end();
+		Assert.assertEquals(Arrays.asList("test:1"), reindexed);
+	}
+
+	@Test
+	public void discardedNodesAreNotReindexed() {
+		UnitOfWork.begin();
+		UnitOfWork.markDirty("test:1");
+		UnitOfWork.markDirty("test:2");
+		UnitOfWork.discard("test:1");
+		UnitOfWork.end();
+		Assert.assertEquals(Arrays.asList("test:2"), reindexed);
+	}
+
+	@Test
+	public void aFailedReindexDoesNotStopTheOthers() {
+		UnitOfWork.reindexer = pid -> {
+			if ("test:1".equals(pid))
+				throw new RuntimeException("index down");
+			reindexed.add(pid);
+		};
+		UnitOfWork.begin();
+		UnitOfWork.markDirty("test:1");
+		UnitOfWork.markDirty("test:2");
+		UnitOfWork.end();
+		Assert.assertEquals(Arrays.asList("test:2"), reindexed);
+	}
+}
@@ -0,0 +1,112 @@
+package archive.fedora;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class PidIteratorTest {
+
+	/**
+	 * Answers page queries like the resource index does, from a sorted set
+	 */
+	static class Index implements PidIterator.Pages {
+		final TreeSet<String> subjects = new TreeSet<String>();
+		int fetches = 0;
+
+		Index(String... pids) {
+			for (String pid : pids)
+				subjects.add("info:fedora/" + pid);
+		}
+
+		@Override
+		public List<String> fetch(String after, String before, int limit) {
+			fetches++;
+			List<String> page = new ArrayList<String>();
+			for (String subject : subjects.subSet(after, false, before, false)) {
+				if (page.size() == limit)
+					break;
+				page.add(subject);
+			}
+			return page;
+		}
+	}
+
+	static List<String> drain(PidIterator it) {
+		List<String> result = new ArrayList<String>();
+		while (it.hasNext())
+			result.add(it.next());
+		return result;
+	}
+
+	@Test
+	public void staysInsideTheNamespace() {
+		Index index = new Index("tes:1", "test:1", "test:2", "test2:1", "tesu:1");
+		Assert.assertEquals(Arrays.asList("test:1", "test:2"),
+				drain(new PidIterator(index, 10, "test", null)));
+	}
+
+	@Test
+	public void resumesAfterAPid() {
+		Index index = new Index("test:1", "test:2", "test:3", "test:4");
+		Assert.assertEquals(Arrays.asList("test:3", "test:4"),
+				drain(new PidIterator(index, 10, "test", "test:2")));
+	}
+
+	@Test
+	public void readsAllPages() {
+		Index index = new Index("test:1", "test:2", "test:3", "test:4",
+				"test:5");
+		Assert.assertEquals(
+				Arrays.asList("test:1", "test:2", "test:3", "test:4", "test:5"),
+				drain(new PidIterator(index, 2, "test", null)));
+		// two full pages and a short one that ends the iteration
+		Assert.assertEquals(3, index.fetches);
+	}
+
+	@Test
+	public void purgesDoNotShiftPages() {
+		Index index = new Index("test:1", "test:2", "test:3", "test:4",
+				"test:5", "test:6");
+		PidIterator it = new PidIterator(index, 2, "test", null);
+		List<String> result = new ArrayList<String>();
+		while (it.hasNext()) {
+			String pid = it.next();
+			result.add(pid);
+			// purge what has been processed, as a bulk delete would
+			index.subjects.remove("info:fedora/" + pid);
+		}
+		Assert.assertEquals(Arrays.asList("test:1", "test:2", "test:3",
+				"test:4", "test:5", "test:6"), result);
+	}
+
+	@Test(expected = java.util.NoSuchElementException.class)
+	public void emptyNamespace() {
+		new PidIterator(new Index("other:1"), 10, "test", null).next();
+	}
+}
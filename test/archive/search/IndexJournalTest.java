@@ -0,0 +1,159 @@
+package archive.search;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import base.BaseModelTest;
+import models.Node;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class IndexJournalTest extends BaseModelTest {
+
+	File file = null;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("index-journal", ".log");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void committedEntriesAreNotPending() {
+		IndexJournal journal = new IndexJournal(file);
+		IndexJournal.Entry entry =
+				journal.append(IndexJournal.INDEX, "test:1", "test", "monograph");
+		Assert.assertEquals(1, journal.size());
+		journal.commit(entry);
+		Assert.assertEquals(0, journal.size());
+		journal.close();
+	}
+
+	@Test
+	public void failedEntriesSurviveRestart() {
+		IndexJournal journal = new IndexJournal(file);
+		IndexJournal.Entry entry =
+				journal.append(IndexJournal.REMOVE, "test:1", "test", "file");
+		entry.fail();
+		journal.commit(entry);
+		journal.close();
+		journal = new IndexJournal(file);
+		Assert.assertEquals(1, journal.getPending().size());
+		Assert.assertEquals(IndexJournal.REMOVE,
+				journal.getPending().get(0).getOp());
+		journal.close();
+	}
+
+	@Test
+	public void newerEntrySupersedesOlderEntries() {
+		IndexJournal journal = new IndexJournal(file);
+		IndexJournal.Entry first =
+				journal.append(IndexJournal.INDEX, "test:1", "test", "monograph");
+		first.fail();
+		journal.commit(first);
+		IndexJournal.Entry second =
+				journal.append(IndexJournal.INDEX, "test:1", "test", "monograph");
+		journal.commit(second);
+		Assert.assertFalse(journal.isPending("test:1"));
+		journal.close();
+	}
+
+	@Test
+	public void corruptLastLineIsSkipped() throws IOException {
+		IndexJournal journal = new IndexJournal(file);
+		IndexJournal.Entry entry =
+				journal.append(IndexJournal.INDEX, "test:1", "test", "monograph");
+		entry.fail();
+		journal.commit(entry);
+		journal.close();
+		Files.write(file.toPath(), "P\t2\tind".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		journal = new IndexJournal(file);
+		Assert.assertEquals(1, journal.size());
+		journal.append(IndexJournal.INDEX, "test:2", "test", "monograph");
+		journal.close();
+		journal = new IndexJournal(file);
+		Assert.assertEquals(2, journal.size());
+		journal.close();
+	}
+
+	@Test
+	public void bulkEntriesAreCommittedTogether() {
+		IndexJournal journal = new IndexJournal(file);
+		Node first = new Node("test:1");
+		first.setContentType("monograph");
+		Node second = new Node("test:2");
+		second.setContentType("file");
+		List<IndexJournal.Entry> entries = journal.appendAll(IndexJournal.INDEX,
+				"test-20160101", Arrays.asList(first, second));
+		Assert.assertEquals(2, journal.size());
+		Assert.assertEquals("test-20160101", entries.get(1).getNamespace());
+		Assert.assertEquals("file", entries.get(1).getType());
+		entries.get(1).fail();
+		journal.commitAll(entries);
+		journal.close();
+		journal = new IndexJournal(file);
+		Assert.assertFalse(journal.isPending("test:1"));
+		Assert.assertTrue(journal.isPending("test:2"));
+		journal.close();
+	}
+
+	@Test
+	public void concurrentAppendsAreAllWritten() throws InterruptedException {
+		IndexJournal journal = new IndexJournal(file);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 200; i++) {
+			String pid = "test:" + i;
+			threads.execute(() -> {
+				IndexJournal.Entry entry =
+						journal.append(IndexJournal.INDEX, pid, "test", "monograph");
+				entry.fail();
+				journal.commit(entry);
+			});
+		}
+		threads.shutdown();
+		Assert.assertTrue(threads.awaitTermination(30, TimeUnit.SECONDS));
+		journal.close();
+		journal = new IndexJournal(file);
+		Assert.assertEquals(200, journal.size());
+		journal.close();
+	}
+}
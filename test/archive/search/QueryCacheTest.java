@@ -0,0 +1,94 @@
+package archive.search;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class QueryCacheTest {
+
+	SearchHits hits = InternalSearchHits.empty();
+
+	String[] ab = { "a", "b" };
+
+	@Test
+	public void equalQueriesHaveEqualKeys() {
+		Assert.assertEquals(
+				QueryCache.key(new String[] { "a", "b" }, " title:x  AND y", 0, 10,
+						null, null),
+				QueryCache.key(new String[] { "b", "a" }, "title:x AND y ", 0, 10,
+						null, null));
+	}
+
+	@Test
+	public void writeInvalidatesCache() {
+		QueryCache cache = new QueryCache(10);
+		long[] generations = cache.getGenerations(ab);
+		cache.put("q", ab, generations, hits);
+		Assert.assertSame(hits, cache.get("q"));
+		cache.invalidate("b");
+		Assert.assertNull(cache.get("q"));
+	}
+
+	@Test
+	public void writeToOtherIndexKeepsCache() {
+		QueryCache cache = new QueryCache(10);
+		cache.put("q", ab, cache.getGenerations(ab), hits);
+		cache.invalidate("c");
+		Assert.assertSame(hits, cache.get("q"));
+	}
+
+	@Test
+	public void invalidateAllClearsCache() {
+		QueryCache cache = new QueryCache(10);
+		long[] generations = cache.getGenerations(ab);
+		cache.put("q", ab, generations, hits);
+		cache.invalidate();
+		Assert.assertNull(cache.get("q"));
+		cache.put("q", ab, generations, hits);
+		Assert.assertNull(cache.get("q"));
+	}
+
+	@Test
+	public void resultOfConcurrentWriteIsNotCached() {
+		QueryCache cache = new QueryCache(10);
+		long[] generations = cache.getGenerations(ab);
+		cache.invalidate("a");
+		cache.put("q", ab, generations, hits);
+		Assert.assertNull(cache.get("q"));
+	}
+
+	@Test
+	public void cacheIsBounded() {
+		QueryCache cache = new QueryCache(2);
+		long[] generations = cache.getGenerations(ab);
+		cache.put("a", ab, generations, hits);
+		cache.put("b", ab, generations, hits);
+		cache.put("c", ab, generations, hits);
+		Assert.assertNull(cache.get("a"));
+		Assert.assertEquals(2, cache.getStatus().get("size"));
+		Assert.assertEquals(1L, cache.getStatus().get("evictions"));
+	}
+}
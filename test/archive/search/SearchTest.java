@@ -19,6 +19,7 @@ package archive.search;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -160,6 +161,22 @@ public class SearchTest extends BaseModelTest {
 		Assert.assertEquals(1, list.size());
 	}
 
+	@Test
+	public void testMultiGet() {
+		search.index("test", "monograph", "test:1", edoweb2606976);
+		search.index("test", "monograph", "test:2", edoweb2606976);
+		List<Map<String, Object>> result = search.multiGet(
+				Arrays.asList("test:1", "test:3", "test:2"), null,
+				new String[] { "@context" });
+		Assert.assertEquals(3, result.size());
+		Assert.assertNotNull(result.get(0));
+		Assert.assertNull(result.get(1));
+		Assert.assertTrue(result.get(2).containsKey("@graph"));
+		Assert.assertFalse(result.get(2).containsKey("@context"));
+		search.delete("test:1", "test", "monograph");
+		search.delete("test:2", "test", "monograph");
+	}
+
 	// @Test
 	// public void mappingTest() {
 	// search.index("test", "monograph", "edoweb:3273325", edoweb3273325);
@@ -61,8 +61,10 @@ public class MabConverterTest {
 		try (InputStream in = getResourceAsStream(id + ".nt")) {
 
 			ByteArrayOutputStream os = transformTestFile(in, recordId);
-			String str = os.toString();
-			System.out.println(str);
+			String str = os.toString("utf-8");
+			Assert.assertNotNull(XmlUtils.getDocument(str));
+			Assert.assertFalse(id + " is escaped twice", str.contains("&amp;amp;"));
+			Assert.assertFalse(id + " is escaped twice", str.contains("&amp;lt;"));
 			File output = File.createTempFile("mabconverterOut", "xml");
 			XmlUtils.newStringToFile(output, str);
 			File expected = File.createTempFile("mabconverter", "xml");
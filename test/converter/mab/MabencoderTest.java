@@ -0,0 +1,81 @@
+package converter.mab;
+
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import models.MabRecord;
+import models.MabRecord.Person;
+import models.MabRecord.PersonType;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class MabencoderTest {
+
+	static final String TITLE = "Tom & Jerry <\"Die Katze\"> 'Maus'";
+
+	static MabRecord record() {
+		MabRecord record = new MabRecord();
+		record.id = "HT0001";
+		record.hauptsachtitelVorlage = TITLE;
+		Person person = record.new Person("http://d-nb.info/gnd/1");
+		person.nameVerweisungsform = "M&uuml;ller <Hans>";
+		person.type = PersonType.natuerlichePerson;
+		record.personen.put(person.id, person);
+		return record;
+	}
+
+	static Document parse(byte[] xml) throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new ByteArrayInputStream(xml));
+	}
+
+	@Test
+	public void stringValuesAreEscapedOnce() throws Exception {
+		String xml = Mabencoder.getDefault().render(record()).toString("utf-8");
+		Assert.assertTrue(xml.contains("Tom &amp; Jerry &lt;"));
+		Assert.assertFalse(xml.contains("&amp;amp;"));
+		Assert.assertTrue(xml.contains("M&amp;uuml;ller &lt;Hans&gt;"));
+	}
+
+	@Test
+	public void renderedRecordIsWellFormed() throws Exception {
+		Document doc =
+				parse(Mabencoder.getDefault().render(record()).toByteArray());
+		Assert.assertTrue(doc.getDocumentElement().getTextContent().contains(TITLE));
+	}
+
+	@Test
+	public void recordsCanBeWrittenWithoutDeclaration() {
+		StringWriter out = new StringWriter();
+		Mabencoder.getDefault().write(record(), out);
+		Assert.assertFalse(out.toString().startsWith("<?xml"));
+		Assert.assertTrue(out.toString().contains("Tom &amp; Jerry"));
+	}
+}
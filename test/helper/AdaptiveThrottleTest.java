@@ -0,0 +1,112 @@
+package helper;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class AdaptiveThrottleTest {
+
+	@SuppressWarnings("unchecked")
+	static Map<String, Object> backend(AdaptiveThrottle throttle, String name) {
+		return (Map<String, Object>) ((Map<String, Object>) throttle.getStatus()
+				.get("backends")).get(name);
+	}
+
+	@Test
+	public void interactiveCallsPassThrough() {
+		AdaptiveThrottle throttle = new AdaptiveThrottle(4, 0.5);
+		Assert.assertEquals("ok", throttle.call("fedora", 1, () -> "ok"));
+		Assert.assertNull(backend(throttle, "fedora"));
+	}
+
+	@Test
+	public void bulkCallsAreCountedPerBackend() throws Exception {
+		AdaptiveThrottle throttle = new AdaptiveThrottle(4, 0.5);
+		AdaptiveThrottle.runAs(AdaptiveThrottle.DEFAULT_PRIORITY, () -> {
+			throttle.call("fedora", 1, () -> {
+				Assert.assertEquals(1, backend(throttle, "fedora").get("inFlight"));
+				return null;
+			});
+			return null;
+		});
+		Assert.assertEquals(0, backend(throttle, "fedora").get("inFlight"));
+		Assert.assertNull(backend(throttle, "elasticsearch"));
+	}
+
+	@Test
+	public void failuresOnlyLowerTheLimitOfTheirBackend() throws Exception {
+		AdaptiveThrottle throttle = new AdaptiveThrottle(8, 0.5);
+		AdaptiveThrottle.runAs(AdaptiveThrottle.DEFAULT_PRIORITY, () -> {
+			throttle.run("elasticsearch", () -> {
+			});
+			try {
+				throttle.run("fedora", () -> {
+					throw new HttpArchiveException(503, "busy");
+				});
+				Assert.fail();
+			} catch (HttpArchiveException e) {
+				Assert.assertEquals(503, e.getCode());
+			}
+			return null;
+		});
+		Assert.assertEquals(2, backend(throttle, "fedora").get("limit"));
+		Assert.assertEquals(4, backend(throttle, "elasticsearch").get("limit"));
+	}
+
+	@Test
+	public void missingObjectsDoNotLowerTheLimit() throws Exception {
+		AdaptiveThrottle throttle = new AdaptiveThrottle(8, 0.5);
+		AdaptiveThrottle.runAs(AdaptiveThrottle.DEFAULT_PRIORITY, () -> {
+			try {
+				throttle.run("fedora", () -> {
+					throw new HttpArchiveException(404, "gone");
+				});
+			} catch (HttpArchiveException e) {
+				// expected
+			}
+			return null;
+		});
+		Assert.assertEquals(4, backend(throttle, "fedora").get("limit"));
+	}
+
+	@Test
+	public void nestedCallsTakeNoSecondSlot() throws Exception {
+		AdaptiveThrottle throttle = new AdaptiveThrottle(1, 0);
+		String result =
+				AdaptiveThrottle.runAs(AdaptiveThrottle.DEFAULT_PRIORITY,
+						() -> throttle.call("fedora", 1,
+								() -> throttle.call("fedora", 1, () -> "inner")));
+		Assert.assertEquals("inner", result);
+	}
+
+	@Test
+	public void priorityIsRestoredAfterBulkWork() throws Exception {
+		AdaptiveThrottle throttle = new AdaptiveThrottle(4, 0.5);
+		AdaptiveThrottle.runAs(1, () -> null);
+		throttle.call("fedora", 1, () -> null);
+		Assert.assertNull(backend(throttle, "fedora"));
+	}
+}
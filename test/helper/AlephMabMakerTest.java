@@ -0,0 +1,83 @@
+package helper;
+
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import models.Node;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import base.BaseModelTest;
+import converter.mab.Mabencoder;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class AlephMabMakerTest extends BaseModelTest {
+
+	static final String TITLE = "Tom & Jerry <Katz und Maus>";
+
+	static Node node() {
+		Node node = new Node("test:1");
+		node.setMetadata("<info:fedora/test:1> <http://purl.org/dc/terms/title> "
+				+ "\"Tom & Jerry <Katz und Maus>\" .\n");
+		return node;
+	}
+
+	static Document parse(String xml) throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+				new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void recordIsEscapedOnce() throws Exception {
+		String xml = new AlephMabMaker().aleph(node());
+		Assert.assertTrue(xml.contains("Tom &amp; Jerry &lt;Katz und Maus&gt;"));
+		Assert.assertTrue(
+				parse(xml).getDocumentElement().getTextContent().contains(TITLE));
+	}
+
+	@Test
+	public void recordWrittenToWriterIsWellFormed() throws Exception {
+		StringWriter out = new StringWriter();
+		new AlephMabMaker().aleph(node(), out);
+		Assert.assertTrue(out.toString().startsWith(Mabencoder.XML_DECLARATION));
+		Assert.assertNotNull(parse(out.toString()).getDocumentElement());
+	}
+
+	@Test
+	public void emptyExportIsAnEmptyCollection() throws Exception {
+		StringWriter out = new StringWriter();
+		int count = new AlephMabMaker()
+				.aleph(Arrays.<String> asList().iterator(), out);
+		Assert.assertEquals(0, count);
+		Document doc = parse(out.toString());
+		Assert.assertEquals("collection", doc.getDocumentElement().getNodeName());
+	}
+}
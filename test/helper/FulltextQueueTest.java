@@ -0,0 +1,222 @@
+package helper;
+
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import models.Node;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class FulltextQueueTest {
+
+	class FakePublisher implements FulltextQueue.Publisher {
+		Map<String, Node> repository = new ConcurrentHashMap<String, Node>();
+		List<String> published = new CopyOnWriteArrayList<String>();
+		CountDownLatch extracting = new CountDownLatch(0);
+		CountDownLatch release = new CountDownLatch(0);
+
+		@Override
+		public Node read(String pid) {
+			return repository.get(pid);
+		}
+
+		@Override
+		public String source(Node node) {
+			extracting.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "{}";
+		}
+
+		@Override
+		public void index(Node node, String source) {
+			published.add(node.getPid() + "@" + node.getChecksum());
+		}
+	}
+
+	static Node pdf(String pid, String checksum) {
+		Node node = new Node(pid);
+		node.setContentType("file");
+		node.setMimeType("application/pdf");
+		node.setAccessScheme("public");
+		node.setChecksum(checksum);
+		return node;
+	}
+
+	static void await(FulltextQueue queue, long processed)
+			throws InterruptedException {
+		for (int i = 0; i < 200; i++) {
+			Map<String, Object> status = queue.getStatus();
+			if ((Long) status.get("published") + (Long) status.get("skipped")
+					+ (Long) status.get("failed") >= processed)
+				return;
+			Thread.sleep(50);
+		}
+		Assert.fail("queue not drained");
+	}
+
+	@Test
+	public void publishesPublicPdf() throws InterruptedException {
+		FakePublisher publisher = new FakePublisher();
+		FulltextQueue queue = new FulltextQueue(1, 10, 10, 60000, publisher);
+		publisher.repository.put("test:1", pdf("test:1", "a"));
+		Assert.assertTrue(queue.submit(pdf("test:1", "a")));
+		await(queue, 1);
+		Assert.assertEquals(1, publisher.published.size());
+		queue.shutdown();
+	}
+
+	@Test
+	public void skipsObjectMadePrivateWhileQueued() throws InterruptedException {
+		FakePublisher publisher = new FakePublisher();
+		publisher.extracting = new CountDownLatch(1);
+		publisher.release = new CountDownLatch(1);
+		FulltextQueue queue = new FulltextQueue(1, 10, 10, 60000, publisher);
+		publisher.repository.put("test:1", pdf("test:1", "a"));
+		queue.submit(pdf("test:1", "a"));
+		Assert.assertTrue(publisher.extracting.await(10, TimeUnit.SECONDS));
+		publisher.repository.get("test:1").setAccessScheme("private");
+		publisher.release.countDown();
+		await(queue, 1);
+		Assert.assertTrue(publisher.published.isEmpty());
+		Assert.assertEquals(1L, queue.getStatus().get("skipped"));
+		queue.shutdown();
+	}
+
+	@Test
+	public void skipsDeletedObject() throws InterruptedException {
+		FakePublisher publisher = new FakePublisher();
+		FulltextQueue queue = new FulltextQueue(1, 10, 10, 60000, publisher);
+		queue.submit(pdf("test:1", "a"));
+		await(queue, 1);
+		Assert.assertTrue(publisher.published.isEmpty());
+		queue.shutdown();
+	}
+
+	@Test
+	public void skipsObjectWithNewData() throws InterruptedException {
+		FakePublisher publisher = new FakePublisher();
+		publisher.extracting = new CountDownLatch(1);
+		publisher.release = new CountDownLatch(1);
+		FulltextQueue queue = new FulltextQueue(1, 10, 10, 60000, publisher);
+		publisher.repository.put("test:1", pdf("test:1", "a"));
+		queue.submit(pdf("test:1", "a"));
+		Assert.assertTrue(publisher.extracting.await(10, TimeUnit.SECONDS));
+		publisher.repository.put("test:1", pdf("test:1", "b"));
+		publisher.release.countDown();
+		await(queue, 1);
+		Assert.assertTrue(publisher.published.isEmpty());
+		queue.shutdown();
+	}
+
+	@Test
+	public void queuesPidOnceAndKeepsLatestNode() throws InterruptedException {
+		FakePublisher publisher = new FakePublisher();
+		publisher.extracting = new CountDownLatch(1);
+		publisher.release = new CountDownLatch(1);
+		FulltextQueue queue = new FulltextQueue(1, 10, 10, 60000, publisher);
+		publisher.repository.put("test:0", pdf("test:0", "a"));
+		queue.submit(pdf("test:0", "a"));
+		Assert.assertTrue(publisher.extracting.await(10, TimeUnit.SECONDS));
+		publisher.repository.put("test:1", pdf("test:1", "b"));
+		Assert.assertTrue(queue.submit(pdf("test:1", "a")));
+		Assert.assertTrue(queue.submit(pdf("test:1", "b")));
+		Assert.assertEquals(1, queue.getStatus().get("queued"));
+		publisher.release.countDown();
+		await(queue, 2);
+		Assert.assertTrue(publisher.published.contains("test:1@b"));
+		Assert.assertEquals(2, publisher.published.size());
+		queue.shutdown();
+	}
+
+	@Test
+	public void rejectsWhenFull() throws InterruptedException {
+		FakePublisher publisher = new FakePublisher();
+		publisher.extracting = new CountDownLatch(1);
+		publisher.release = new CountDownLatch(1);
+		FulltextQueue queue = new FulltextQueue(1, 1, 10, 60000, publisher);
+		publisher.repository.put("test:0", pdf("test:0", "a"));
+		Assert.assertTrue(queue.submit(pdf("test:0", "a")));
+		Assert.assertTrue(publisher.extracting.await(10, TimeUnit.SECONDS));
+		Assert.assertTrue(queue.submit(pdf("test:1", "a")));
+		Assert.assertFalse(queue.submit(pdf("test:2", "a")));
+		Assert.assertEquals(1L, queue.getStatus().get("rejected"));
+		publisher.release.countDown();
+		await(queue, 2);
+		Assert.assertTrue(queue.submit(pdf("test:2", "a")));
+		queue.shutdown();
+	}
+
+	@Test
+	public void verifiesChecksumOfExtractedData() throws Exception {
+		byte[] data = read(new File("test/resources/test.pdf"));
+		String md5 = hex(MessageDigest.getInstance("MD5").digest(data));
+		FulltextQueue queue =
+				new FulltextQueue(1, 1, 10, 60000, new FakePublisher());
+		Assert.assertTrue(
+				queue.extract(new ByteArrayInputStream(data), md5).verified);
+		Assert.assertFalse(queue.extract(new ByteArrayInputStream(data),
+				"00000000000000000000000000000000").verified);
+		Assert.assertFalse(
+				queue.extract(new ByteArrayInputStream(data), null).verified);
+		queue.shutdown();
+	}
+
+	static byte[] read(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,136 @@
+package helper;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class HierarchyIndexTest {
+
+	static HierarchyIndex tree() {
+		HierarchyIndex index = new HierarchyIndex();
+		index.put("test:1", null, "journal", 1000, false);
+		index.put("test:2", "test:1", "volume", 2000, false);
+		index.put("test:3", "test:2", "file", 3000, true);
+		index.put("test:4", "test:1", "file", 500, true);
+		index.markComplete("test:1");
+		return index;
+	}
+
+	@Test
+	public void aggregatesFollowPuts() {
+		HierarchyIndex index = tree();
+		Assert.assertEquals(3, index.countDescendants("test:1"));
+		Assert.assertEquals(3000, index.getNewest("test:1"));
+		Assert.assertEquals("test:3", index.getLastModified("test:1"));
+		index.put("test:4", "test:1", "file", 4000, true);
+		Assert.assertEquals(4000, index.getNewest("test:1"));
+		Assert.assertEquals(3000, index.getNewest("test:2"));
+	}
+
+	@Test
+	public void invalidateMarksAncestorsIncomplete() {
+		HierarchyIndex index = tree();
+		Assert.assertTrue(index.isComplete("test:1"));
+		index.invalidate("test:2");
+		Assert.assertFalse(index.isComplete("test:2"));
+		Assert.assertFalse(index.isComplete("test:1"));
+		Assert.assertTrue(index.isComplete("test:3"));
+		Assert.assertTrue(index.isComplete("test:4"));
+		index.markComplete("test:1");
+		Assert.assertTrue(index.isComplete("test:1"));
+	}
+
+	@Test
+	public void removeUpdatesAncestors() {
+		HierarchyIndex index = tree();
+		index.remove("test:3");
+		Assert.assertEquals(2, index.countDescendants("test:1"));
+		Assert.assertEquals(2000, index.getNewest("test:1"));
+	}
+
+	@Test
+	public void completeTreesExpire() throws InterruptedException {
+		HierarchyIndex index = new HierarchyIndex(0, 50);
+		index.put("test:1", null, "journal", 1000, false);
+		index.put("test:2", "test:1", "file", 2000, true);
+		index.markComplete("test:1");
+		Assert.assertTrue(index.isComplete("test:1"));
+		Thread.sleep(100);
+		Assert.assertFalse(index.isComplete("test:1"));
+		index.markComplete("test:1");
+		Assert.assertTrue(index.isComplete("test:1"));
+	}
+
+	@Test
+	public void leastRecentlyUsedTreesAreDropped() throws InterruptedException {
+		HierarchyIndex index = new HierarchyIndex(10, 0);
+		index.put("old:1", null, "journal", 1000, false);
+		index.put("old:2", "old:1", "file", 1000, true);
+		index.markComplete("old:1");
+		Thread.sleep(5);
+		index.put("new:1", null, "journal", 1000, false);
+		index.put("new:2", "new:1", "file", 1000, true);
+		index.markComplete("new:1");
+		Thread.sleep(5);
+		// using the old tree keeps it
+		Assert.assertTrue(index.isComplete("old:1"));
+		for (int i = 3; i < 10; i++) {
+			index.put("new:" + i, "new:1", "file", 1000 + i, true);
+		}
+		Assert.assertTrue(index.isComplete("old:1"));
+		Assert.assertEquals(1, index.countDescendants("old:1"));
+		Assert.assertFalse(index.isComplete("new:1"));
+		Assert.assertEquals(0, index.getNewest("new:2"));
+		Assert.assertTrue((Long) index.getStatus().get("evicted") > 0);
+		Assert.assertTrue((Integer) index.getStatus().get("ids") <= 10);
+	}
+
+	@Test
+	public void removedIdsAreReused() {
+		HierarchyIndex index = tree();
+		index.remove("test:4");
+		index.put("test:5", "test:1", "file", 5000, true);
+		Assert.assertEquals(4, index.getStatus().get("ids"));
+		Assert.assertEquals(5000, index.getNewest("test:1"));
+		Assert.assertEquals("test:5", index.getLastModified("test:1"));
+	}
+
+	@Test
+	public void pinnedTreesAreNotDroppedWhileLoading() {
+		HierarchyIndex index = new HierarchyIndex(10, 0);
+		index.pin("big:0");
+		index.put("big:0", null, "journal", 1000, false);
+		for (int i = 1; i < 12; i++) {
+			index.put("big:" + i, "big:0", "file", 1000 + i, true);
+		}
+		index.markComplete("big:0");
+		index.unpin("big:0");
+		Assert.assertTrue(index.isComplete("big:0"));
+		Assert.assertEquals(11, index.countDescendants("big:0"));
+		Assert.assertEquals("big:11", index.getLastModified("big:0"));
+		// unpinned, the tree is dropped when room is needed
+		index.put("other:1", null, "file", 1000, true);
+		Assert.assertFalse(index.isComplete("big:0"));
+	}
+}
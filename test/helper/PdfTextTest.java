@@ -0,0 +1,90 @@
+package helper;
+
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class PdfTextTest {
+
+	File pdf;
+
+	@Before
+	public void createPdf() throws IOException, COSVisitorException {
+		pdf = File.createTempFile("PdfTextTest", ".pdf");
+		PDDocument doc = new PDDocument();
+		try {
+			for (int i = 1; i <= 5; i++) {
+				PDPage page = new PDPage();
+				doc.addPage(page);
+				PDPageContentStream content = new PDPageContentStream(doc, page);
+				content.beginText();
+				content.setFont(PDType1Font.HELVETICA, 12);
+				content.moveTextPositionByAmount(100, 700);
+				content.drawString("page" + i);
+				content.endText();
+				content.close();
+			}
+			doc.save(pdf.getAbsolutePath());
+		} finally {
+			doc.close();
+		}
+	}
+
+	@After
+	public void deletePdf() {
+		pdf.delete();
+	}
+
+	@Test
+	public void extractsAllPages() {
+		String text = new PdfText().toString(pdf, 100, 60000);
+		for (int i = 1; i <= 5; i++) {
+			Assert.assertTrue(text.contains("page" + i));
+		}
+	}
+
+	@Test
+	public void stopsAtMaxPages() {
+		String text = new PdfText().toString(pdf, 2, 60000);
+		Assert.assertTrue(text.contains("page1"));
+		Assert.assertTrue(text.contains("page2"));
+		Assert.assertFalse(text.contains("page3"));
+	}
+
+	@Test(expected = HttpArchiveException.class)
+	public void stopsAtDeadline() {
+		new PdfText().toString(pdf, 100, 0);
+	}
+}
@@ -0,0 +1,101 @@
+package helper;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class RepresentationStoreTest {
+
+	File dir;
+	RepresentationStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("representations").toFile();
+		store = new RepresentationStore(dir);
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	static void delete(File file) {
+		File[] files = file.listFiles();
+		for (File f : files == null ? new File[0] : files)
+			delete(f);
+		file.delete();
+	}
+
+	@Test
+	public void onlyTheStoredVersionIsServed() {
+		store.put("test:1", "oaidc", "r1-10", RepresentationStore.gzip("<dc/>"));
+		Assert.assertEquals("<dc/>", RepresentationStore
+				.gunzip(store.get("test:1", "oaidc", "r1-10")));
+		Assert.assertNull(store.get("test:1", "oaidc", "r1-11"));
+		Assert.assertNull(store.get("test:1", "oaidc", "r2-10"));
+		Assert.assertNull(store.get("test:1", "epicur", "r1-10"));
+		Assert.assertEquals(1L, store.getStatus().get("hits"));
+		Assert.assertEquals(3L, store.getStatus().get("misses"));
+	}
+
+	@Test
+	public void newVersionsReplaceOlderOnes() {
+		store.put("test:1", "oaidc", "r1-10", RepresentationStore.gzip("old"));
+		store.put("test:1", "epicur", "r1-10", RepresentationStore.gzip("epicur"));
+		store.put("test:1", "oaidc", "r1-11", RepresentationStore.gzip("new"));
+		Assert.assertNull(store.get("test:1", "oaidc", "r1-10"));
+		Assert.assertEquals("new", RepresentationStore
+				.gunzip(store.get("test:1", "oaidc", "r1-11")));
+		// other formats of the object are kept
+		Assert.assertEquals("epicur", RepresentationStore
+				.gunzip(store.get("test:1", "epicur", "r1-10")));
+		Assert.assertEquals(3L, store.getStatus().get("writes"));
+	}
+
+	@Test
+	public void removeDropsAllFormatsOfAnObject() {
+		store.put("test:1", "oaidc", "r1-10", RepresentationStore.gzip("dc"));
+		store.put("test:1", "mets", "r1-10-2", RepresentationStore.gzip("mets"));
+		store.put("test:10", "oaidc", "r1-10", RepresentationStore.gzip("dc"));
+		store.remove("test:1");
+		Assert.assertNull(store.get("test:1", "oaidc", "r1-10"));
+		Assert.assertNull(store.get("test:1", "mets", "r1-10-2"));
+		Assert.assertNotNull(store.get("test:10", "oaidc", "r1-10"));
+		store.remove("test:2");
+	}
+
+	@Test
+	public void gzipRoundTrip() {
+		String content = "<mets>äöü €</mets>";
+		Assert.assertEquals(content,
+				RepresentationStore.gunzip(RepresentationStore.gzip(content)));
+	}
+}
@@ -0,0 +1,90 @@
+package helper;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class StatusCheckerTest {
+
+	@Test
+	public void resultsAreCached() throws Exception {
+		StatusChecker checker = new StatusChecker(2, 1, 1000, 60000, 10);
+		Assert.assertEquals("a", checker.check("k", "host", () -> "a", "x").get());
+		Assert.assertEquals("a", checker.check("k", "host", () -> "b", "x").get());
+		Assert.assertEquals(1L, checker.getStatus().get("hits"));
+	}
+
+	@Test
+	public void oldestResultsAreDroppedFirst() throws Exception {
+		StatusChecker checker = new StatusChecker(2, 1, 1000, 60000, 10);
+		for (int i = 0; i < 11; i++) {
+			String value = "v" + i;
+			checker.check("k" + i, "host", () -> value, "x").get();
+			Thread.sleep(2);
+		}
+		int cached = (Integer) checker.getStatus().get("cached");
+		Assert.assertTrue(cached > 5 && cached <= 10);
+		// the newest results survive, the oldest one is gone
+		Assert.assertEquals("v10",
+				checker.check("k10", "host", () -> "new", "x").get());
+		Assert.assertEquals("v9",
+				checker.check("k9", "host", () -> "new", "x").get());
+		Assert.assertEquals("new",
+				checker.check("k0", "host", () -> "new", "x").get());
+	}
+
+	@Test
+	public void slowHostDoesNotBlockOtherHosts() throws Exception {
+		StatusChecker checker = new StatusChecker(2, 1, 1000, 60000, 10);
+		CountDownLatch slow = new CountDownLatch(1);
+		CompletableFuture<String> first = checker.check(null, "slow", () -> {
+			slow.await();
+			return "a";
+		}, "x");
+		CompletableFuture<String> second =
+				checker.check(null, "slow", () -> "b", "x");
+		Assert.assertEquals("c",
+				checker.check(null, "fast", () -> "c", "x").get(5, TimeUnit.SECONDS));
+		Assert.assertFalse(second.isDone());
+		slow.countDown();
+		Assert.assertEquals("a", first.get(5, TimeUnit.SECONDS));
+		Assert.assertEquals("b", second.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void invalidateDropsOnlyTheKey() throws Exception {
+		StatusChecker checker = new StatusChecker(2, 1, 1000, 60000, 10);
+		checker.check("urn:test:1", "host", () -> "one", "x").get();
+		checker.check("urn:test:10", "host", () -> "ten", "x").get();
+		checker.invalidate("urn:test:1");
+		Assert.assertEquals("new",
+				checker.check("urn:test:1", "host", () -> "new", "x").get());
+		Assert.assertEquals("ten",
+				checker.check("urn:test:10", "host", () -> "new", "x").get());
+	}
+}
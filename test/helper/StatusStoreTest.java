@@ -0,0 +1,128 @@
+package helper;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import base.BaseModelTest;
+import models.Globals;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class StatusStoreTest extends BaseModelTest {
+
+	File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("status", ".json");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+		new File(file.getAbsolutePath() + ".tmp").delete();
+	}
+
+	static Map<String, Object> result(String urn) {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("urnStatus", urn);
+		return result;
+	}
+
+	@Test
+	public void storedResultsCarryTheirCheckTime() {
+		StatusStore store = new StatusStore(file, 60000);
+		Assert.assertNull(store.get("test:1"));
+		store.put("test:1", result("200"));
+		Map<String, Object> stored = store.get("test:1");
+		Assert.assertEquals("200", stored.get("urnStatus"));
+		Assert.assertNotNull(stored.get(StatusStore.CHECKED_AT));
+		// callers get copies
+		stored.put("urnStatus", "500");
+		Assert.assertEquals("200", store.get("test:1").get("urnStatus"));
+	}
+
+	@Test
+	public void outdatedResultsAreCheckedAgainAndPurged() throws IOException {
+		Map<String, Object> old = result("200");
+		old.put(StatusStore.CHECKED_AT, Globals.dateFormat()
+				.format(new Date(System.currentTimeMillis() - 120000)));
+		Map<String, Object> results = new HashMap<String, Object>();
+		results.put("test:1", old);
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("results", results);
+		new ObjectMapper().writeValue(file, content);
+
+		StatusStore store = new StatusStore(file, 60000);
+		Assert.assertEquals(1, store.getStatus().get("results"));
+		Assert.assertNull(store.get("test:1"));
+		store.put("test:2", result("200"));
+		store.save();
+		Assert.assertEquals(1, store.getStatus().get("results"));
+		Assert.assertNotNull(store.get("test:2"));
+		Assert.assertEquals(1,
+				new StatusStore(file, 60000).getStatus().get("results"));
+	}
+
+	@Test
+	public void removeDropsOnlyThePid() {
+		StatusStore store = new StatusStore(file, 60000);
+		store.put("test:1", result("200"));
+		store.put(StatusStore.TARGETS + "test:1", result("200"));
+		store.put("test:10", result("200"));
+		store.put(StatusStore.TARGETS + "test:10", result("200"));
+		store.remove("test:1");
+		Assert.assertNull(store.get("test:1"));
+		Assert.assertNull(store.get(StatusStore.TARGETS + "test:1"));
+		Assert.assertNotNull(store.get("test:10"));
+		Assert.assertNotNull(store.get(StatusStore.TARGETS + "test:10"));
+	}
+
+	@Test
+	public void resultsAndCursorsSurviveARestart() throws IOException {
+		StatusStore store = new StatusStore(file, 60000);
+		store.put("test:1", result("200"));
+		store.setCursor("test", "test:1");
+		store.save();
+		Assert.assertTrue(file.exists());
+		Assert.assertFalse(
+				new String(Files.readAllBytes(file.toPath()), "utf-8").isEmpty());
+
+		StatusStore loaded = new StatusStore(file, 60000);
+		Assert.assertEquals("200", loaded.get("test:1").get("urnStatus"));
+		Assert.assertEquals("test:1", loaded.getCursor("test"));
+		Assert.assertEquals("", loaded.getCursor("other"));
+	}
+}
@@ -0,0 +1,63 @@
+package helper;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TitleIndexTest {
+
+	@Test
+	public void writesOfOtherNodesDoNotBlockPuts() {
+		TitleIndex titles = new TitleIndex(10);
+		long lookedUpAt = titles.getGeneration();
+		titles.remove("test:2");
+		titles.put("test:1", "One", lookedUpAt);
+		Assert.assertEquals("One", titles.get("test:1"));
+	}
+
+	@Test
+	public void staleTitlesAreNotStored() {
+		TitleIndex titles = new TitleIndex(10);
+		long lookedUpAt = titles.getGeneration();
+		titles.remove("test:1");
+		titles.put("test:1", "Old", lookedUpAt);
+		Assert.assertNull(titles.get("test:1"));
+		titles.put("test:1", "New", titles.getGeneration());
+		Assert.assertEquals("New", titles.get("test:1"));
+	}
+
+	@Test
+	public void forgottenWritesAreTreatedAsRecent() {
+		TitleIndex titles = new TitleIndex(2);
+		long lookedUpAt = titles.getGeneration();
+		titles.remove("test:1");
+		titles.remove("test:2");
+		titles.remove("test:3");
+		// the stamp of test:1 has been dropped, its title may be stale
+		titles.put("test:1", "Old", lookedUpAt);
+		Assert.assertNull(titles.get("test:1"));
+		titles.put("test:1", "New", titles.getGeneration());
+		Assert.assertEquals("New", titles.get("test:1"));
+	}
+}
@@ -0,0 +1,190 @@
+package helper.oai;
+
+/*
+ * Copyright 2016 hbz NRW (http://www.hbz-nrw.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jan Schnasse
+ *
+ */
+@SuppressWarnings("javadoc")
+public class OaiProviderTest {
+
+	OaiProvider provider = new OaiProvider("http://localhost/oai", 10);
+
+	static Map<String, String> args(String... keyValues) {
+		Map<String, String> args = new HashMap<String, String>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			args.put(keyValues[i], keyValues[i + 1]);
+		}
+		return args;
+	}
+
+	String handle(String... keyValues) throws IOException {
+		Map<String, String[]> params = new HashMap<String, String[]>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			String[] old = params.get(keyValues[i]);
+			if (old == null) {
+				params.put(keyValues[i], new String[] { keyValues[i + 1] });
+			} else {
+				params.put(keyValues[i],
+						new String[] { old[0], keyValues[i + 1] });
+			}
+		}
+		StringWriter out = new StringWriter();
+		provider.handle(params, out);
+		return out.toString();
+	}
+
+	static String errorCode(Map<String, String> args) {
+		try {
+			OaiProvider.parse(args.get("verb"), args);
+			return null;
+		} catch (OaiProvider.OaiError e) {
+			return e.code;
+		}
+	}
+
+	@Test
+	public void unknownVerbIsBadVerb() throws IOException {
+		String xml = handle("verb", "Dance");
+		Assert.assertTrue(xml.contains("<error code=\"badVerb\">"));
+		Assert.assertTrue(xml.contains("<request>http://localhost/oai</request>"));
+		Assert.assertTrue(xml.trim().endsWith("</OAI-PMH>"));
+	}
+
+	@Test
+	public void missingVerbIsBadVerb() throws IOException {
+		Assert.assertTrue(handle().contains("<error code=\"badVerb\">"));
+	}
+
+	@Test
+	public void repeatedArgumentIsBadArgument() throws IOException {
+		Assert.assertTrue(handle("verb", "Identify", "verb", "Identify")
+				.contains("<error code=\"badArgument\">"));
+	}
+
+	@Test
+	public void listMetadataFormatsListsAllPrefixes() throws IOException {
+		String xml = handle("verb", "ListMetadataFormats");
+		for (String prefix : new String[] { "oai_dc", "epicur", "aleph", "mets",
+				"rdf" }) {
+			Assert.assertTrue(
+					xml.contains("<metadataPrefix>" + prefix + "</metadataPrefix>"));
+		}
+		Assert.assertTrue(xml.contains("<request verb=\"ListMetadataFormats\">"));
+	}
+
+	@Test
+	public void argumentsAreCheckedPerVerb() {
+		Assert.assertEquals("badArgument",
+				errorCode(args("verb", "Identify", "identifier", "x")));
+		Assert.assertEquals("badArgument", errorCode(args("verb", "GetRecord",
+				"identifier", "oai:localhost:test:1")));
+		Assert.assertEquals("badArgument",
+				errorCode(args("verb", "ListRecords")));
+		Assert.assertEquals("badArgument", errorCode(args("verb",
+				"ListIdentifiers", "metadataPrefix", "oai_dc", "identifier", "x")));
+		Assert.assertNull(errorCode(args("verb", "ListIdentifiers",
+				"metadataPrefix", "oai_dc", "set", "open_access")));
+		Assert.assertNull(errorCode(args("verb", "ListSets")));
+	}
+
+	@Test
+	public void resumptionTokenIsExclusive() {
+		String token = OaiProvider.encodeToken(
+				args("metadataPrefix", "oai_dc", "last", "test:1", "cursor", "10"));
+		Assert.assertEquals("badArgument", errorCode(args("verb", "ListRecords",
+				"resumptionToken", token, "metadataPrefix", "oai_dc")));
+		Assert.assertNull(
+				errorCode(args("verb", "ListRecords", "resumptionToken", token)));
+	}
+
+	@Test
+	public void resumptionTokenRoundTrip() {
+		Map<String, String> request = args("metadataPrefix", "mets", "set",
+				"ddc:020", "from", "2016-01-01", "until", "2016-12-31", "last",
+				"test:99", "cursor", "100");
+		Map<String, String> decoded =
+				OaiProvider.decodeToken(OaiProvider.encodeToken(request));
+		Assert.assertEquals(request, decoded);
+		Map<String, String> parsed = OaiProvider.parse("ListRecords",
+				args("verb", "ListRecords", "resumptionToken",
+						OaiProvider.encodeToken(request)));
+		Assert.assertEquals("test:99", parsed.get("last"));
+		Assert.assertEquals("mets", parsed.get("metadataPrefix"));
+	}
+
+	@Test
+	public void missingValuesAreLeftOutOfTheToken() {
+		Map<String, String> decoded = OaiProvider.decodeToken(OaiProvider
+				.encodeToken(args("metadataPrefix", "oai_dc", "cursor", "0")));
+		Assert.assertFalse(decoded.containsKey("set"));
+		Assert.assertFalse(decoded.containsKey("from"));
+	}
+
+	@Test
+	public void illegalTokenIsBadResumptionToken() {
+		Assert.assertEquals("badResumptionToken",
+				errorCode(args("verb", "ListRecords", "resumptionToken", "%%%")));
+		Assert.assertEquals("badResumptionToken", errorCode(args("verb",
+				"ListRecords", "resumptionToken", OaiProvider.encodeToken(
+						args("metadataPrefix", "oai_dc", "cursor", "x")))));
+	}
+
+	@Test
+	public void daysAreExpandedToSeconds() {
+		Assert.assertEquals("2016-03-01T00:00:00Z",
+				OaiProvider.toDatestamp("2016-03-01", false));
+		Assert.assertEquals("2016-03-01T23:59:59Z",
+				OaiProvider.toDatestamp("2016-03-01", true));
+		Assert.assertEquals("2016-03-01T12:30:00Z",
+				OaiProvider.toDatestamp("2016-03-01T12:30:00Z", true));
+	}
+
+	@Test
+	public void illegalDatesAreBadArguments() {
+		Assert.assertEquals("badArgument", errorCode(args("verb", "ListRecords",
+				"metadataPrefix", "oai_dc", "from", "2016-13-01")));
+		Assert.assertEquals("badArgument", errorCode(args("verb", "ListRecords",
+				"metadataPrefix", "oai_dc", "until", "yesterday")));
+	}
+
+	@Test
+	public void fromMustNotBeAfterUntil() {
+		Assert.assertEquals("badArgument",
+				errorCode(args("verb", "ListRecords", "metadataPrefix", "oai_dc",
+						"from", "2016-02-01", "until", "2016-01-01")));
+		Assert.assertNull(errorCode(args("verb", "ListRecords", "metadataPrefix",
+				"oai_dc", "from", "2016-01-01", "until", "2016-01-01")));
+	}
+
+	@Test
+	public void fromAndUntilNeedTheSameGranularity() {
+		Assert.assertEquals("badArgument",
+				errorCode(args("verb", "ListRecords", "metadataPrefix", "oai_dc",
+						"from", "2016-01-01", "until", "2016-02-01T00:00:00Z")));
+	}
+}